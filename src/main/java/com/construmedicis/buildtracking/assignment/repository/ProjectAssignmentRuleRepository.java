@@ -3,6 +3,7 @@ package com.construmedicis.buildtracking.assignment.repository;
 import com.construmedicis.buildtracking.assignment.models.ProjectAssignmentRule;
 import com.construmedicis.buildtracking.assignment.models.ProjectAssignmentRule.RuleType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -14,6 +15,10 @@ public interface ProjectAssignmentRuleRepository extends JpaRepository<ProjectAs
 
     List<ProjectAssignmentRule> findByIsActiveTrueOrderByPriorityAsc();
 
+    // Orden total (prioridad, id) para compilar las reglas con su proyecto en una consulta
+    @Query("select r from ProjectAssignmentRule r join fetch r.project where r.isActive = true order by r.priority asc, r.id asc")
+    List<ProjectAssignmentRule> findActiveRulesWithProject();
+
     List<ProjectAssignmentRule> findByRuleTypeAndIsActiveTrue(RuleType ruleType);
 
     List<ProjectAssignmentRule> findByProjectId(Long projectId);
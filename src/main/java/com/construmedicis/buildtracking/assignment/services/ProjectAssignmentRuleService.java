@@ -26,5 +26,18 @@ public interface ProjectAssignmentRuleService {
 
     Response<ProjectAssignmentResultDTO> evaluateRulesForInvoice(InvoiceDTO invoiceDTO);
 
+    /**
+     * Igual que {@link #evaluateRulesForInvoice(InvoiceDTO)} con las
+     * descripciones de las líneas ya conocidas, sin consultar la base de datos.
+     */
+    Response<ProjectAssignmentResultDTO> evaluateRulesForInvoice(InvoiceDTO invoiceDTO, List<String> lineDescriptions);
+
     Response<ProjectAssignmentRuleDTO> toggleActive(Long id, Boolean isActive);
+
+    /**
+     * Descarta las reglas compiladas al confirmar la transacción actual (o de
+     * inmediato fuera de una). Se llama cuando cambian reglas, proyectos o
+     * participaciones.
+     */
+    void invalidateRules();
 }
@@ -0,0 +1,223 @@
+package com.construmedicis.buildtracking.assignment.services.impl;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.construmedicis.buildtracking.assignment.dto.ProjectAssignmentResultDTO;
+import com.construmedicis.buildtracking.assignment.models.ProjectAssignmentRule;
+import com.construmedicis.buildtracking.assignment.models.ProjectAssignmentRule.RuleType;
+import com.construmedicis.buildtracking.invoice.dto.InvoiceDTO;
+
+/**
+ * Reglas activas compiladas para evaluar facturas sin consultar la base de
+ * datos. Es inmutable: un cambio en las reglas produce un conjunto nuevo con
+ * otra versión.
+ * <p>
+ * Cada regla conserva su posición en el orden de evaluación (prioridad, id).
+ * Por cada tipo se busca la primera regla que coincide (NIT por hash, fechas
+ * por un índice de intervalos, palabras clave con {@link KeywordMatcher}) y
+ * gana la de menor posición, igual que al recorrer las reglas una por una.
+ */
+final class CompiledRuleSet {
+
+    private final long version;
+    private final CompiledRule[] rules;
+
+    private final Map<String, Integer> firstBySupplierNit;
+
+    // Segmentos [boundaries[i], boundaries[i + 1]) en días desde la época, con
+    // la primera regla DATE_RANGE que cubre cada uno (-1 si ninguna)
+    private final long[] dateBoundaries;
+    private final int[] dateSegmentRule;
+
+    // Las reglas de participación no dependen de la factura (solo de que tenga
+    // fecha): basta la primera cuyo proyecto tiene participaciones
+    private final int firstParticipationRule;
+
+    private final int[] keywordRules;
+    private final KeywordMatcher keywordMatcher;
+
+    private CompiledRuleSet(long version, CompiledRule[] rules, Map<String, Integer> firstBySupplierNit,
+            long[] dateBoundaries, int[] dateSegmentRule, int firstParticipationRule, int[] keywordRules,
+            KeywordMatcher keywordMatcher) {
+        this.version = version;
+        this.rules = rules;
+        this.firstBySupplierNit = firstBySupplierNit;
+        this.dateBoundaries = dateBoundaries;
+        this.dateSegmentRule = dateSegmentRule;
+        this.firstParticipationRule = firstParticipationRule;
+        this.keywordRules = keywordRules;
+        this.keywordMatcher = keywordMatcher;
+    }
+
+    /**
+     * @param activeRules         reglas activas en orden de evaluación, con el
+     *                            proyecto cargado
+     * @param participationCounts participaciones por proyecto (solo hacen falta
+     *                            los de reglas EMPLOYEE_PARTICIPATION)
+     */
+    static CompiledRuleSet compile(long version, List<ProjectAssignmentRule> activeRules,
+            Map<Long, Long> participationCounts) {
+        CompiledRule[] rules = new CompiledRule[activeRules.size()];
+        Map<String, Integer> firstBySupplierNit = new HashMap<>();
+        List<Integer> dateRules = new ArrayList<>();
+        Map<Integer, List<String>> keywordsByRule = new LinkedHashMap<>();
+        int firstParticipationRule = -1;
+
+        for (int position = 0; position < rules.length; position++) {
+            ProjectAssignmentRule rule = activeRules.get(position);
+            long participations = participationCounts.getOrDefault(rule.getProject().getId(), 0L);
+            rules[position] = new CompiledRule(rule.getRuleType(), rule.getProject().getId(),
+                    rule.getProject().getName(), participations);
+
+            switch (rule.getRuleType()) {
+                case SUPPLIER_NIT -> {
+                    if (rule.getSupplierNit() != null) {
+                        firstBySupplierNit.putIfAbsent(rule.getSupplierNit(), position);
+                    }
+                }
+                case DATE_RANGE -> {
+                    if (rule.getStartDate() != null && rule.getEndDate() != null
+                            && !rule.getStartDate().isAfter(rule.getEndDate())) {
+                        dateRules.add(position);
+                    }
+                }
+                case KEYWORDS -> {
+                    List<String> keywords = KeywordMatcher.parse(rule.getKeywords());
+                    if (!keywords.isEmpty()) {
+                        keywordsByRule.put(position, keywords);
+                    }
+                }
+                case EMPLOYEE_PARTICIPATION -> {
+                    if (firstParticipationRule < 0 && participations > 0) {
+                        firstParticipationRule = position;
+                    }
+                }
+                case MANUAL -> {
+                    // Las reglas manuales siempre requieren confirmación
+                }
+            }
+        }
+
+        // Índice de intervalos: los extremos de todos los rangos parten la recta
+        // en segmentos y cada segmento guarda la primera regla que lo cubre
+        TreeSet<Long> boundarySet = new TreeSet<>();
+        for (int position : dateRules) {
+            ProjectAssignmentRule rule = activeRules.get(position);
+            boundarySet.add(rule.getStartDate().toEpochDay());
+            boundarySet.add(rule.getEndDate().toEpochDay() + 1);
+        }
+        long[] dateBoundaries = boundarySet.stream().mapToLong(Long::longValue).toArray();
+        int[] dateSegmentRule = new int[Math.max(0, dateBoundaries.length - 1)];
+        Arrays.fill(dateSegmentRule, -1);
+        for (int position : dateRules) {
+            ProjectAssignmentRule rule = activeRules.get(position);
+            int from = Arrays.binarySearch(dateBoundaries, rule.getStartDate().toEpochDay());
+            int to = Arrays.binarySearch(dateBoundaries, rule.getEndDate().toEpochDay() + 1);
+            for (int segment = from; segment < to; segment++) {
+                if (dateSegmentRule[segment] < 0) {
+                    dateSegmentRule[segment] = position;
+                }
+            }
+        }
+
+        int[] keywordRules = keywordsByRule.keySet().stream().mapToInt(Integer::intValue).toArray();
+        return new CompiledRuleSet(version, rules, firstBySupplierNit, dateBoundaries, dateSegmentRule,
+                firstParticipationRule, keywordRules, new KeywordMatcher(keywordsByRule, rules.length));
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    int size() {
+        return rules.length;
+    }
+
+    /**
+     * @param lineDescriptions descripciones de las líneas de la factura (null si
+     *                         no se conocen: las reglas KEYWORDS no aplican)
+     * @return resultado de la primera regla que coincide, o null
+     */
+    ProjectAssignmentResultDTO evaluate(InvoiceDTO invoice, List<String> lineDescriptions) {
+        int best = Integer.MAX_VALUE;
+
+        if (invoice.getSupplierId() != null) {
+            best = firstBySupplierNit.getOrDefault(invoice.getSupplierId(), best);
+        }
+
+        LocalDate issueDate = invoice.getIssueDate() != null ? invoice.getIssueDate().toLocalDate() : null;
+        if (issueDate != null) {
+            int datePosition = findDateRule(issueDate.toEpochDay());
+            if (datePosition >= 0 && datePosition < best) {
+                best = datePosition;
+            }
+            if (firstParticipationRule >= 0 && firstParticipationRule < best) {
+                best = firstParticipationRule;
+            }
+        }
+
+        int keywordLines = 0;
+        if (lineDescriptions != null && keywordRules.length > 0 && keywordRules[0] < best) {
+            int[] lineCounts = keywordMatcher.countMatchingLines(lineDescriptions);
+            for (int position : keywordRules) {
+                if (position >= best) {
+                    break;
+                }
+                if (lineCounts[position] > 0) {
+                    best = position;
+                    keywordLines = lineCounts[position];
+                    break;
+                }
+            }
+        }
+
+        if (best == Integer.MAX_VALUE) {
+            return null;
+        }
+        CompiledRule rule = rules[best];
+        int confidence;
+        String matchReason;
+        switch (rule.type()) {
+            case SUPPLIER_NIT -> {
+                confidence = 95; // Alta confianza por NIT
+                matchReason = "NIT del proveedor coincide: " + invoice.getSupplierId();
+            }
+            case DATE_RANGE -> {
+                confidence = 70; // Media confianza por fecha
+                matchReason = "Fecha de factura dentro del rango del proyecto";
+            }
+            case KEYWORDS -> {
+                confidence = Math.min(60 + keywordLines * 10, 85); // 60-85% según matches
+                matchReason = "Encontradas " + keywordLines + " palabra(s) clave en las líneas de factura";
+            }
+            default -> {
+                confidence = 75; // Buena confianza por participación activa
+                matchReason = "Hay " + rule.participations() + " participación(es) en el proyecto";
+            }
+        }
+
+        return ProjectAssignmentResultDTO.builder()
+                .projectId(rule.projectId())
+                .projectName(rule.projectName())
+                .confidence(confidence)
+                .matchedRuleType(rule.type().name())
+                .matchReason(matchReason)
+                .build();
+    }
+
+    private int findDateRule(long epochDay) {
+        int index = Arrays.binarySearch(dateBoundaries, epochDay);
+        int segment = index >= 0 ? index : -index - 2;
+        return segment >= 0 && segment < dateSegmentRule.length ? dateSegmentRule[segment] : -1;
+    }
+
+    private record CompiledRule(RuleType type, Long projectId, String projectName, long participations) {
+    }
+}
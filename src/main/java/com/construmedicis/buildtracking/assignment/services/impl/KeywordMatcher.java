@@ -0,0 +1,205 @@
+package com.construmedicis.buildtracking.assignment.services.impl;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Autómata Aho-Corasick con las palabras clave de todas las reglas KEYWORDS
+ * activas. Cada línea se recorre una sola vez, sin importar cuántas reglas o
+ * palabras haya, y el resultado es cuántas líneas coinciden con cada regla.
+ * <p>
+ * Palabras y líneas se comparan en minúsculas, sin tildes y con los espacios
+ * colapsados ({@link #fold}), así "Cemento gris" encuentra "CEMENTO  GRÍS".
+ */
+final class KeywordMatcher {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final int[] NO_RULES = new int[0];
+    // Símbolo de los caracteres que no aparecen en ninguna palabra
+    private static final int OTHER = 0;
+
+    private final int[] asciiSymbols = new int[128];
+    private final Map<Character, Integer> otherSymbols = new HashMap<>();
+    private final int alphabetSize;
+
+    // Función de transición completa: estado * alphabetSize + símbolo -> estado
+    private final int[] transitions;
+    // Posiciones de las reglas con alguna palabra que termina en cada estado,
+    // incluidas las que llegan por los enlaces de fallo
+    private final int[][] outputs;
+    private final int ruleCount;
+
+    /**
+     * @param keywordsByRule palabras de cada regla KEYWORDS, por posición
+     * @param ruleCount      total de reglas del conjunto compilado
+     */
+    KeywordMatcher(Map<Integer, List<String>> keywordsByRule, int ruleCount) {
+        this.ruleCount = ruleCount;
+
+        Map<String, TreeSet<Integer>> rulesByKeyword = new LinkedHashMap<>();
+        keywordsByRule.forEach((position, words) -> words.forEach(word -> {
+            String folded = fold(word);
+            if (!folded.isEmpty()) {
+                rulesByKeyword.computeIfAbsent(folded, k -> new TreeSet<>()).add(position);
+            }
+        }));
+
+        int symbols = 1;
+        int maxStates = 1;
+        for (String keyword : rulesByKeyword.keySet()) {
+            maxStates += keyword.length();
+            for (char c : keyword.toCharArray()) {
+                if (symbol(c) == OTHER) {
+                    if (c < asciiSymbols.length) {
+                        asciiSymbols[c] = symbols++;
+                    } else {
+                        otherSymbols.put(c, symbols++);
+                    }
+                }
+            }
+        }
+        this.alphabetSize = symbols;
+
+        // Trie de las palabras
+        int[] goTo = new int[maxStates * alphabetSize];
+        Arrays.fill(goTo, -1);
+        List<TreeSet<Integer>> stateRules = new ArrayList<>();
+        stateRules.add(new TreeSet<>());
+        int states = 1;
+        for (Map.Entry<String, TreeSet<Integer>> entry : rulesByKeyword.entrySet()) {
+            int state = 0;
+            for (char c : entry.getKey().toCharArray()) {
+                int index = state * alphabetSize + symbol(c);
+                if (goTo[index] < 0) {
+                    goTo[index] = states++;
+                    stateRules.add(new TreeSet<>());
+                }
+                state = goTo[index];
+            }
+            stateRules.get(state).addAll(entry.getValue());
+        }
+
+        // Enlaces de fallo por niveles; las transiciones que faltan se copian
+        // del estado de fallo para que el recorrido no tenga que retroceder
+        int[] fail = new int[states];
+        int[][] outputs = new int[states][];
+        outputs[0] = NO_RULES;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int s = 0; s < alphabetSize; s++) {
+            int child = goTo[s];
+            if (child < 0) {
+                goTo[s] = 0;
+            } else {
+                fail[child] = 0;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            // El estado de fallo es menos profundo: sus salidas ya están completas
+            TreeSet<Integer> rules = stateRules.get(state);
+            for (int position : outputs[fail[state]]) {
+                rules.add(position);
+            }
+            outputs[state] = rules.isEmpty() ? NO_RULES : rules.stream().mapToInt(Integer::intValue).toArray();
+
+            for (int s = 0; s < alphabetSize; s++) {
+                int index = state * alphabetSize + s;
+                int fallback = goTo[fail[state] * alphabetSize + s];
+                if (goTo[index] < 0) {
+                    goTo[index] = fallback;
+                } else {
+                    fail[goTo[index]] = fallback;
+                    queue.add(goTo[index]);
+                }
+            }
+        }
+        this.transitions = Arrays.copyOf(goTo, states * alphabetSize);
+        this.outputs = outputs;
+    }
+
+    /**
+     * Palabras de la columna keywords: separadas por comas, aceptando también
+     * el formato de arreglo JSON (["cemento", "acero"]). Las vacías se omiten,
+     * porque coincidirían con cualquier línea.
+     */
+    static List<String> parse(String raw) {
+        List<String> words = new ArrayList<>();
+        if (raw == null) {
+            return words;
+        }
+        for (String part : raw.split(",")) {
+            String word = part.trim();
+            word = word.replaceAll("^[\\[\\s\"]+|[\\]\\s\"]+$", "");
+            if (!fold(word).isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /** Minúsculas, sin tildes y con los espacios colapsados. */
+    static String fold(String text) {
+        String base = text;
+        for (int i = 0; i < text.length(); i++) {
+            // Las descripciones suelen ser ASCII: solo se descompone si hace falta
+            if (text.charAt(i) >= 128) {
+                base = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+                break;
+            }
+        }
+        StringBuilder folded = new StringBuilder(base.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < base.length(); i++) {
+            char c = base.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = folded.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                folded.append(' ');
+                pendingSpace = false;
+            }
+            folded.append(Character.toLowerCase(c));
+        }
+        return folded.toString();
+    }
+
+    /** Líneas que contienen alguna palabra de cada regla, indexado por posición de la regla. */
+    int[] countMatchingLines(List<String> lineDescriptions) {
+        int[] lineCounts = new int[ruleCount];
+        int[] lastLine = new int[ruleCount];
+        int line = 0;
+        for (String description : lineDescriptions) {
+            line++;
+            if (description == null) {
+                continue;
+            }
+            String text = fold(description);
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                state = transitions[state * alphabetSize + symbol(text.charAt(i))];
+                for (int position : outputs[state]) {
+                    // Una línea cuenta una sola vez por regla
+                    if (lastLine[position] != line) {
+                        lastLine[position] = line;
+                        lineCounts[position]++;
+                    }
+                }
+            }
+        }
+        return lineCounts;
+    }
+
+    private int symbol(char c) {
+        return c < asciiSymbols.length ? asciiSymbols[c] : otherSymbols.getOrDefault(c, OTHER);
+    }
+}
@@ -7,22 +7,31 @@ import com.construmedicis.buildtracking.assignment.models.ProjectAssignmentRule.
 import com.construmedicis.buildtracking.assignment.repository.ProjectAssignmentRuleRepository;
 import com.construmedicis.buildtracking.assignment.services.ProjectAssignmentRuleService;
 import com.construmedicis.buildtracking.invoice.dto.InvoiceDTO;
+import com.construmedicis.buildtracking.invoice.models.InvoiceItem;
 import com.construmedicis.buildtracking.invoice.repository.InvoiceItemRepository;
 import com.construmedicis.buildtracking.participation.repository.ParticipationRepository;
 import com.construmedicis.buildtracking.project.repository.ProjectRepository;
 import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
 import com.construmedicis.buildtracking.util.response.Response;
 import com.construmedicis.buildtracking.util.response.handler.ResponseHandler;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import lombok.extern.slf4j.Slf4j;
+
 @Service
+@Slf4j
 public class ProjectAssignmentRuleServiceImpl implements ProjectAssignmentRuleService {
 
     private final ProjectAssignmentRuleRepository repository;
@@ -30,6 +39,10 @@ public class ProjectAssignmentRuleServiceImpl implements ProjectAssignmentRuleSe
     private final InvoiceItemRepository invoiceItemRepository;
     private final ParticipationRepository participationRepository;
 
+    // Avanza con cada cambio confirmado; las reglas compiladas guardan la versión de la que salieron
+    private final AtomicLong rulesVersion = new AtomicLong();
+    private volatile CompiledRuleSet compiledRules;
+
     public ProjectAssignmentRuleServiceImpl(ProjectAssignmentRuleRepository repository,
             ProjectRepository projectRepository,
             InvoiceItemRepository invoiceItemRepository,
@@ -49,6 +62,7 @@ public class ProjectAssignmentRuleServiceImpl implements ProjectAssignmentRuleSe
 
         ProjectAssignmentRule rule = fromDTO(ruleDTO);
         ProjectAssignmentRule saved = repository.save(rule);
+        invalidateRules();
         return new ResponseHandler<>(201, "Assignment rule created", "/api/assignment-rules", toDTO(saved))
                 .getResponse();
     }
@@ -76,6 +90,7 @@ public class ProjectAssignmentRuleServiceImpl implements ProjectAssignmentRuleSe
             throw new BusinessRuleException("assignment.rule.not.found");
         }
         repository.deleteById(id);
+        invalidateRules();
         return new ResponseHandler<Void>(200, "Assignment rule deleted", "/api/assignment-rules/{id}", null)
                 .getResponse();
     }
@@ -111,14 +126,21 @@ public class ProjectAssignmentRuleServiceImpl implements ProjectAssignmentRuleSe
 
     @Override
     public Response<ProjectAssignmentResultDTO> evaluateRulesForInvoice(InvoiceDTO invoiceDTO) {
-        List<ProjectAssignmentRule> activeRules = repository.findByIsActiveTrueOrderByPriorityAsc();
+        List<String> lineDescriptions = invoiceDTO.getId() != null
+                ? invoiceItemRepository.findByInvoiceId(invoiceDTO.getId()).stream()
+                        .map(InvoiceItem::getDescription)
+                        .collect(Collectors.toList())
+                : null;
+        return evaluateRulesForInvoice(invoiceDTO, lineDescriptions);
+    }
 
-        for (ProjectAssignmentRule rule : activeRules) {
-            ProjectAssignmentResultDTO result = evaluateSingleRule(rule, invoiceDTO);
-            if (result != null && result.getConfidence() > 0) {
-                return new ResponseHandler<>(200, "Project assignment evaluated", "/api/assignment-rules/evaluate",
-                        result).getResponse();
-            }
+    @Override
+    public Response<ProjectAssignmentResultDTO> evaluateRulesForInvoice(InvoiceDTO invoiceDTO,
+            List<String> lineDescriptions) {
+        ProjectAssignmentResultDTO result = compiledRules().evaluate(invoiceDTO, lineDescriptions);
+        if (result != null) {
+            return new ResponseHandler<>(200, "Project assignment evaluated", "/api/assignment-rules/evaluate",
+                    result).getResponse();
         }
 
         // No se encontró ninguna regla que coincida
@@ -135,95 +157,72 @@ public class ProjectAssignmentRuleServiceImpl implements ProjectAssignmentRuleSe
     }
 
     @Override
-    @Transactional
-    public Response<ProjectAssignmentRuleDTO> toggleActive(Long id, Boolean isActive) {
-        ProjectAssignmentRule rule = repository.findById(id)
-                .orElseThrow(() -> new BusinessRuleException("assignment.rule.not.found"));
-
-        rule.setIsActive(isActive);
-        ProjectAssignmentRule updated = repository.save(rule);
-        return new ResponseHandler<>(200, "Rule status updated", "/api/assignment-rules/{id}/toggle", toDTO(updated))
-                .getResponse();
-    }
-
-    private ProjectAssignmentResultDTO evaluateSingleRule(ProjectAssignmentRule rule, InvoiceDTO invoice) {
-        boolean matches = false;
-        int confidence = 0;
-        String matchReason = "";
-
-        switch (rule.getRuleType()) {
-            case SUPPLIER_NIT:
-                if (rule.getSupplierNit() != null && rule.getSupplierNit().equals(invoice.getSupplierId())) {
-                    matches = true;
-                    confidence = 95; // Alta confianza por NIT
-                    matchReason = "NIT del proveedor coincide: " + invoice.getSupplierId();
+    public void invalidateRules() {
+        // Antes del commit otro hilo recompilaría con los datos viejos
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    rulesVersion.incrementAndGet();
                 }
-                break;
-
-            case DATE_RANGE:
-                if (rule.getStartDate() != null && rule.getEndDate() != null && invoice.getIssueDate() != null) {
-                    LocalDate issueDate = invoice.getIssueDate().toLocalDate();
-                    if (!issueDate.isBefore(rule.getStartDate()) && !issueDate.isAfter(rule.getEndDate())) {
-                        matches = true;
-                        confidence = 70; // Media confianza por fecha
-                        matchReason = "Fecha de factura dentro del rango del proyecto";
-                    }
-                }
-                break;
-
-            case KEYWORDS:
-                if (rule.getKeywords() != null && invoice.getId() != null) {
-                    // Parse keywords manualmente (formato simple separado por comas)
-                    List<String> keywords = Arrays.asList(rule.getKeywords().split(","))
-                            .stream()
-                            .map(String::trim)
-                            .collect(Collectors.toList());
-
-                    long matchCount = invoiceItemRepository.findByInvoiceId(invoice.getId()).stream()
-                            .filter(item -> {
-                                String desc = item.getDescription().toLowerCase();
-                                return keywords.stream().anyMatch(kw -> desc.contains(kw.toLowerCase()));
-                            })
-                            .count();
+            });
+        } else {
+            rulesVersion.incrementAndGet();
+        }
+    }
 
-                    if (matchCount > 0) {
-                        matches = true;
-                        confidence = Math.min(60 + (int) (matchCount * 10), 85); // 60-85% según matches
-                        matchReason = "Encontradas " + matchCount + " palabra(s) clave en las líneas de factura";
-                    }
-                }
-                break;
+    @EventListener(ApplicationReadyEvent.class)
+    public void compileOnStartup() {
+        compiledRules();
+    }
 
-            case EMPLOYEE_PARTICIPATION:
-                if (invoice.getIssueDate() != null) {
-                    // Verificar si hay empleados participando en el proyecto
-                    long participationCount = participationRepository.findByProjectId(rule.getProject().getId()).size();
+    /**
+     * Reglas compiladas vigentes. Solo se recompila cuando cambió la versión;
+     * si las reglas cambian mientras se compila, la versión vuelve a avanzar y
+     * la siguiente evaluación recompila otra vez.
+     */
+    private CompiledRuleSet compiledRules() {
+        CompiledRuleSet rules = compiledRules;
+        if (rules != null && rules.getVersion() == rulesVersion.get()) {
+            return rules;
+        }
+        synchronized (this) {
+            rules = compiledRules;
+            long version = rulesVersion.get();
+            if (rules != null && rules.getVersion() == version) {
+                return rules;
+            }
 
-                    if (participationCount > 0) {
-                        matches = true;
-                        confidence = 75; // Buena confianza por participación activa
-                        matchReason = "Hay " + participationCount + " participación(es) en el proyecto";
-                    }
+            List<ProjectAssignmentRule> activeRules = repository.findActiveRulesWithProject();
+            Set<Long> participationProjects = activeRules.stream()
+                    .filter(rule -> rule.getRuleType() == RuleType.EMPLOYEE_PARTICIPATION)
+                    .map(rule -> rule.getProject().getId())
+                    .collect(Collectors.toSet());
+            Map<Long, Long> participationCounts = new HashMap<>();
+            if (!participationProjects.isEmpty()) {
+                for (Object[] row : participationRepository.countByProjectIds(participationProjects)) {
+                    participationCounts.put((Long) row[0], (Long) row[1]);
                 }
-                break;
+            }
 
-            case MANUAL:
-                // Las reglas manuales siempre requieren confirmación
-                confidence = 0;
-                break;
+            rules = CompiledRuleSet.compile(version, activeRules, participationCounts);
+            compiledRules = rules;
+            log.info("Reglas de asignación compiladas: versión {}, {} reglas activas", version, rules.size());
+            return rules;
         }
+    }
 
-        if (matches) {
-            return ProjectAssignmentResultDTO.builder()
-                    .projectId(rule.getProject().getId())
-                    .projectName(rule.getProject().getName())
-                    .confidence(confidence)
-                    .matchedRuleType(rule.getRuleType().name())
-                    .matchReason(matchReason)
-                    .build();
-        }
+    @Override
+    @Transactional
+    public Response<ProjectAssignmentRuleDTO> toggleActive(Long id, Boolean isActive) {
+        ProjectAssignmentRule rule = repository.findById(id)
+                .orElseThrow(() -> new BusinessRuleException("assignment.rule.not.found"));
 
-        return null;
+        rule.setIsActive(isActive);
+        ProjectAssignmentRule updated = repository.save(rule);
+        invalidateRules();
+        return new ResponseHandler<>(200, "Rule status updated", "/api/assignment-rules/{id}/toggle", toDTO(updated))
+                .getResponse();
     }
 
     private ProjectAssignmentRuleDTO toDTO(ProjectAssignmentRule rule) {
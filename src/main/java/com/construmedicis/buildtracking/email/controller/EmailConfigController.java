@@ -6,8 +6,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import com.construmedicis.buildtracking.email.dto.EmailConfigDTO;
-import com.construmedicis.buildtracking.email.dto.EmailSyncResultDTO;
+import com.construmedicis.buildtracking.email.dto.SyncJobDTO;
 import com.construmedicis.buildtracking.email.services.EmailConfigService;
+import com.construmedicis.buildtracking.email.services.SyncJobService;
 import com.construmedicis.buildtracking.util.response.Response;
 
 import lombok.RequiredArgsConstructor;
@@ -18,6 +19,7 @@ import lombok.RequiredArgsConstructor;
 public class EmailConfigController {
 
     private final EmailConfigService emailConfigService;
+    private final SyncJobService syncJobService;
 
     @PostMapping
     public ResponseEntity<Response<EmailConfigDTO>> create(@RequestBody EmailConfigDTO emailConfigDTO) {
@@ -92,26 +94,20 @@ public class EmailConfigController {
 
     /**
      * Endpoint principal para sincronización manual de facturas desde Gmail.
-     * Descarga adjuntos XML, parsea facturas, crea registros en BD,
-     * evalúa reglas de asignación y elimina archivos temporales.
+     * Encola la sincronización como trabajo en segundo plano y responde de
+     * inmediato; el avance se consulta en /api/sync-jobs/{jobId}. Un segundo
+     * envío mientras el trabajo sigue activo devuelve el mismo trabajo.
      */
     @PostMapping("/{id}/sync")
-    public ResponseEntity<Response<EmailSyncResultDTO>> syncEmails(@PathVariable Long id) {
-        EmailSyncResultDTO result = emailConfigService.syncEmails(id);
-
-        String message = String.format(
-                "Sync completed: %s. Processed %d emails, created %d invoices (%d auto-assigned, %d pending review)",
-                result.getSyncStatus(),
-                result.getEmailsProcessed(),
-                result.getInvoicesCreated(),
-                result.getInvoicesAutoAssigned(),
-                result.getInvoicesPendingReview());
-
-        Response<EmailSyncResultDTO> response = new Response<>();
-        response.setStatus("SUCCESS".equals(result.getSyncStatus()) ? 200 : 206);
-        response.setUserMessage(message);
-        response.setData(result);
+    public ResponseEntity<Response<SyncJobDTO>> syncEmails(@PathVariable Long id) {
+        SyncJobDTO job = syncJobService.submitEmailConfigSync(id);
 
-        return ResponseEntity.ok(response);
+        Response<SyncJobDTO> response = new Response<>();
+        response.setStatus(202);
+        response.setUserMessage("Sync job " + job.getId() + " " + job.getStatus());
+        response.setMoreInfo("/api/sync-jobs/" + job.getId());
+        response.setData(job);
+
+        return ResponseEntity.accepted().body(response);
     }
 }
@@ -0,0 +1,39 @@
+package com.construmedicis.buildtracking.email.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.construmedicis.buildtracking.email.dto.SyncJobDTO;
+import com.construmedicis.buildtracking.email.services.SyncJobService;
+import com.construmedicis.buildtracking.util.response.Response;
+
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequestMapping("/api/sync-jobs")
+@RequiredArgsConstructor
+public class SyncJobController {
+
+    private final SyncJobService syncJobService;
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Response<SyncJobDTO>> findById(@PathVariable Long id) {
+        SyncJobDTO job = syncJobService.findById(id);
+        Response<SyncJobDTO> response = new Response<>();
+        response.setStatus(200);
+        response.setUserMessage("Sync job retrieved successfully");
+        response.setData(job);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Stream de avance del trabajo (Server-Sent Events): eventos "progress"
+     * periódicos y un evento "completed" con el resultado final.
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@PathVariable Long id) {
+        return syncJobService.subscribe(id);
+    }
+}
@@ -1,7 +1,10 @@
 package com.construmedicis.buildtracking.email.dto;
 
+import java.math.BigInteger;
 import java.time.LocalDateTime;
 
+import com.construmedicis.buildtracking.email.models.EmailConfig.SyncMode;
+
 import lombok.*;
 
 @Getter
@@ -17,6 +20,8 @@ public class EmailConfigDTO {
     private String tokensDirectory;
     private String gmailLabel;
     private LocalDateTime lastSyncDate;
+    private BigInteger gmailHistoryId;
+    private SyncMode syncMode;
     private Boolean autoSyncEnabled;
     private Integer syncFrequencyHours;
     private LocalDateTime createdDate;
@@ -1,6 +1,13 @@
 package com.construmedicis.buildtracking.email.dto;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.construmedicis.buildtracking.invoice.dto.UploadedFileResultDTO;
 
 import lombok.*;
 
@@ -16,6 +23,38 @@ public class EmailSyncResultDTO {
     private Integer invoicesUpdated;
     private Integer invoicesAutoAssigned;
     private Integer invoicesPendingReview;
+    private Integer attachmentsSkipped; // Adjuntos ya procesados en sincronizaciones anteriores
     private List<String> errors;
     private String syncStatus; // SUCCESS, PARTIAL_SUCCESS, FAILED
+    private BigInteger historyId; // Checkpoint de Gmail tomado al iniciar la sincronización
+    @Builder.Default
+    private Set<String> failedMessageIds = ConcurrentHashMap.newKeySet(); // Se reintentan en la siguiente sincronización
+    private List<UploadedFileResultDTO> files; // Solo en cargas de archivos: resultado por archivo, al terminar
+
+    /**
+     * Resultado vacío para una sincronización que arranca: contadores en cero
+     * y colecciones de errores thread-safe (las llenan los workers del
+     * pipeline).
+     */
+    public static EmailSyncResultDTO started() {
+        return EmailSyncResultDTO.builder()
+                .emailsProcessed(0)
+                .invoicesCreated(0)
+                .invoicesUpdated(0)
+                .invoicesAutoAssigned(0)
+                .invoicesPendingReview(0)
+                .attachmentsSkipped(0)
+                .errors(Collections.synchronizedList(new ArrayList<>()))
+                .syncStatus("IN_PROGRESS")
+                .build();
+    }
+
+    /**
+     * Registra el error de un mensaje de Gmail y lo marca para reintentarlo en
+     * la siguiente sincronización.
+     */
+    public void messageFailed(String messageId, String error) {
+        errors.add(error);
+        failedMessageIds.add(messageId);
+    }
 }
@@ -0,0 +1,37 @@
+package com.construmedicis.buildtracking.email.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class InvoiceParseResultDTO {
+
+    private ParseStatus status;
+    private ParsedInvoiceDTO invoice; // Solo cuando status = VALID
+    private String reason; // Motivo cuando no es VALID
+
+    public static InvoiceParseResultDTO valid(ParsedInvoiceDTO invoice) {
+        return InvoiceParseResultDTO.builder().status(ParseStatus.VALID).invoice(invoice).build();
+    }
+
+    public static InvoiceParseResultDTO notDianInvoice(String reason) {
+        return InvoiceParseResultDTO.builder().status(ParseStatus.NOT_DIAN_INVOICE).reason(reason).build();
+    }
+
+    public static InvoiceParseResultDTO malformed(String reason) {
+        return InvoiceParseResultDTO.builder().status(ParseStatus.MALFORMED).reason(reason).build();
+    }
+
+    public boolean isValid() {
+        return status == ParseStatus.VALID;
+    }
+
+    public enum ParseStatus {
+        VALID, // Factura DIAN parseada
+        NOT_DIAN_INVOICE, // XML bien formado pero sin ID, fecha de emisión o proveedor
+        MALFORMED // XML ilegible, o montos/fechas que no se pueden convertir
+    }
+}
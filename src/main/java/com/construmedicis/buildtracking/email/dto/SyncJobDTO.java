@@ -0,0 +1,39 @@
+package com.construmedicis.buildtracking.email.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.construmedicis.buildtracking.email.models.SyncJob.SyncJobStatus;
+import com.construmedicis.buildtracking.email.models.SyncJob.SyncJobType;
+import com.construmedicis.buildtracking.invoice.dto.UploadedFileResultDTO;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SyncJobDTO {
+
+    private Long id;
+    private SyncJobType type;
+    private Long emailConfigId;
+    private String gmailLabel;
+    private String after;
+    private String before;
+    private Long projectId;
+    private SyncJobStatus status;
+    private Integer emailsProcessed;
+    private Integer invoicesCreated;
+    private Integer invoicesUpdated;
+    private Integer invoicesAutoAssigned;
+    private Integer invoicesPendingReview;
+    private Integer attachmentsSkipped;
+    private Integer errorCount;
+    private List<String> errors;
+    private List<UploadedFileResultDTO> files; // Solo para XML_UPLOAD, al terminar
+    private LocalDateTime createdDate;
+    private LocalDateTime startedDate;
+    private LocalDateTime finishedDate;
+}
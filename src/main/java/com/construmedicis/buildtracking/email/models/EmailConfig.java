@@ -1,5 +1,6 @@
 package com.construmedicis.buildtracking.email.models;
 
+import java.math.BigInteger;
 import java.time.LocalDateTime;
 
 import com.construmedicis.buildtracking.project.models.Project;
@@ -38,6 +39,16 @@ public class EmailConfig {
     @Column(name = "last_sync_date")
     private LocalDateTime lastSyncDate;
 
+    @Column(name = "gmail_history_id", precision = 20)
+    private BigInteger gmailHistoryId; // Checkpoint de Gmail para sincronización incremental
+
+    @Column(name = "retry_message_ids", columnDefinition = "TEXT")
+    private String retryMessageIds; // IDs separados por coma de mensajes que fallaron en la última sincronización
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "sync_mode")
+    private SyncMode syncMode;
+
     @Column(name = "auto_sync_enabled", nullable = false)
     private Boolean autoSyncEnabled;
 
@@ -57,10 +68,18 @@ public class EmailConfig {
         if (autoSyncEnabled == null) {
             autoSyncEnabled = false;
         }
+        if (syncMode == null) {
+            syncMode = SyncMode.INCREMENTAL;
+        }
     }
 
     @PreUpdate
     protected void onUpdate() {
         updatedDate = LocalDateTime.now();
     }
+
+    public enum SyncMode {
+        INCREMENTAL, // Solo mensajes nuevos desde el último historyId (users.history)
+        FULL_SCAN // Búsqueda por etiqueta y fecha de última sincronización
+    }
 }
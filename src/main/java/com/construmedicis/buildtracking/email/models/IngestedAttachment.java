@@ -0,0 +1,52 @@
+package com.construmedicis.buildtracking.email.models;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Registro de un adjunto de Gmail ya procesado por completo. Permite omitir en
+ * las re-sincronizaciones los adjuntos conocidos antes de descargarlos (por
+ * mensaje y parte) o antes de parsearlos (por hash del contenido).
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "ingested_attachments",
+        uniqueConstraints = @UniqueConstraint(name = "uk_ingested_attachment_part", columnNames = { "message_id", "part_id" }),
+        indexes = @Index(name = "idx_ingested_attachment_sha256", columnList = "sha256"))
+public class IngestedAttachment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ingested_attachment_id_seq")
+    @SequenceGenerator(name = "ingested_attachment_id_seq", sequenceName = "ingested_attachment_id_seq",
+            allocationSize = 50)
+    @Column(name = "ingested_attachment_id")
+    private Long id;
+
+    @Column(name = "message_id", nullable = false)
+    private String messageId;
+
+    @Column(name = "part_id", nullable = false)
+    private String partId; // partId de Gmail (estable, a diferencia del attachmentId)
+
+    @Column(name = "filename")
+    private String filename;
+
+    @Column(name = "sha256", nullable = false, length = 64)
+    private String sha256; // Hash del contenido decodificado del adjunto
+
+    @Column(name = "ingested_date", nullable = false)
+    private LocalDateTime ingestedDate;
+
+    @PrePersist
+    protected void onCreate() {
+        if (ingestedDate == null) {
+            ingestedDate = LocalDateTime.now();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.construmedicis.buildtracking.email.models;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Sincronización de Gmail ejecutada en segundo plano. Los contadores se
+ * actualizan periódicamente mientras corre, de modo que el cliente puede
+ * consultar el avance (polling o SSE) sin esperar a que termine.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "sync_jobs", indexes = @Index(name = "idx_sync_job_status", columnList = "status"))
+public class SyncJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sync_job_id_seq")
+    @SequenceGenerator(name = "sync_job_id_seq", sequenceName = "sync_job_id_seq", allocationSize = 1)
+    @Column(name = "sync_job_id")
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false)
+    private SyncJobType type;
+
+    @Column(name = "email_config_id")
+    private Long emailConfigId; // Solo para EMAIL_CONFIG
+
+    @Column(name = "gmail_label")
+    private String gmailLabel; // Solo para GMAIL_LABEL
+
+    @Column(name = "after_date")
+    private String after; // Solo para GMAIL_LABEL: fecha desde (yyyy/MM/dd, opcional)
+
+    @Column(name = "before_date")
+    private String before; // Solo para GMAIL_LABEL: fecha hasta (yyyy/MM/dd, opcional)
+
+    @Column(name = "project_id")
+    private Long projectId; // Solo para XML_UPLOAD (opcional)
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private SyncJobStatus status;
+
+    @Column(name = "emails_processed")
+    private Integer emailsProcessed;
+
+    @Column(name = "invoices_created")
+    private Integer invoicesCreated;
+
+    @Column(name = "invoices_updated")
+    private Integer invoicesUpdated;
+
+    @Column(name = "invoices_auto_assigned")
+    private Integer invoicesAutoAssigned;
+
+    @Column(name = "invoices_pending_review")
+    private Integer invoicesPendingReview;
+
+    @Column(name = "attachments_skipped")
+    private Integer attachmentsSkipped;
+
+    @Column(name = "error_count")
+    private Integer errorCount; // Total de errores, aunque solo se guarden los primeros
+
+    @Builder.Default
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "sync_job_errors", joinColumns = @JoinColumn(name = "sync_job_id"))
+    @OrderColumn(name = "position")
+    @Column(name = "error", length = 1000)
+    private List<String> errors = new ArrayList<>();
+
+    @Builder.Default
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "sync_job_files", joinColumns = @JoinColumn(name = "sync_job_id"))
+    @OrderColumn(name = "position")
+    private List<SyncJobFile> files = new ArrayList<>(); // Solo para XML_UPLOAD, al terminar
+
+    @Column(name = "created_date", nullable = false)
+    private LocalDateTime createdDate;
+
+    @Column(name = "started_date")
+    private LocalDateTime startedDate;
+
+    @Column(name = "finished_date")
+    private LocalDateTime finishedDate;
+
+    @PrePersist
+    protected void onCreate() {
+        createdDate = LocalDateTime.now();
+        if (status == null) {
+            status = SyncJobStatus.QUEUED;
+        }
+    }
+
+    public boolean isFinished() {
+        return status != SyncJobStatus.QUEUED && status != SyncJobStatus.RUNNING;
+    }
+
+    public enum SyncJobType {
+        GMAIL_LABEL, // Sincronización puntual por etiqueta (/api/invoices/sync-gmail)
+        EMAIL_CONFIG, // Sincronización de la configuración de un proyecto
+        XML_UPLOAD // Carga de archivos XML/ZIP (/api/invoices/upload)
+    }
+
+    public enum SyncJobStatus {
+        QUEUED,
+        RUNNING,
+        SUCCESS,
+        PARTIAL_SUCCESS,
+        FAILED
+    }
+}
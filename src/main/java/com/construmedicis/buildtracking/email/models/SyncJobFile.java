@@ -0,0 +1,33 @@
+package com.construmedicis.buildtracking.email.models;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Resultado de un archivo de una carga (trabajo XML_UPLOAD). Las listas se
+ * guardan unidas en una columna: facturas separadas por coma, XML rechazados
+ * y errores uno por línea.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Embeddable
+public class SyncJobFile {
+
+    @Column(name = "filename")
+    private String filename;
+
+    @Column(name = "status")
+    private String status; // SUCCESS, PARTIAL_SUCCESS, FAILED, SKIPPED, UNSUPPORTED
+
+    @Column(name = "invoice_numbers", columnDefinition = "TEXT")
+    private String invoiceNumbers;
+
+    @Column(name = "rejected_xmls", columnDefinition = "TEXT")
+    private String rejectedXmls;
+
+    @Column(name = "errors", columnDefinition = "TEXT")
+    private String errors;
+}
@@ -1,10 +1,16 @@
 package com.construmedicis.buildtracking.email.repository;
 
+import java.math.BigInteger;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.construmedicis.buildtracking.email.models.EmailConfig;
 
@@ -14,4 +20,18 @@ public interface EmailConfigRepository extends JpaRepository<EmailConfig, Long>
     Optional<EmailConfig> findByProjectId(Long projectId);
 
     List<EmailConfig> findByAutoSyncEnabledTrue();
+
+    /**
+     * Guarda solo el checkpoint de la sincronización, sin tocar el resto de la
+     * configuración (que pudo cambiar mientras la sincronización corría). Un
+     * historyId null conserva el anterior; retryMessageIds reemplaza la lista
+     * de mensajes pendientes de reintento.
+     */
+    @Modifying
+    @Transactional
+    @Query("update EmailConfig e set e.lastSyncDate = :lastSyncDate, "
+            + "e.gmailHistoryId = coalesce(:historyId, e.gmailHistoryId), "
+            + "e.retryMessageIds = :retryMessageIds where e.id = :id")
+    int updateSyncCheckpoint(@Param("id") Long id, @Param("lastSyncDate") LocalDateTime lastSyncDate,
+            @Param("historyId") BigInteger historyId, @Param("retryMessageIds") String retryMessageIds);
 }
@@ -0,0 +1,20 @@
+package com.construmedicis.buildtracking.email.repository;
+
+import java.util.stream.Stream;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.construmedicis.buildtracking.email.models.IngestedAttachment;
+
+@Repository
+public interface IngestedAttachmentRepository extends JpaRepository<IngestedAttachment, Long> {
+
+    boolean existsByMessageIdAndPartId(String messageId, String partId);
+
+    boolean existsBySha256(String sha256);
+
+    @Query("select a.messageId, a.partId, a.sha256 from IngestedAttachment a")
+    Stream<Object[]> streamLedgerKeys();
+}
@@ -0,0 +1,16 @@
+package com.construmedicis.buildtracking.email.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.construmedicis.buildtracking.email.models.SyncJob;
+import com.construmedicis.buildtracking.email.models.SyncJob.SyncJobStatus;
+
+@Repository
+public interface SyncJobRepository extends JpaRepository<SyncJob, Long> {
+
+    List<SyncJob> findByStatusIn(Collection<SyncJobStatus> statuses);
+}
@@ -0,0 +1,46 @@
+package com.construmedicis.buildtracking.email.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface AttachmentExtractor {
+
+    /**
+     * Copia el contenido de un adjunto a memoria, o a un archivo temporal si
+     * supera el umbral de spill, para poder recorrerlo después sin depender del
+     * stream de origen.
+     *
+     * @param filename Nombre del adjunto
+     * @param content  Stream con el contenido decodificado; no se cierra
+     * @return Adjunto en memoria o respaldado en disco; el llamador debe
+     *         cerrarlo
+     * @throws IOException Si falla la lectura o el spill a disco
+     */
+    InvoiceAttachment buffer(String filename, InputStream content) throws IOException;
+
+    /**
+     * Entrega uno a uno los XML de factura contenidos en un adjunto. Un adjunto
+     * .xml se entrega tal cual; de un .zip se leen las entradas .xml en orden,
+     * sin extraerlas a disco, y cada una se entrega apenas se termina de leer.
+     * <p>
+     * El adjunto queda en manos de este método: se cierra al terminar, salvo
+     * que se entregue él mismo (XML suelto). Cada XML entregado debe cerrarlo
+     * quien lo recibe.
+     *
+     * @param attachment Adjunto XML o ZIP
+     * @param consumer   Recibe cada XML; puede bloquear (backpressure)
+     * @throws IOException Si el ZIP está corrupto o falla el spill a disco
+     */
+    void extractXml(InvoiceAttachment attachment, XmlConsumer consumer) throws IOException, InterruptedException;
+
+    /**
+     * Indica si el nombre de archivo corresponde a un adjunto que puede contener
+     * facturas (XML o ZIP).
+     */
+    boolean isSupported(String filename);
+
+    @FunctionalInterface
+    interface XmlConsumer {
+        void accept(InvoiceAttachment xml) throws InterruptedException;
+    }
+}
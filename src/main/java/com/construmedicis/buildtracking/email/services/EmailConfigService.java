@@ -21,5 +21,12 @@ public interface EmailConfigService {
 
     List<EmailConfigDTO> findAutoSyncEnabled();
 
-    EmailSyncResultDTO syncEmails(Long id);
+    /**
+     * Sincroniza la configuración y, si terminó con éxito (total o parcial),
+     * avanza su fecha de última sincronización y checkpoint de Gmail.
+     *
+     * @param id     Configuración a sincronizar
+     * @param result Estadísticas a llenar durante la sincronización
+     */
+    void syncEmails(Long id, EmailSyncResultDTO result);
 }
@@ -7,11 +7,12 @@ public interface EmailExtractionService {
 
     /**
      * Sincroniza emails para una configuración específica.
-     * Descarga adjuntos XML, parsea facturas, crea registros en BD,
-     * evalúa reglas de asignación y elimina archivos temporales.
+     * Lista los mensajes nuevos de la etiqueta y entrega sus adjuntos al motor
+     * de ingesta de facturas (parseo, persistencia y asignación).
      * 
      * @param emailConfig Configuración de email a sincronizar
-     * @return Resultado de la sincronización con estadísticas
+     * @param result      Estadísticas a llenar durante la sincronización (se
+     *                    leen como progreso mientras avanza)
      */
-    EmailSyncResultDTO syncEmailsForConfig(EmailConfig emailConfig);
+    void syncEmailsForConfig(EmailConfig emailConfig, EmailSyncResultDTO result);
 }
@@ -9,7 +9,8 @@ public interface GmailAuthService {
 
     /**
      * Obtiene un cliente de Gmail autenticado usando las credenciales
-     * y tokens almacenados en las rutas proporcionadas.
+     * y tokens almacenados en las rutas proporcionadas. El cliente se reutiliza
+     * entre llamadas con las mismas rutas.
      * 
      * @param credentialsPath     Ruta al archivo credentials.json
      * @param tokensDirectoryPath Ruta al directorio donde se almacenan los tokens
@@ -20,6 +21,16 @@ public interface GmailAuthService {
     Gmail getGmailService(String credentialsPath, String tokensDirectoryPath)
             throws IOException, GeneralSecurityException;
 
+    /**
+     * Descarta el cliente en caché para estas rutas; el siguiente
+     * {@link #getGmailService(String, String)} lo reconstruye. Se usa cuando
+     * cambia o se elimina la configuración que lo usaba.
+     * 
+     * @param credentialsPath     Ruta al archivo credentials.json
+     * @param tokensDirectoryPath Ruta al directorio donde se almacenan los tokens
+     */
+    void evict(String credentialsPath, String tokensDirectoryPath);
+
     /**
      * Autoriza la aplicación con Gmail. Si es la primera vez, generará una URL
      * para que el usuario autorice la aplicación. Los tokens se guardarán en
@@ -0,0 +1,85 @@
+package com.construmedicis.buildtracking.email.services;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Optional;
+
+import com.construmedicis.buildtracking.email.dto.EmailSyncResultDTO;
+import com.construmedicis.buildtracking.invoice.services.AttachmentSource;
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.Message;
+
+public interface GmailMessageService {
+
+    /**
+     * Lista los IDs de todos los mensajes que cumplen la query, siguiendo
+     * nextPageToken hasta agotar los resultados.
+     * 
+     * @param gmailService Cliente de Gmail autenticado
+     * @param query        Query de búsqueda de Gmail (ej: label:Facturas)
+     * @return IDs de los mensajes encontrados
+     * @throws IOException Si falla alguna de las llamadas a la API
+     */
+    List<String> listMessageIds(Gmail gmailService, String query) throws IOException;
+
+    /**
+     * Descarga los mensajes indicados agrupando las llamadas
+     * messages.get en peticiones batch de Gmail.
+     * 
+     * @param gmailService Cliente de Gmail autenticado
+     * @param messageIds   IDs de los mensajes a descargar
+     * @param result       Resultado donde se registran los mensajes que no se
+     *                     pudieron descargar
+     * @return Mensajes descargados con su payload
+     * @throws IOException Si falla la petición batch completa
+     */
+    List<Message> getMessages(Gmail gmailService, List<String> messageIds, EmailSyncResultDTO result)
+            throws IOException;
+
+    /**
+     * Fuente de adjuntos para el motor de ingesta: descarga los mensajes en
+     * peticiones batch y publica todos sus adjuntos (incluidos los anidados en
+     * partes multipart); el contenido de cada adjunto se descarga cuando el
+     * motor lo pide.
+     * 
+     * @param gmailService Cliente de Gmail autenticado
+     * @param messageIds   IDs de los mensajes a recorrer
+     * @param result       Resultado donde se registran los mensajes que no se
+     *                     pudieron descargar
+     */
+    AttachmentSource attachmentSource(Gmail gmailService, List<String> messageIds, EmailSyncResultDTO result);
+
+    /**
+     * Lista los IDs de los mensajes que entraron a la etiqueta después del
+     * checkpoint indicado (mensajes nuevos o a los que se les aplicó la
+     * etiqueta), usando users.history.list.
+     * 
+     * @param gmailService   Cliente de Gmail autenticado
+     * @param startHistoryId Checkpoint de la última sincronización
+     * @param labelId        ID (no nombre) de la etiqueta de Gmail
+     * @return IDs de los mensajes, o vacío si el checkpoint expiró y se requiere
+     *         una búsqueda completa
+     * @throws IOException Si falla alguna de las llamadas a la API
+     */
+    Optional<List<String>> listMessageIdsAddedSince(Gmail gmailService, BigInteger startHistoryId, String labelId)
+            throws IOException;
+
+    /**
+     * Obtiene el historyId actual del buzón, usado como checkpoint de la
+     * siguiente sincronización incremental.
+     */
+    BigInteger getCurrentHistoryId(Gmail gmailService) throws IOException;
+
+    /**
+     * Busca el ID de una etiqueta por su nombre (sin distinguir mayúsculas).
+     * 
+     * @return ID de la etiqueta, o null si no existe
+     */
+    String findLabelId(Gmail gmailService, String labelName) throws IOException;
+
+    /**
+     * Número de mensajes que se agrupan en cada petición batch.
+     */
+    int getBatchSize();
+}
@@ -0,0 +1,77 @@
+package com.construmedicis.buildtracking.email.services;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.services.AbstractGoogleClientRequest;
+import com.google.api.services.gmail.Gmail;
+
+/**
+ * Control de la cuota por usuario de la API de Gmail. Cada llamada consume las
+ * unidades de cuota de su método de un bucket compartido por todas las
+ * sincronizaciones que usan el mismo cliente (mismo buzón), y los errores de
+ * límite (429, 403 rateLimitExceeded) o transitorios (5xx, fallas de red) se
+ * reintentan con espera exponencial y jitter.
+ * <p>
+ * Las esperas interrumpidas se reportan como {@link InterruptedIOException}
+ * (con el flag de interrupción restaurado) para no cambiar las firmas de los
+ * llamadores.
+ */
+public interface GmailQuotaService {
+
+    /**
+     * Ejecuta la petición consumiendo la cuota del método y reintentando los
+     * errores recuperables.
+     */
+    <T> T execute(Gmail gmailService, GmailMethod method, AbstractGoogleClientRequest<T> request)
+            throws IOException;
+
+    /**
+     * Consume unidades de cuota, bloqueando hasta que la tasa lo permita. Para
+     * peticiones batch, donde cada llamada interna cuenta por separado.
+     */
+    void acquire(Gmail gmailService, int units) throws InterruptedIOException;
+
+    /** Indica si un error de una llamada dentro de un batch se puede reintentar. */
+    boolean isRetryable(GoogleJsonError error);
+
+    /** Indica si una excepción de la API o de red se puede reintentar. */
+    boolean isRetryable(IOException e);
+
+    /** Indica si el error de una llamada en batch fue por límite de cuota. */
+    boolean isRateLimited(GoogleJsonError error);
+
+    /** Indica si la excepción de la API fue por límite de cuota. */
+    boolean isRateLimited(IOException e);
+
+    /**
+     * Espera antes del reintento número attempt. Si el fallo fue por límite de
+     * cuota también frena el bucket compartido, para que las demás
+     * sincronizaciones del mismo buzón bajen el ritmo.
+     */
+    void backoff(Gmail gmailService, int attempt, boolean rateLimited) throws InterruptedIOException;
+
+    /** Intentos totales por llamada (el primero más los reintentos). */
+    int getMaxAttempts();
+
+    /** Unidades de cuota por método según la documentación de la API de Gmail. */
+    enum GmailMethod {
+        MESSAGES_LIST(5),
+        MESSAGES_GET(5),
+        ATTACHMENTS_GET(5),
+        HISTORY_LIST(2),
+        GET_PROFILE(1),
+        LABELS_LIST(1);
+
+        private final int units;
+
+        GmailMethod(int units) {
+            this.units = units;
+        }
+
+        public int getUnits() {
+            return units;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.construmedicis.buildtracking.email.services;
+
+import java.io.InputStream;
+import java.security.DigestInputStream;
+
+public interface IngestionLedgerService {
+
+    /**
+     * Indica si el adjunto (mensaje + parte) ya fue procesado. Se consulta antes
+     * de descargarlo.
+     */
+    boolean isAttachmentIngested(String messageId, String partId);
+
+    /**
+     * Indica si ya se procesó un adjunto con exactamente este contenido (ej: la
+     * misma factura reenviada en otro correo). Se consulta antes de parsearlo.
+     */
+    boolean isContentIngested(String sha256);
+
+    /**
+     * Registra el adjunto como procesado. Solo debe llamarse cuando todas sus
+     * facturas quedaron guardadas (o se descartaron por no ser DIAN), para que
+     * los adjuntos con errores se reintenten en la siguiente sincronización.
+     */
+    void recordIngested(String messageId, String partId, String filename, String sha256);
+
+    /**
+     * Envuelve el contenido de un adjunto para calcular su SHA-256 mientras se
+     * lee, sin una segunda pasada.
+     */
+    DigestInputStream digesting(InputStream content);
+
+    /**
+     * SHA-256 en hexadecimal de todo lo leído del stream.
+     */
+    String sha256(DigestInputStream content);
+}
@@ -0,0 +1,60 @@
+package com.construmedicis.buildtracking.email.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * XML de factura listo para parsear. El contenido vive en memoria y solo se
+ * respalda en un archivo temporal cuando supera el umbral de spill configurado;
+ * {@link #close()} elimina ese archivo.
+ */
+public final class InvoiceAttachment implements AutoCloseable {
+
+    private final String filename;
+    private final byte[] content;
+    private final Path spillFile;
+
+    private InvoiceAttachment(String filename, byte[] content, Path spillFile) {
+        this.filename = filename;
+        this.content = content;
+        this.spillFile = spillFile;
+    }
+
+    public static InvoiceAttachment inMemory(String filename, byte[] content) {
+        return new InvoiceAttachment(filename, content, null);
+    }
+
+    public static InvoiceAttachment spilled(String filename, Path spillFile) {
+        return new InvoiceAttachment(filename, null, spillFile);
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Abre un stream nuevo sobre el contenido; se puede llamar varias veces (ej:
+     * validar y luego parsear).
+     */
+    public InputStream openStream() throws IOException {
+        return content != null ? new ByteArrayInputStream(content) : Files.newInputStream(spillFile);
+    }
+
+    public long size() throws IOException {
+        return content != null ? content.length : Files.size(spillFile);
+    }
+
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (spillFile != null) {
+            Files.deleteIfExists(spillFile);
+        }
+    }
+}
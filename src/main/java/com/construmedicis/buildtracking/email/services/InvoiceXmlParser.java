@@ -2,11 +2,23 @@ package com.construmedicis.buildtracking.email.services;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
+import com.construmedicis.buildtracking.email.dto.InvoiceParseResultDTO;
 import com.construmedicis.buildtracking.email.dto.ParsedInvoiceDTO;
 
 public interface InvoiceXmlParser {
 
+    /**
+     * Valida y parsea una factura electrónica DIAN en una sola lectura del XML.
+     * No lanza excepción por contenido inválido: el resultado indica si es una
+     * factura válida, si el XML no es una factura DIAN o si está mal formado.
+     * 
+     * @param xmlStream Contenido del XML
+     * @return Resultado tipado con la factura parseada o el motivo del rechazo
+     */
+    InvoiceParseResultDTO parse(InputStream xmlStream);
+
     /**
      * Parsea un archivo XML de factura electrónica en formato DIAN (Colombia)
      * y extrae toda la información relevante.
@@ -17,6 +29,16 @@ public interface InvoiceXmlParser {
      */
     ParsedInvoiceDTO parseXml(File xmlFile) throws IOException;
 
+    /**
+     * Parsea una factura electrónica DIAN directamente desde un stream, sin
+     * pasar por disco.
+     * 
+     * @param xmlStream Contenido del XML
+     * @return DTO con la información de la factura parseada
+     * @throws IOException Si hay problemas leyendo el stream
+     */
+    ParsedInvoiceDTO parseXml(InputStream xmlStream) throws IOException;
+
     /**
      * Valida que un archivo XML tenga el formato correcto de factura electrónica
      * DIAN.
@@ -25,4 +47,12 @@ public interface InvoiceXmlParser {
      * @return true si el archivo es válido, false en caso contrario
      */
     boolean isValidInvoiceXml(File xmlFile);
+
+    /**
+     * Valida el formato DIAN de un XML leído desde un stream.
+     * 
+     * @param xmlStream Contenido del XML
+     * @return true si el XML es válido, false en caso contrario
+     */
+    boolean isValidInvoiceXml(InputStream xmlStream);
 }
@@ -0,0 +1,59 @@
+package com.construmedicis.buildtracking.email.services;
+
+import java.util.List;
+
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.construmedicis.buildtracking.email.dto.SyncJobDTO;
+
+/**
+ * Ejecuta las sincronizaciones de Gmail y las cargas de archivos como trabajos
+ * en segundo plano. El
+ * envío devuelve el trabajo de inmediato; su avance se consulta por id o se
+ * recibe como Server-Sent Events.
+ */
+public interface SyncJobService {
+
+    /**
+     * Encola la sincronización de una configuración de email. Si ya hay un
+     * trabajo pendiente o en curso para la misma configuración se devuelve ese
+     * trabajo en lugar de lanzar otro.
+     *
+     * @param emailConfigId Configuración a sincronizar
+     * @return Trabajo encolado (o el que ya estaba activo)
+     */
+    SyncJobDTO submitEmailConfigSync(Long emailConfigId);
+
+    /**
+     * Encola la sincronización por etiqueta de Gmail, deduplicada por etiqueta
+     * y rango de fechas igual que {@link #submitEmailConfigSync(Long)}.
+     *
+     * @param gmailLabel Etiqueta de Gmail para filtrar correos
+     * @param after      Fecha desde (formato yyyy/MM/dd, opcional)
+     * @param before     Fecha hasta (formato yyyy/MM/dd, opcional)
+     * @return Trabajo encolado (o el que ya estaba activo)
+     */
+    SyncJobDTO submitLabelSync(String gmailLabel, String after, String before);
+
+    /**
+     * Encola la carga de archivos XML/ZIP de facturas. Los archivos se copian
+     * a un directorio temporal antes de volver, porque el multipart deja de
+     * existir al terminar la petición; el directorio se borra al terminar el
+     * trabajo. Cada carga es un trabajo distinto (no se deduplica).
+     *
+     * @param files     Archivos .xml o .zip
+     * @param projectId Proyecto al que se asocian los ítems de catálogo
+     *                  (opcional)
+     * @return Trabajo encolado
+     */
+    SyncJobDTO submitUpload(List<MultipartFile> files, Long projectId);
+
+    SyncJobDTO findById(Long id);
+
+    /**
+     * Suscribe al avance del trabajo: eventos "progress" con el estado actual
+     * y un evento "completed" al terminar, tras el cual se cierra el stream.
+     */
+    SseEmitter subscribe(Long id);
+}
@@ -0,0 +1,192 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.construmedicis.buildtracking.email.services.AttachmentExtractor;
+import com.construmedicis.buildtracking.email.services.InvoiceAttachment;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class AttachmentExtractorImpl implements AttachmentExtractor {
+
+    private static final String TEMP_DIR = System.getProperty("java.io.tmpdir") + "/buildtracking_invoices/";
+
+    // Por debajo de este tamaño no se mide la relación de compresión: un XML
+    // pequeño y repetitivo puede comprimir mucho sin ser peligroso
+    private static final long RATIO_CHECK_MIN_BYTES = 1024 * 1024;
+
+    private final long spillThresholdBytes;
+    private final int zipMaxEntries;
+    private final long zipMaxUncompressedBytes;
+    private final int zipMaxCompressionRatio;
+
+    public AttachmentExtractorImpl(
+            @Value("${buildtracking.attachments.spill-threshold-bytes:8388608}") long spillThresholdBytes,
+            @Value("${buildtracking.attachments.zip-max-entries:10000}") int zipMaxEntries,
+            @Value("${buildtracking.attachments.zip-max-uncompressed-bytes:1073741824}") long zipMaxUncompressedBytes,
+            @Value("${buildtracking.attachments.zip-max-compression-ratio:100}") int zipMaxCompressionRatio) {
+        this.spillThresholdBytes = spillThresholdBytes;
+        this.zipMaxEntries = zipMaxEntries;
+        this.zipMaxUncompressedBytes = zipMaxUncompressedBytes;
+        this.zipMaxCompressionRatio = zipMaxCompressionRatio;
+    }
+
+    @Override
+    public boolean isSupported(String filename) {
+        return filename != null && (isXml(filename) || filename.toLowerCase().endsWith(".zip"));
+    }
+
+    @Override
+    public InvoiceAttachment buffer(String filename, InputStream content) throws IOException {
+        return readEntry(filename, content);
+    }
+
+    @Override
+    public void extractXml(InvoiceAttachment attachment, XmlConsumer consumer)
+            throws IOException, InterruptedException {
+        String filename = attachment.getFilename();
+        if (isXml(filename)) {
+            // Ya está decodificado: se entrega sin copiarlo
+            consumer.accept(attachment);
+            return;
+        }
+
+        try (attachment;
+                ZipArchiveInputStream zip = new ZipArchiveInputStream(
+                        new BufferedInputStream(attachment.openStream()), StandardCharsets.UTF_8.name(), true,
+                        true)) {
+            BoundedZipStream bounded = new BoundedZipStream(filename, zip);
+            ZipArchiveEntry entry;
+            int entries = 0;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (++entries > zipMaxEntries) {
+                    throw new IOException("ZIP " + filename + " supera el máximo de " + zipMaxEntries + " entradas");
+                }
+                String entryName = baseName(entry.getName());
+                if (entry.isDirectory() || entry.getName().startsWith("__MACOSX/") || !isXml(entryName)) {
+                    log.debug("Entrada de ZIP omitida (no XML): {}", entry.getName());
+                    continue;
+                }
+                InvoiceAttachment xml = readEntry(entryName, bounded);
+                log.debug("XML leído de ZIP {}: {}", filename, entryName);
+                try {
+                    consumer.accept(xml);
+                } catch (InterruptedException e) {
+                    // No dejar archivos de spill huérfanos si se cancela a la mitad
+                    xml.close();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lee el stream (adjunto o entrada actual del ZIP) en memoria; si supera el
+     * umbral, vuelca lo leído y el resto a un archivo temporal con nombre único.
+     */
+    private InvoiceAttachment readEntry(String entryName, InputStream zip) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = zip.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+            if (buffer.size() > spillThresholdBytes) {
+                return spill(entryName, buffer, zip);
+            }
+        }
+        return InvoiceAttachment.inMemory(entryName, buffer.toByteArray());
+    }
+
+    private InvoiceAttachment spill(String entryName, ByteArrayOutputStream buffer, InputStream zip)
+            throws IOException {
+        Path dir = Files.createDirectories(Path.of(TEMP_DIR));
+        Path spillFile = Files.createTempFile(dir, "att_", ".tmp");
+        try (OutputStream out = Files.newOutputStream(spillFile)) {
+            buffer.writeTo(out);
+            zip.transferTo(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(spillFile);
+            throw e;
+        }
+        log.info("Adjunto {} supera {} bytes, respaldado en {}", entryName, spillThresholdBytes, spillFile);
+        return InvoiceAttachment.spilled(entryName, spillFile);
+    }
+
+    /**
+     * Vista de la entrada actual del ZIP que corta la lectura si el archivo
+     * descomprime más de lo permitido en total o si la entrada tiene una
+     * relación de compresión anómala. Los tamaños declarados en la cabecera
+     * no sirven (los pone quien arma el ZIP); se cuentan los bytes reales.
+     */
+    private final class BoundedZipStream extends FilterInputStream {
+        private final String filename;
+        private final ZipArchiveInputStream zip;
+        private long totalRead;
+
+        BoundedZipStream(String filename, ZipArchiveInputStream zip) {
+            super(zip);
+            this.filename = filename;
+            this.zip = zip;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = zip.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = zip.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // El ZIP lo cierra extractXml
+        }
+
+        private void count(int read) throws IOException {
+            totalRead += read;
+            if (totalRead > zipMaxUncompressedBytes) {
+                throw new IOException("ZIP " + filename + " supera el máximo de " + zipMaxUncompressedBytes
+                        + " bytes descomprimidos");
+            }
+            long uncompressed = zip.getUncompressedCount();
+            if (uncompressed > RATIO_CHECK_MIN_BYTES
+                    && uncompressed > zipMaxCompressionRatio * Math.max(zip.getCompressedCount(), 1)) {
+                throw new IOException("ZIP " + filename + " tiene una entrada con relación de compresión mayor a "
+                        + zipMaxCompressionRatio + ":1");
+            }
+        }
+    }
+
+    private boolean isXml(String filename) {
+        return filename.toLowerCase().endsWith(".xml");
+    }
+
+    private String baseName(String entryName) {
+        return entryName.substring(entryName.lastIndexOf('/') + 1);
+    }
+}
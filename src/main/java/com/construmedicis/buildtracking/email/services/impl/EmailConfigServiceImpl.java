@@ -1,5 +1,6 @@
 package com.construmedicis.buildtracking.email.services.impl;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -12,6 +13,7 @@ import com.construmedicis.buildtracking.email.models.EmailConfig;
 import com.construmedicis.buildtracking.email.repository.EmailConfigRepository;
 import com.construmedicis.buildtracking.email.services.EmailConfigService;
 import com.construmedicis.buildtracking.email.services.EmailExtractionService;
+import com.construmedicis.buildtracking.email.services.GmailAuthService;
 import com.construmedicis.buildtracking.project.models.Project;
 import com.construmedicis.buildtracking.project.repository.ProjectRepository;
 import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
@@ -25,6 +27,7 @@ public class EmailConfigServiceImpl implements EmailConfigService {
     private final EmailConfigRepository emailConfigRepository;
     private final ProjectRepository projectRepository;
     private final EmailExtractionService emailExtractionService;
+    private final GmailAuthService gmailAuthService;
 
     @Override
     @Transactional
@@ -44,6 +47,7 @@ public class EmailConfigServiceImpl implements EmailConfigService {
                 .tokensDirectory(emailConfigDTO.getTokensDirectory())
                 .gmailLabel(emailConfigDTO.getGmailLabel())
                 .lastSyncDate(emailConfigDTO.getLastSyncDate())
+                .syncMode(emailConfigDTO.getSyncMode())
                 .autoSyncEnabled(emailConfigDTO.getAutoSyncEnabled())
                 .syncFrequencyHours(emailConfigDTO.getSyncFrequencyHours())
                 .build();
@@ -65,14 +69,23 @@ public class EmailConfigServiceImpl implements EmailConfigService {
             emailConfig.setProject(project);
         }
 
+        String previousCredentialsPath = emailConfig.getCredentialsPath();
+        String previousTokensDirectory = emailConfig.getTokensDirectory();
         if (emailConfigDTO.getCredentialsPath() != null) {
             emailConfig.setCredentialsPath(emailConfigDTO.getCredentialsPath());
         }
         if (emailConfigDTO.getTokensDirectory() != null) {
             emailConfig.setTokensDirectory(emailConfigDTO.getTokensDirectory());
         }
-        if (emailConfigDTO.getGmailLabel() != null) {
+        if (emailConfigDTO.getGmailLabel() != null
+                && !emailConfigDTO.getGmailLabel().equals(emailConfig.getGmailLabel())) {
             emailConfig.setGmailLabel(emailConfigDTO.getGmailLabel());
+            // El checkpoint y los reintentos corresponden a la etiqueta anterior
+            emailConfig.setGmailHistoryId(null);
+            emailConfig.setRetryMessageIds(null);
+        }
+        if (emailConfigDTO.getSyncMode() != null) {
+            emailConfig.setSyncMode(emailConfigDTO.getSyncMode());
         }
         if (emailConfigDTO.getAutoSyncEnabled() != null) {
             emailConfig.setAutoSyncEnabled(emailConfigDTO.getAutoSyncEnabled());
@@ -82,6 +95,10 @@ public class EmailConfigServiceImpl implements EmailConfigService {
         }
 
         EmailConfig updated = emailConfigRepository.save(emailConfig);
+        if (!previousCredentialsPath.equals(updated.getCredentialsPath())
+                || !previousTokensDirectory.equals(updated.getTokensDirectory())) {
+            gmailAuthService.evict(previousCredentialsPath, previousTokensDirectory);
+        }
         return toDTO(updated);
     }
 
@@ -91,6 +108,7 @@ public class EmailConfigServiceImpl implements EmailConfigService {
         EmailConfig emailConfig = emailConfigRepository.findById(id)
                 .orElseThrow(() -> new BusinessRuleException("email.config.not.found"));
         emailConfigRepository.delete(emailConfig);
+        gmailAuthService.evict(emailConfig.getCredentialsPath(), emailConfig.getTokensDirectory());
     }
 
     @Override
@@ -125,22 +143,31 @@ public class EmailConfigServiceImpl implements EmailConfigService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Sin transacción global: el motor de ingesta guarda cada factura en su
+     * propia transacción y al final solo se escribe el checkpoint, sin guardar
+     * la configuración leída al inicio (los cambios hechos mientras la
+     * sincronización corría se conservan).
+     */
     @Override
-    @Transactional
-    public EmailSyncResultDTO syncEmails(Long id) {
+    public void syncEmails(Long id, EmailSyncResultDTO result) {
         EmailConfig emailConfig = emailConfigRepository.findById(id)
                 .orElseThrow(() -> new BusinessRuleException("email.config.not.found"));
 
         // Delegar la sincronización al EmailExtractionService
-        EmailSyncResultDTO result = emailExtractionService.syncEmailsForConfig(emailConfig);
+        emailExtractionService.syncEmailsForConfig(emailConfig, result);
 
-        // Actualizar lastSyncDate si la sincronización fue exitosa
+        // Actualizar lastSyncDate y el checkpoint de Gmail si la sincronización fue
+        // exitosa. En una sincronización parcial el checkpoint avanza igual (el
+        // scheduler y la búsqueda after: dependen de lastSyncDate) y los mensajes
+        // que fallaron quedan guardados para reintentarlos en la siguiente
         if ("SUCCESS".equals(result.getSyncStatus()) || "PARTIAL_SUCCESS".equals(result.getSyncStatus())) {
-            emailConfig.setLastSyncDate(java.time.LocalDateTime.now());
-            emailConfigRepository.save(emailConfig);
+            String retryMessageIds = result.getFailedMessageIds().isEmpty()
+                    ? null
+                    : String.join(",", result.getFailedMessageIds());
+            emailConfigRepository.updateSyncCheckpoint(id, LocalDateTime.now(), result.getHistoryId(),
+                    retryMessageIds);
         }
-
-        return result;
     }
 
     private EmailConfigDTO toDTO(EmailConfig emailConfig) {
@@ -151,6 +178,8 @@ public class EmailConfigServiceImpl implements EmailConfigService {
                 .tokensDirectory(emailConfig.getTokensDirectory())
                 .gmailLabel(emailConfig.getGmailLabel())
                 .lastSyncDate(emailConfig.getLastSyncDate())
+                .gmailHistoryId(emailConfig.getGmailHistoryId())
+                .syncMode(emailConfig.getSyncMode())
                 .autoSyncEnabled(emailConfig.getAutoSyncEnabled())
                 .syncFrequencyHours(emailConfig.getSyncFrequencyHours())
                 .createdDate(emailConfig.getCreatedDate())
@@ -0,0 +1,198 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.construmedicis.buildtracking.email.dto.SyncJobDTO;
+import com.construmedicis.buildtracking.email.models.EmailConfig;
+import com.construmedicis.buildtracking.email.models.SyncJob.SyncJobStatus;
+import com.construmedicis.buildtracking.email.repository.EmailConfigRepository;
+import com.construmedicis.buildtracking.email.services.SyncJobService;
+import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sincronización automática de las configuraciones con autoSyncEnabled.
+ * <p>
+ * Cada configuración tiene un minuto fijo dentro de la hora (derivado de su
+ * id) y se sincroniza en ese minuto cada syncFrequencyHours horas, de modo que
+ * muchas configuraciones con la misma frecuencia no golpean la cuota de Gmail
+ * a la vez. Las sincronizaciones se lanzan como trabajos de
+ * {@link SyncJobService} con un máximo de trabajos automáticos simultáneos; si
+ * una falla, se reintenta con espera exponencial (con jitter) en lugar de
+ * esperar a la siguiente ventana.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "buildtracking.scheduler.enabled", havingValue = "true", matchIfMissing = true)
+public class EmailSyncScheduler {
+
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private final EmailConfigRepository emailConfigRepository;
+    private final SyncJobService syncJobService;
+    private final int maxConcurrent;
+    private final int defaultFrequencyHours;
+    private final Duration retryBase;
+    private final Duration retryMax;
+
+    // Estado por configuración; solo lo usa el hilo del scheduler
+    private final Map<Long, ScheduleState> states = new HashMap<>();
+
+    public EmailSyncScheduler(EmailConfigRepository emailConfigRepository,
+            SyncJobService syncJobService,
+            @Value("${buildtracking.scheduler.max-concurrent:2}") int maxConcurrent,
+            @Value("${buildtracking.scheduler.default-frequency-hours:24}") int defaultFrequencyHours,
+            @Value("${buildtracking.scheduler.retry-base-minutes:5}") long retryBaseMinutes,
+            @Value("${buildtracking.scheduler.retry-max-hours:24}") long retryMaxHours) {
+        this.emailConfigRepository = emailConfigRepository;
+        this.syncJobService = syncJobService;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.defaultFrequencyHours = Math.max(1, defaultFrequencyHours);
+        this.retryBase = Duration.ofMinutes(Math.max(1, retryBaseMinutes));
+        this.retryMax = Duration.ofHours(Math.max(1, retryMaxHours));
+    }
+
+    @Scheduled(initialDelayString = "${buildtracking.scheduler.tick-ms:60000}",
+            fixedDelayString = "${buildtracking.scheduler.tick-ms:60000}")
+    public void tick() {
+        try {
+            runDueSyncs(LocalDateTime.now());
+        } catch (RuntimeException e) {
+            log.error("Error en el scheduler de sincronización: {}", e.getMessage(), e);
+        }
+    }
+
+    private void runDueSyncs(LocalDateTime now) {
+        // Revisar primero los trabajos lanzados: así las configuraciones que se
+        // leen después ya traen la fecha de sincronización que guardó el trabajo
+        int running = 0;
+        for (Map.Entry<Long, ScheduleState> entry : states.entrySet()) {
+            ScheduleState state = entry.getValue();
+            if (state.activeJobId != null && !checkFinished(entry.getKey(), state, now)) {
+                running++;
+            }
+        }
+
+        Map<Long, EmailConfig> configs = emailConfigRepository.findByAutoSyncEnabledTrue().stream()
+                .collect(Collectors.toMap(EmailConfig::getId, config -> config));
+        // Configuraciones eliminadas o con autoSync desactivado
+        states.keySet().retainAll(configs.keySet());
+
+        for (EmailConfig config : configs.values()) {
+            ScheduleState state = states.computeIfAbsent(config.getId(), id -> new ScheduleState());
+            if (state.activeJobId == null && state.failures == 0) {
+                state.nextDue = nextDue(config, state.nextDue, now);
+            }
+        }
+
+        List<Long> due = states.entrySet().stream()
+                .filter(entry -> entry.getValue().activeJobId == null && !entry.getValue().nextDue.isAfter(now))
+                .sorted(Comparator.comparing(entry -> entry.getValue().nextDue))
+                .map(Map.Entry::getKey)
+                .toList();
+
+        for (int i = 0; i < due.size(); i++) {
+            if (running >= maxConcurrent) {
+                log.info("{} sincronizaciones automáticas pendientes esperan cupo", due.size() - i);
+                break;
+            }
+            Long configId = due.get(i);
+            ScheduleState state = states.get(configId);
+            try {
+                SyncJobDTO job = syncJobService.submitEmailConfigSync(configId);
+                state.activeJobId = job.getId();
+                running++;
+                log.info("Sincronización automática de la configuración {} lanzada (trabajo {})",
+                        configId, job.getId());
+            } catch (RuntimeException e) {
+                log.warn("No se pudo lanzar la sincronización automática de la configuración {}: {}",
+                        configId, e.getMessage());
+                scheduleRetry(configId, state, now);
+            }
+        }
+    }
+
+    /**
+     * Revisa el trabajo lanzado para la configuración y, si terminó, programa
+     * la siguiente ejecución (ventana normal o reintento).
+     *
+     * @return true si el trabajo ya no está activo
+     */
+    private boolean checkFinished(Long configId, ScheduleState state, LocalDateTime now) {
+        SyncJobStatus status;
+        try {
+            status = syncJobService.findById(state.activeJobId).getStatus();
+        } catch (BusinessRuleException e) {
+            status = SyncJobStatus.FAILED;
+        }
+        if (status == SyncJobStatus.QUEUED || status == SyncJobStatus.RUNNING) {
+            return false;
+        }
+
+        state.activeJobId = null;
+        if (status == SyncJobStatus.FAILED) {
+            scheduleRetry(configId, state, now);
+        } else {
+            state.failures = 0;
+            state.nextDue = null;
+        }
+        return true;
+    }
+
+    private void scheduleRetry(Long configId, ScheduleState state, LocalDateTime now) {
+        state.failures++;
+        // base * 2^(fallos-1), acotado, más hasta un 20% de jitter para que
+        // las configuraciones que fallaron juntas no reintenten juntas
+        long exponent = Math.min(state.failures - 1, 20);
+        Duration delay = retryBase.multipliedBy(1L << exponent);
+        if (delay.compareTo(retryMax) > 0) {
+            delay = retryMax;
+        }
+        long jitterMillis = (long) (delay.toMillis() * 0.2 * ThreadLocalRandom.current().nextDouble());
+        state.nextDue = now.plus(delay).plus(Duration.ofMillis(jitterMillis));
+        log.warn("Sincronización automática de la configuración {} falló ({} seguidos), reintento a las {}",
+                configId, state.failures, state.nextDue);
+    }
+
+    /**
+     * Próxima ejecución en la ventana normal: la hora de la última
+     * sincronización más la frecuencia, en el minuto asignado a la
+     * configuración. Sin sincronización previa se usa la próxima aparición de
+     * ese minuto.
+     */
+    private LocalDateTime nextDue(EmailConfig config, LocalDateTime current, LocalDateTime now) {
+        Duration offset = Duration.ofSeconds(Math.floorMod(config.getId() * 0x9E3779B97F4A7C15L, SECONDS_PER_HOUR));
+        if (config.getLastSyncDate() == null) {
+            if (current != null) {
+                return current;
+            }
+            LocalDateTime slot = now.truncatedTo(ChronoUnit.HOURS).plus(offset);
+            return slot.isBefore(now) ? slot.plusHours(1) : slot;
+        }
+
+        int frequencyHours = config.getSyncFrequencyHours() != null && config.getSyncFrequencyHours() > 0
+                ? config.getSyncFrequencyHours()
+                : defaultFrequencyHours;
+        return config.getLastSyncDate().truncatedTo(ChronoUnit.HOURS).plusHours(frequencyHours).plus(offset);
+    }
+
+    private static final class ScheduleState {
+        private LocalDateTime nextDue;
+        private int failures; // Fallos consecutivos; > 0 indica reintento con backoff
+        private Long activeJobId;
+    }
+}
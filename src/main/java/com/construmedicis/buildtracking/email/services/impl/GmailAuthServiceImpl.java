@@ -1,12 +1,23 @@
 package com.construmedicis.buildtracking.email.services.impl;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.ProxySelector;
 import java.security.GeneralSecurityException;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.construmedicis.buildtracking.email.services.GmailAuthService;
@@ -15,16 +26,29 @@ import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInsta
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.GmailScopes;
 
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Los clientes de Gmail se construyen una vez por par credenciales/tokens y se
+ * reutilizan entre sincronizaciones. Todos comparten un único transporte HTTP
+ * con pool de conexiones keep-alive, así que las sincronizaciones frecuentes
+ * no repiten el handshake TLS ni la lectura de credentials.json y del token.
+ * El {@link Credential} de cada cliente renueva solo el access token cuando
+ * vence y lo guarda en el directorio de tokens.
+ * <p>
+ * La construcción de un cliente puede esperar la autorización interactiva en
+ * el navegador, así que nunca se hace bajo un lock global: cada clave guarda
+ * un future y solo esperan los hilos que piden esa misma clave.
+ */
 @Service
 @Slf4j
 public class GmailAuthServiceImpl implements GmailAuthService {
@@ -32,22 +56,126 @@ public class GmailAuthServiceImpl implements GmailAuthService {
     private static final String APPLICATION_NAME = "BuildTracking Invoice Sync";
     private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
     private static final List<String> SCOPES = Collections.singletonList(GmailScopes.GMAIL_READONLY);
+    private static final long IDLE_CONNECTION_SECONDS = 60;
+
+    // URL base de la API; se puede apuntar a un servidor local para pruebas
+    private final String rootUrl;
+    private final ApacheHttpTransport httpTransport;
+    private final Map<ClientKey, CompletableFuture<CachedClient>> clients = new ConcurrentHashMap<>();
+
+    public GmailAuthServiceImpl(@Value("${buildtracking.gmail.root-url:}") String rootUrl,
+            @Value("${buildtracking.gmail.max-connections:32}") int maxConnections) {
+        this.rootUrl = rootUrl;
+        this.httpTransport = newPooledTransport(Math.max(1, maxConnections));
+    }
+
+    /**
+     * Todas las llamadas van al mismo host, así que el límite por ruta es el
+     * mismo que el total (el pool por defecto solo permite 2 por ruta). Los
+     * reintentos y redirecciones los maneja la librería de Google.
+     */
+    private static ApacheHttpTransport newPooledTransport(int maxConnections) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                IDLE_CONNECTION_SECONDS, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(0);
+
+        return new ApacheHttpTransport(HttpClientBuilder.create()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setRoutePlanner(new SystemDefaultRoutePlanner(ProxySelector.getDefault()))
+                .evictIdleConnections(IDLE_CONNECTION_SECONDS, TimeUnit.SECONDS)
+                .disableRedirectHandling()
+                .disableAutomaticRetries()
+                .build());
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        clients.clear();
+        httpTransport.shutdown();
+    }
 
     @Override
     public Gmail getGmailService(String credentialsPath, String tokensDirectoryPath)
             throws IOException, GeneralSecurityException {
-        final NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-        Credential credential = getCredentials(httpTransport, credentialsPath, tokensDirectoryPath);
-        return new Gmail.Builder(httpTransport, JSON_FACTORY, credential)
-                .setApplicationName(APPLICATION_NAME)
-                .build();
+        ClientKey key = new ClientKey(credentialsPath, tokensDirectoryPath);
+        long credentialsModified = new File(credentialsPath).lastModified();
+
+        while (true) {
+            CompletableFuture<CachedClient> current = clients.get(key);
+            if (current != null && !isStale(current, credentialsModified)) {
+                CachedClient cached = await(current);
+                if (cached.credentialsModified() == credentialsModified) {
+                    return cached.gmail();
+                }
+                continue; // Se construyó con un credentials.json anterior
+            }
+
+            // Solo el hilo que registra el future construye (y autoriza) el
+            // cliente; los demás de la misma clave esperan ese future
+            CompletableFuture<CachedClient> building = new CompletableFuture<>();
+            boolean registered = current == null
+                    ? clients.putIfAbsent(key, building) == null
+                    : clients.replace(key, current, building);
+            if (!registered) {
+                continue;
+            }
+            if (current != null) {
+                log.info("credentials.json cambió ({}), se reconstruye el cliente de Gmail", credentialsPath);
+            }
+            try {
+                CachedClient cached = new CachedClient(buildClient(credentialsPath, tokensDirectoryPath),
+                        credentialsModified);
+                building.complete(cached);
+                return cached.gmail();
+            } catch (IOException | RuntimeException e) {
+                // El siguiente intento vuelve a construir el cliente
+                clients.remove(key, building);
+                building.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Un cliente en construcción nunca se considera vencido: se espera y luego
+     * se compara su fecha de credenciales.
+     */
+    private static boolean isStale(CompletableFuture<CachedClient> future, long credentialsModified) {
+        if (!future.isDone()) {
+            return false;
+        }
+        CachedClient cached = future.getNow(null);
+        return cached != null && cached.credentialsModified() != credentialsModified;
+    }
+
+    private static CachedClient await(CompletableFuture<CachedClient> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void evict(String credentialsPath, String tokensDirectoryPath) {
+        if (clients.remove(new ClientKey(credentialsPath, tokensDirectoryPath)) != null) {
+            log.info("Cliente de Gmail descartado para {} / {}", credentialsPath, tokensDirectoryPath);
+        }
     }
 
     @Override
     public String authorize(String credentialsPath, String tokensDirectoryPath) throws IOException {
         try {
-            final NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-            getCredentials(httpTransport, credentialsPath, tokensDirectoryPath);
+            getGmailService(credentialsPath, tokensDirectoryPath);
             return null; // Ya está autorizado
         } catch (GeneralSecurityException e) {
             log.error("Error durante la autorización: {}", e.getMessage());
@@ -59,7 +187,17 @@ public class GmailAuthServiceImpl implements GmailAuthService {
         }
     }
 
-    private Credential getCredentials(final NetHttpTransport httpTransport, String credentialsPath,
+    private Gmail buildClient(String credentialsPath, String tokensDirectoryPath) throws IOException {
+        Credential credential = getCredentials(httpTransport, credentialsPath, tokensDirectoryPath);
+        Gmail.Builder builder = new Gmail.Builder(httpTransport, JSON_FACTORY, credential)
+                .setApplicationName(APPLICATION_NAME);
+        if (rootUrl != null && !rootUrl.isBlank()) {
+            builder.setRootUrl(rootUrl);
+        }
+        return builder.build();
+    }
+
+    private Credential getCredentials(final HttpTransport httpTransport, String credentialsPath,
             String tokensDirectoryPath) throws IOException {
 
         // Cargar client secrets desde el archivo credentials.json
@@ -69,10 +207,11 @@ public class GmailAuthServiceImpl implements GmailAuthService {
             clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, reader);
         }
 
-        // Configurar el flujo de autorización
+        // Configurar el flujo de autorización. El data store persiste el token
+        // renovado cada vez que el Credential refresca el access token
         GoogleAuthorizationCodeFlow flow = new GoogleAuthorizationCodeFlow.Builder(
                 httpTransport, JSON_FACTORY, clientSecrets, SCOPES)
-                .setDataStoreFactory(new FileDataStoreFactory(new java.io.File(tokensDirectoryPath)))
+                .setDataStoreFactory(new FileDataStoreFactory(new File(tokensDirectoryPath)))
                 .setAccessType("offline")
                 .build();
 
@@ -86,4 +225,10 @@ public class GmailAuthServiceImpl implements GmailAuthService {
         // Las veces siguientes, usará el token almacenado
         return new AuthorizationCodeInstalledApp(flow, receiver).authorize("user");
     }
+
+    private record ClientKey(String credentialsPath, String tokensDirectoryPath) {
+    }
+
+    private record CachedClient(Gmail gmail, long credentialsModified) {
+    }
 }
@@ -0,0 +1,374 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.construmedicis.buildtracking.email.dto.EmailSyncResultDTO;
+import com.construmedicis.buildtracking.email.services.AttachmentExtractor;
+import com.construmedicis.buildtracking.email.services.GmailMessageService;
+import com.construmedicis.buildtracking.email.services.GmailQuotaService;
+import com.construmedicis.buildtracking.email.services.GmailQuotaService.GmailMethod;
+import com.construmedicis.buildtracking.invoice.services.AttachmentSource;
+import com.construmedicis.buildtracking.invoice.services.AttachmentSource.AttachmentSink;
+import com.construmedicis.buildtracking.invoice.services.SourceAttachment;
+import com.construmedicis.buildtracking.util.pipeline.PipelineStage;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.History;
+import com.google.api.services.gmail.model.HistoryLabelAdded;
+import com.google.api.services.gmail.model.HistoryMessageAdded;
+import com.google.api.services.gmail.model.Label;
+import com.google.api.services.gmail.model.ListHistoryResponse;
+import com.google.api.services.gmail.model.ListLabelsResponse;
+import com.google.api.services.gmail.model.ListMessagesResponse;
+import com.google.api.services.gmail.model.Message;
+import com.google.api.services.gmail.model.MessagePart;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class GmailMessageServiceImpl implements GmailMessageService {
+
+    /** Máximo de resultados por página que admite messages.list. */
+    private static final long LIST_PAGE_SIZE = 500L;
+
+    /** Máximo de llamadas que admite una petición batch de Gmail. */
+    private static final int MAX_BATCH_SIZE = 100;
+
+    /** Niveles de partes anidadas que se piden (adjuntos en reenvíos incluidos). */
+    private static final int PART_DEPTH = 6;
+
+    /**
+     * Selector de campos para messages.get: solo el árbol de partes con nombre
+     * de archivo e id de adjunto, sin cuerpos, HTML ni cabeceras. El selector
+     * no admite recursión, así que se repite por nivel; en el último se pide
+     * además el mimeType para saber si quedaron subpartes sin traer.
+     */
+    private static final String MESSAGE_FIELDS = "id,payload(" + partFields(PART_DEPTH) + ")";
+
+    private final GmailQuotaService quotaService;
+    private final AttachmentExtractor attachmentExtractor;
+    private final int batchSize;
+    private final int fetchWorkers;
+    private final int queueCapacity;
+
+    public GmailMessageServiceImpl(GmailQuotaService quotaService, AttachmentExtractor attachmentExtractor,
+            @Value("${buildtracking.gmail.batch-size:50}") int batchSize,
+            @Value("${buildtracking.sync.fetch-workers:8}") int fetchWorkers,
+            @Value("${buildtracking.sync.queue-capacity:32}") int queueCapacity) {
+        this.quotaService = quotaService;
+        this.attachmentExtractor = attachmentExtractor;
+        this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        this.fetchWorkers = fetchWorkers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public List<String> listMessageIds(Gmail gmailService, String query) throws IOException {
+        List<String> messageIds = new ArrayList<>();
+        String pageToken = null;
+        int pages = 0;
+
+        do {
+            ListMessagesResponse response = quotaService.execute(gmailService, GmailMethod.MESSAGES_LIST,
+                    gmailService.users().messages()
+                            .list("me")
+                            .setQ(query)
+                            .setMaxResults(LIST_PAGE_SIZE)
+                            .setPageToken(pageToken));
+
+            if (response.getMessages() != null) {
+                response.getMessages().forEach(message -> messageIds.add(message.getId()));
+            }
+            pageToken = response.getNextPageToken();
+            pages++;
+        } while (pageToken != null && !pageToken.isEmpty());
+
+        log.info("Query '{}': {} mensajes en {} página(s)", query, messageIds.size(), pages);
+        return messageIds;
+    }
+
+    /**
+     * Cada llamada del batch consume su cuota por separado. Las que fallan por
+     * límite de cuota o error transitorio se reenvían en un nuevo batch tras
+     * la espera; las demás se registran en el resultado.
+     */
+    @Override
+    public List<Message> getMessages(Gmail gmailService, List<String> messageIds, EmailSyncResultDTO result)
+            throws IOException {
+        List<Message> messages = new ArrayList<>(messageIds.size());
+
+        for (int from = 0; from < messageIds.size(); from += batchSize) {
+            List<String> pending = messageIds.subList(from, Math.min(from + batchSize, messageIds.size()));
+
+            for (int attempt = 1; !pending.isEmpty(); attempt++) {
+                boolean lastAttempt = attempt >= quotaService.getMaxAttempts();
+                List<String> retry = new ArrayList<>();
+                Set<String> answered = new HashSet<>();
+                boolean[] rateLimited = { false };
+
+                quotaService.acquire(gmailService, pending.size() * GmailMethod.MESSAGES_GET.getUnits());
+                BatchRequest batch = gmailService.batch();
+                for (String messageId : pending) {
+                    gmailService.users().messages()
+                            .get("me", messageId)
+                            .setFormat("full")
+                            .setFields(MESSAGE_FIELDS)
+                            .queue(batch, new JsonBatchCallback<Message>() {
+                                @Override
+                                public void onSuccess(Message message, HttpHeaders responseHeaders) {
+                                    answered.add(messageId);
+                                    messages.add(message);
+                                }
+
+                                @Override
+                                public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                                    answered.add(messageId);
+                                    if (!lastAttempt && quotaService.isRetryable(error)) {
+                                        retry.add(messageId);
+                                        rateLimited[0] |= quotaService.isRateLimited(error);
+                                        return;
+                                    }
+                                    log.error("Error descargando mensaje {}: {}", messageId, error.getMessage());
+                                    String message = "Error en mensaje " + messageId + ": " + error.getMessage();
+                                    if (error.getCode() == 404) {
+                                        // Mensaje eliminado: no tiene sentido reintentarlo
+                                        result.getErrors().add(message);
+                                    } else {
+                                        result.messageFailed(messageId, message);
+                                    }
+                                }
+                            });
+                }
+
+                try {
+                    batch.execute();
+                } catch (IOException e) {
+                    // Falló la petición batch: se reintentan las llamadas sin respuesta
+                    if (lastAttempt || !quotaService.isRetryable(e)) {
+                        throw e;
+                    }
+                    pending.stream().filter(messageId -> !answered.contains(messageId)).forEach(retry::add);
+                    rateLimited[0] |= quotaService.isRateLimited(e);
+                    log.warn("Batch de {} mensajes falló (intento {}): {}", pending.size(), attempt, e.getMessage());
+                }
+
+                if (!retry.isEmpty()) {
+                    log.warn("{} mensajes del batch se reintentan (intento {})", retry.size(), attempt);
+                    quotaService.backoff(gmailService, attempt, rateLimited[0]);
+                }
+                pending = retry;
+            }
+            log.debug("Batch de {} mensajes descargado", Math.min(batchSize, messageIds.size() - from));
+        }
+
+        return messages;
+    }
+
+    @Override
+    public AttachmentSource attachmentSource(Gmail gmailService, List<String> messageIds,
+            EmailSyncResultDTO result) {
+        return sink -> {
+            // Los mensajes se descargan en grupos del tamaño de una petición batch,
+            // varios grupos a la vez
+            PipelineStage<List<String>> messageStage = new PipelineStage<>("gmail-message", fetchWorkers,
+                    queueCapacity,
+                    chunk -> {
+                        for (Message message : getMessages(gmailService, chunk, result)) {
+                            publishAttachments(gmailService, message, sink, result);
+                        }
+                    },
+                    (chunk, e) -> {
+                        log.error("Error en batch de {} mensajes: {}", chunk.size(), e.getMessage(), e);
+                        result.getErrors().add("Error en batch de " + chunk.size() + " mensajes: " + e.getMessage());
+                        result.getFailedMessageIds().addAll(chunk);
+                    });
+
+            try {
+                for (int from = 0; from < messageIds.size(); from += batchSize) {
+                    messageStage.submit(messageIds.subList(from, Math.min(from + batchSize, messageIds.size())));
+                }
+                messageStage.complete();
+            } catch (InterruptedException e) {
+                messageStage.abort();
+                throw e;
+            }
+        };
+    }
+
+    private void publishAttachments(Gmail gmailService, Message message, AttachmentSink sink,
+            EmailSyncResultDTO result) throws InterruptedException {
+        log.debug("Procesando mensaje ID: {}", message.getId());
+
+        if (message.getPayload() == null) {
+            log.warn("Mensaje {} sin payload", message.getId());
+            return;
+        }
+
+        // Buscar adjuntos recursivamente (pueden estar anidados); solo XML y ZIP,
+        // el resto (PDF, imágenes) nunca se descarga
+        List<MessagePart> attachments = new ArrayList<>();
+        if (findAttachments(message.getPayload(), 1, attachments)) {
+            // Partes anidadas más allá de PART_DEPTH (reenvío de un reenvío...):
+            // se pide el mensaje sin recortar para no perder adjuntos
+            log.info("Mensaje {} anida partes a más de {} niveles, se descarga completo", message.getId(),
+                    PART_DEPTH);
+            try {
+                Message fullMessage = quotaService.execute(gmailService, GmailMethod.MESSAGES_GET,
+                        gmailService.users().messages().get("me", message.getId())
+                                .setFormat("full")
+                                .setFields("id,payload"));
+                attachments.clear();
+                findAttachments(fullMessage.getPayload(), 1, attachments);
+            } catch (IOException e) {
+                // Se procesan los adjuntos ya encontrados y el mensaje queda para reintento
+                log.error("Error descargando mensaje completo {}: {}", message.getId(), e.getMessage());
+                result.messageFailed(message.getId(),
+                        "Error en mensaje " + message.getId() + ": " + e.getMessage());
+            }
+        }
+
+        if (attachments.isEmpty()) {
+            log.debug("Mensaje {} no tiene adjuntos XML/ZIP", message.getId());
+            return;
+        }
+
+        log.info("Mensaje {} tiene {} adjuntos XML/ZIP", message.getId(), attachments.size());
+
+        for (MessagePart part : attachments) {
+            String attachmentId = part.getBody().getAttachmentId();
+            sink.accept(new SourceAttachment(message.getId(), part.getPartId(), part.getFilename(),
+                    () -> new ByteArrayInputStream(Base64.getUrlDecoder().decode(
+                            quotaService.execute(gmailService, GmailMethod.ATTACHMENTS_GET,
+                                    gmailService.users().messages().attachments()
+                                            .get("me", message.getId(), attachmentId))
+                                    .getData()))));
+        }
+    }
+
+    private static String partFields(int depth) {
+        String fields = "partId,filename,body/attachmentId";
+        return depth <= 1 ? fields + ",mimeType" : fields + ",parts(" + partFields(depth - 1) + ")";
+    }
+
+    /**
+     * Busca adjuntos recursivamente en todas las partes del mensaje.
+     * Gmail puede anidar adjuntos en multipart/mixed, multipart/alternative, etc.
+     *
+     * @return true si alguna parte del último nivel pedido es contenedora, es
+     *         decir, si el selector de campos dejó subpartes por fuera
+     */
+    private boolean findAttachments(MessagePart part, int depth, List<MessagePart> attachments) {
+        // Si esta parte tiene attachmentId, es un adjunto
+        if (part.getBody() != null && part.getBody().getAttachmentId() != null
+                && attachmentExtractor.isSupported(part.getFilename())) {
+            attachments.add(part);
+        }
+
+        if (part.getParts() != null) {
+            boolean truncated = false;
+            for (MessagePart subPart : part.getParts()) {
+                truncated |= findAttachments(subPart, depth + 1, attachments);
+            }
+            return truncated;
+        }
+        String mimeType = part.getMimeType();
+        return depth >= PART_DEPTH && mimeType != null
+                && (mimeType.startsWith("multipart/") || mimeType.equals("message/rfc822"));
+    }
+
+    @Override
+    public Optional<List<String>> listMessageIdsAddedSince(Gmail gmailService, BigInteger startHistoryId,
+            String labelId) throws IOException {
+        Set<String> messageIds = new LinkedHashSet<>();
+        String pageToken = null;
+
+        try {
+            do {
+                ListHistoryResponse response = quotaService.execute(gmailService, GmailMethod.HISTORY_LIST,
+                        gmailService.users().history()
+                                .list("me")
+                                .setStartHistoryId(startHistoryId)
+                                .setLabelId(labelId)
+                                .setHistoryTypes(List.of("messageAdded", "labelAdded"))
+                                .setMaxResults(LIST_PAGE_SIZE)
+                                .setPageToken(pageToken));
+
+                if (response.getHistory() != null) {
+                    for (History history : response.getHistory()) {
+                        collectAddedMessages(history, labelId, messageIds);
+                    }
+                }
+                pageToken = response.getNextPageToken();
+            } while (pageToken != null && !pageToken.isEmpty());
+        } catch (GoogleJsonResponseException e) {
+            // Gmail responde 404 cuando el historyId es demasiado antiguo
+            if (e.getStatusCode() == 404) {
+                log.warn("Checkpoint de Gmail {} expirado, se requiere búsqueda completa", startHistoryId);
+                return Optional.empty();
+            }
+            throw e;
+        }
+
+        log.info("Historial desde {}: {} mensajes nuevos en la etiqueta {}", startHistoryId, messageIds.size(),
+                labelId);
+        return Optional.of(new ArrayList<>(messageIds));
+    }
+
+    private void collectAddedMessages(History history, String labelId, Set<String> messageIds) {
+        if (history.getMessagesAdded() != null) {
+            for (HistoryMessageAdded added : history.getMessagesAdded()) {
+                messageIds.add(added.getMessage().getId());
+            }
+        }
+        // Mensajes existentes a los que se les aplicó la etiqueta después
+        if (history.getLabelsAdded() != null) {
+            for (HistoryLabelAdded added : history.getLabelsAdded()) {
+                if (added.getLabelIds() != null && added.getLabelIds().contains(labelId)) {
+                    messageIds.add(added.getMessage().getId());
+                }
+            }
+        }
+    }
+
+    @Override
+    public BigInteger getCurrentHistoryId(Gmail gmailService) throws IOException {
+        return quotaService.execute(gmailService, GmailMethod.GET_PROFILE, gmailService.users().getProfile("me"))
+                .getHistoryId();
+    }
+
+    @Override
+    public String findLabelId(Gmail gmailService, String labelName) throws IOException {
+        ListLabelsResponse response = quotaService.execute(gmailService, GmailMethod.LABELS_LIST,
+                gmailService.users().labels().list("me"));
+        if (response.getLabels() == null) {
+            return null;
+        }
+        return response.getLabels().stream()
+                .filter(label -> labelName.equalsIgnoreCase(label.getName()))
+                .map(Label::getId)
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+}
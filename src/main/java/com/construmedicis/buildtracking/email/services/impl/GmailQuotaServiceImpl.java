@@ -0,0 +1,170 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.NoHttpResponseException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.construmedicis.buildtracking.email.services.GmailQuotaService;
+import com.construmedicis.buildtracking.util.ratelimit.TokenBucket;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.services.AbstractGoogleClientRequest;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.gmail.Gmail;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Un bucket por cliente de Gmail: {@link GmailAuthServiceImpl} reutiliza el
+ * mismo cliente para las mismas credenciales, así que todas las
+ * sincronizaciones concurrentes de un buzón comparten su cuota.
+ */
+@Service
+@Slf4j
+public class GmailQuotaServiceImpl implements GmailQuotaService {
+
+    private static final Set<Integer> RETRYABLE_STATUS = Set.of(429, 500, 502, 503, 504);
+    private static final Set<String> RATE_LIMIT_REASONS = Set.of("rateLimitExceeded", "userRateLimitExceeded");
+
+    private final double unitsPerSecond;
+    private final double burstUnits;
+    private final int maxAttempts;
+    private final long retryBaseMillis;
+    private final long retryMaxMillis;
+
+    // Claves débiles: un cliente descartado del caché libera su bucket
+    private final Map<Gmail, TokenBucket> buckets = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public GmailQuotaServiceImpl(@Value("${buildtracking.gmail.quota-units-per-second:200}") double unitsPerSecond,
+            @Value("${buildtracking.gmail.quota-burst-units:250}") double burstUnits,
+            @Value("${buildtracking.gmail.retry-max-attempts:5}") int maxAttempts,
+            @Value("${buildtracking.gmail.retry-base-ms:500}") long retryBaseMillis,
+            @Value("${buildtracking.gmail.retry-max-ms:32000}") long retryMaxMillis) {
+        this.unitsPerSecond = unitsPerSecond;
+        this.burstUnits = burstUnits;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBaseMillis = Math.max(1, retryBaseMillis);
+        this.retryMaxMillis = Math.max(this.retryBaseMillis, retryMaxMillis);
+    }
+
+    @Override
+    public <T> T execute(Gmail gmailService, GmailMethod method, AbstractGoogleClientRequest<T> request)
+            throws IOException {
+        for (int attempt = 1;; attempt++) {
+            acquire(gmailService, method.getUnits());
+            try {
+                return request.execute();
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                log.warn("Gmail {} falló (intento {}/{}): {}", method, attempt, maxAttempts, describe(e));
+                backoff(gmailService, attempt, isRateLimited(e));
+            }
+        }
+    }
+
+    @Override
+    public void acquire(Gmail gmailService, int units) throws InterruptedIOException {
+        try {
+            bucket(gmailService).acquire(units);
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    @Override
+    public boolean isRetryable(GoogleJsonError error) {
+        return RETRYABLE_STATUS.contains(error.getCode()) || isRateLimited(error);
+    }
+
+    @Override
+    public boolean isRetryable(IOException e) {
+        if (e instanceof GoogleJsonResponseException jsonException && jsonException.getDetails() != null) {
+            return isRetryable(jsonException.getDetails());
+        }
+        if (e instanceof HttpResponseException httpException) {
+            return RETRYABLE_STATUS.contains(httpException.getStatusCode());
+        }
+        // Solo fallas de red transitorias: timeouts, conexiones rechazadas o
+        // cerradas sin respuesta. Una respuesta que no se pudo interpretar (JSON
+        // mal formado, cuerpo truncado) fallaría igual al repetirla, y una
+        // interrupción no se reintenta
+        return e instanceof SocketTimeoutException
+                || e instanceof SocketException
+                || e instanceof NoHttpResponseException;
+    }
+
+    @Override
+    public boolean isRateLimited(GoogleJsonError error) {
+        if (error.getCode() == 429) {
+            return true;
+        }
+        return error.getErrors() != null && error.getErrors().stream()
+                .anyMatch(info -> RATE_LIMIT_REASONS.contains(info.getReason()));
+    }
+
+    @Override
+    public boolean isRateLimited(IOException e) {
+        if (e instanceof GoogleJsonResponseException jsonException && jsonException.getDetails() != null) {
+            return isRateLimited(jsonException.getDetails());
+        }
+        return e instanceof HttpResponseException httpException && httpException.getStatusCode() == 429;
+    }
+
+    /**
+     * Espera exponencial con jitter (entre la mitad y el total del intervalo).
+     * Con límite de cuota la espera se carga al bucket compartido en lugar de
+     * dormir aquí: el siguiente acquire de cualquier sincronización del buzón
+     * la respeta y el bucket reparte los reintentos a la tasa configurada.
+     */
+    @Override
+    public void backoff(Gmail gmailService, int attempt, boolean rateLimited) throws InterruptedIOException {
+        long ceiling = Math.min(retryMaxMillis, retryBaseMillis << Math.min(attempt - 1, 20));
+        long delayMillis = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+
+        if (rateLimited) {
+            bucket(gmailService).pause(Duration.ofMillis(delayMillis));
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    @Override
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    private TokenBucket bucket(Gmail gmailService) {
+        return buckets.computeIfAbsent(gmailService, client -> new TokenBucket(unitsPerSecond, burstUnits));
+    }
+
+    private static String describe(IOException e) {
+        return e instanceof HttpResponseException httpException
+                ? httpException.getStatusCode() + " " + httpException.getStatusMessage()
+                : e.getClass().getSimpleName() + ": " + e.getMessage();
+    }
+
+    private static InterruptedIOException interrupted(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        InterruptedIOException interrupted = new InterruptedIOException("Espera de cuota de Gmail interrumpida");
+        interrupted.initCause(e);
+        return interrupted;
+    }
+}
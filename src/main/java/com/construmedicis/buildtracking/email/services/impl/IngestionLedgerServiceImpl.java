@@ -0,0 +1,117 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.construmedicis.buildtracking.email.models.IngestedAttachment;
+import com.construmedicis.buildtracking.email.repository.IngestedAttachmentRepository;
+import com.construmedicis.buildtracking.email.services.IngestionLedgerService;
+import com.construmedicis.buildtracking.util.bloom.BloomFilter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Registro de adjuntos procesados con un filtro de Bloom en memoria delante de
+ * la tabla: un negativo del filtro evita la consulta a la base de datos (el
+ * caso normal para adjuntos nuevos) y un positivo se confirma con la tabla.
+ */
+@Service
+@Slf4j
+public class IngestionLedgerServiceImpl implements IngestionLedgerService {
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final IngestedAttachmentRepository ingestedAttachmentRepository;
+    private final BloomFilter knownKeys;
+
+    // Hasta cargar el filtro toda consulta va a la base de datos
+    private volatile boolean filterLoaded;
+
+    public IngestionLedgerServiceImpl(IngestedAttachmentRepository ingestedAttachmentRepository,
+            @Value("${buildtracking.ingestion.bloom-expected-entries:200000}") long expectedEntries) {
+        this.ingestedAttachmentRepository = ingestedAttachmentRepository;
+        this.knownKeys = new BloomFilter(expectedEntries, FALSE_POSITIVE_PROBABILITY);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void loadFilter() {
+        long count = 0;
+        try (Stream<Object[]> keys = ingestedAttachmentRepository.streamLedgerKeys()) {
+            for (Object[] key : (Iterable<Object[]>) keys::iterator) {
+                knownKeys.put(partKey((String) key[0], (String) key[1]));
+                knownKeys.put(contentKey((String) key[2]));
+                count++;
+            }
+        }
+        filterLoaded = true;
+        log.info("Registro de adjuntos procesados cargado: {} entradas", count);
+    }
+
+    @Override
+    public boolean isAttachmentIngested(String messageId, String partId) {
+        if (filterLoaded && !knownKeys.mightContain(partKey(messageId, partId))) {
+            return false;
+        }
+        return ingestedAttachmentRepository.existsByMessageIdAndPartId(messageId, partId);
+    }
+
+    @Override
+    public boolean isContentIngested(String sha256) {
+        if (filterLoaded && !knownKeys.mightContain(contentKey(sha256))) {
+            return false;
+        }
+        return ingestedAttachmentRepository.existsBySha256(sha256);
+    }
+
+    @Override
+    public void recordIngested(String messageId, String partId, String filename, String sha256) {
+        try {
+            ingestedAttachmentRepository.save(IngestedAttachment.builder()
+                    .messageId(messageId)
+                    .partId(partId)
+                    .filename(filename)
+                    .sha256(sha256)
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            // Otra sincronización concurrente ya lo registró
+            log.debug("Adjunto {}/{} ya estaba registrado", messageId, partId);
+        }
+        knownKeys.put(partKey(messageId, partId));
+        knownKeys.put(contentKey(sha256));
+    }
+
+    @Override
+    public DigestInputStream digesting(InputStream content) {
+        try {
+            return new DigestInputStream(content, MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException e) {
+            // Todas las JVM deben incluir SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String sha256(DigestInputStream content) {
+        return HexFormat.of().formatHex(content.getMessageDigest().digest());
+    }
+
+    private String partKey(String messageId, String partId) {
+        return "part:" + messageId + "/" + partId;
+    }
+
+    private String contentKey(String sha256) {
+        return "sha256:" + sha256;
+    }
+}
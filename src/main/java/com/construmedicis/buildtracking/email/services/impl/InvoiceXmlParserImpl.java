@@ -3,24 +3,29 @@ package com.construmedicis.buildtracking.email.services.impl;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
+import com.construmedicis.buildtracking.email.dto.InvoiceParseResultDTO;
 import com.construmedicis.buildtracking.email.dto.ParsedInvoiceDTO;
 import com.construmedicis.buildtracking.email.dto.ParsedInvoiceItemDTO;
 import com.construmedicis.buildtracking.email.services.InvoiceXmlParser;
@@ -30,190 +35,260 @@ import lombok.extern.slf4j.Slf4j;
 
 @Service
 @Slf4j
+@ConditionalOnProperty(name = "buildtracking.xml.parser", havingValue = "dom", matchIfMissing = true)
 public class InvoiceXmlParserImpl implements InvoiceXmlParser {
 
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
-    private static final DateTimeFormatter DATETIME_FORMATTER_ALT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static final DateTimeFormatter DATETIME_WITH_OFFSET = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    // Builders reutilizables entre llamadas: crear la fábrica y el builder por
+    // cada XML es más costoso que el propio parseo de una factura pequeña
+    private static final int MAX_IDLE_BUILDERS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
 
-    /**
-     * Parsea una fecha que puede venir en formato fecha sola o fecha+hora.
-     * Si solo viene fecha, se asume hora 00:00:00.
-     * Soporta timezone offset (ej: 2025-12-02T14:31:42-05:00)
-     */
-    private LocalDateTime parseDateTime(String dateStr) {
-        if (dateStr == null || dateStr.isEmpty()) {
-            return null;
-        }
+    private final DocumentBuilderFactory factory;
+    private final BlockingQueue<DocumentBuilder> builderPool = new ArrayBlockingQueue<>(MAX_IDLE_BUILDERS);
 
+    public InvoiceXmlParserImpl() {
+        this.factory = DocumentBuilderFactory.newInstance();
+        this.factory.setNamespaceAware(true);
+        // Los XML llegan de correos y cargas anónimas: sin DOCTYPE ni entidades
+        // externas (XXE) y con los límites de expansión de entidades activos
         try {
-            // Intentar con fecha+hora+timezone ISO (yyyy-MM-dd'T'HH:mm:ssXXX)
-            return java.time.ZonedDateTime.parse(dateStr, DATETIME_WITH_OFFSET).toLocalDateTime();
-        } catch (DateTimeParseException e1) {
-            try {
-                // Intentar con fecha+hora ISO sin timezone (yyyy-MM-dd'T'HH:mm:ss)
-                return LocalDateTime.parse(dateStr, DATETIME_FORMATTER);
-            } catch (DateTimeParseException e2) {
-                try {
-                    // Intentar con fecha+hora alternativa (yyyy-MM-dd HH:mm:ss)
-                    return LocalDateTime.parse(dateStr, DATETIME_FORMATTER_ALT);
-                } catch (DateTimeParseException e3) {
-                    try {
-                        // Intentar solo con fecha (yyyy-MM-dd) y agregar hora 00:00:00
-                        LocalDate date = LocalDate.parse(dateStr, DATE_FORMATTER);
-                        return date.atStartOfDay();
-                    } catch (DateTimeParseException e4) {
-                        log.warn("No se pudo parsear la fecha: {}", dateStr);
-                        return null;
-                    }
-                }
-            }
+            this.factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            this.factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            this.factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            this.factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            this.factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("No se pudo configurar el parser XML", e);
         }
+        this.factory.setXIncludeAware(false);
+        this.factory.setExpandEntityReferences(false);
     }
 
     @Override
-    public ParsedInvoiceDTO parseXml(File xmlFile) throws IOException {
+    public InvoiceParseResultDTO parse(InputStream xmlStream) {
+        DocumentBuilder builder = borrowBuilder();
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(xmlFile);
-            doc.getDocumentElement().normalize();
-
-            // Intentar extraer el XML interno del CDATA (estructura envolvente)
-            doc = extractInnerXmlIfNeeded(doc, builder);
-
-            ParsedInvoiceDTO invoice = new ParsedInvoiceDTO();
-
-            // Número de factura
-            invoice.setInvoiceNumber(getElementValue(doc, "cbc:ID"));
-
-            // Fechas
-            String issueDateStr = getElementValue(doc, "cbc:IssueDate");
-            if (issueDateStr != null && !issueDateStr.isEmpty()) {
-                // Intentar obtener también la hora si existe
-                String issueTimeStr = getElementValue(doc, "cbc:IssueTime");
-                if (issueTimeStr != null && !issueTimeStr.isEmpty()) {
-                    invoice.setIssueDate(parseDateTime(issueDateStr + "T" + issueTimeStr));
-                } else {
-                    invoice.setIssueDate(parseDateTime(issueDateStr));
-                }
-            }
-
-            String dueDateStr = getElementValue(doc, "cbc:DueDate");
-            if (dueDateStr != null && !dueDateStr.isEmpty()) {
-                invoice.setDueDate(parseDateTime(dueDateStr));
-            }
-
-            // Información del proveedor (AccountingSupplierParty)
-            NodeList supplierNodes = doc.getElementsByTagName("cac:AccountingSupplierParty");
-            if (supplierNodes.getLength() > 0) {
-                Element supplierElement = (Element) supplierNodes.item(0);
-                invoice.setSupplierId(getElementValue(supplierElement, "cbc:CompanyID"));
-
-                Element partyNameElement = (Element) supplierElement.getElementsByTagName("cac:PartyName").item(0);
-                if (partyNameElement != null) {
-                    invoice.setSupplierName(getElementValue(partyNameElement, "cbc:Name"));
-                }
+            Document doc;
+            try {
+                doc = readDocument(xmlStream, builder);
+            } catch (SAXException | IOException e) {
+                log.warn("XML mal formado: {}", e.getMessage());
+                return InvoiceParseResultDTO.malformed("XML mal formado: " + e.getMessage());
             }
 
-            // Totales monetarios
-            NodeList monetaryTotalNodes = doc.getElementsByTagName("cac:LegalMonetaryTotal");
-            if (monetaryTotalNodes.getLength() > 0) {
-                Element monetaryElement = (Element) monetaryTotalNodes.item(0);
-
-                String lineExtensionAmount = getElementValue(monetaryElement, "cbc:LineExtensionAmount");
-                if (lineExtensionAmount != null) {
-                    invoice.setSubtotal(new BigDecimal(lineExtensionAmount));
-                }
-
-                String taxExclusiveAmount = getElementValue(monetaryElement, "cbc:TaxExclusiveAmount");
-                String taxInclusiveAmount = getElementValue(monetaryElement, "cbc:TaxInclusiveAmount");
-                if (taxExclusiveAmount != null && taxInclusiveAmount != null) {
-                    BigDecimal taxExclusive = new BigDecimal(taxExclusiveAmount);
-                    BigDecimal taxInclusive = new BigDecimal(taxInclusiveAmount);
-                    invoice.setTax(taxInclusive.subtract(taxExclusive));
-                }
-
-                String payableAmount = getElementValue(monetaryElement, "cbc:PayableAmount");
-                if (payableAmount != null) {
-                    invoice.setTotal(new BigDecimal(payableAmount));
-                }
+            String missing = findMissingRequiredElement(doc);
+            if (missing != null) {
+                return InvoiceParseResultDTO.notDianInvoice("No es una factura DIAN: falta " + missing);
             }
 
-            // Retenciones (WithholdingTaxTotal)
-            NodeList withholdingNodes = doc.getElementsByTagName("cac:WithholdingTaxTotal");
-            if (withholdingNodes.getLength() > 0) {
-                for (int i = 0; i < withholdingNodes.getLength(); i++) {
-                    Element withholdingElement = (Element) withholdingNodes.item(i);
-                    String taxAmount = getElementValue(withholdingElement, "cbc:TaxAmount");
-
-                    // Intentar determinar el tipo de retención por el nombre del impuesto
-                    NodeList taxSubtotalNodes = withholdingElement.getElementsByTagName("cac:TaxSubtotal");
-                    if (taxSubtotalNodes.getLength() > 0) {
-                        Element taxSubtotal = (Element) taxSubtotalNodes.item(0);
-                        Element taxCategory = (Element) taxSubtotal.getElementsByTagName("cac:TaxCategory").item(0);
-                        if (taxCategory != null) {
-                            Element taxScheme = (Element) taxCategory.getElementsByTagName("cac:TaxScheme").item(0);
-                            if (taxScheme != null) {
-                                String taxName = getElementValue(taxScheme, "cbc:Name");
-                                if (taxName != null && taxName.contains("ICA")) {
-                                    invoice.setWithholdingICA(new BigDecimal(taxAmount));
-                                } else {
-                                    invoice.setWithholdingTax(new BigDecimal(taxAmount));
-                                }
-                            }
-                        }
-                    }
-                }
+            try {
+                ParsedInvoiceDTO invoice = toParsedInvoice(doc);
+                log.info("Factura parseada exitosamente: {}", invoice.getInvoiceNumber());
+                return InvoiceParseResultDTO.valid(invoice);
+            } catch (RuntimeException e) {
+                log.warn("Factura con valores inválidos: {}", e.getMessage());
+                return InvoiceParseResultDTO.malformed("Valor inválido en la factura: " + e.getMessage());
             }
+        } finally {
+            releaseBuilder(builder);
+        }
+    }
 
-            // Ítems de la factura
-            List<ParsedInvoiceItemDTO> items = parseInvoiceItems(doc);
-            invoice.setItems(items);
+    @Override
+    public ParsedInvoiceDTO parseXml(File xmlFile) throws IOException {
+        try (InputStream in = Files.newInputStream(xmlFile.toPath())) {
+            return parseXml(in);
+        }
+    }
 
+    @Override
+    public ParsedInvoiceDTO parseXml(InputStream xmlStream) throws IOException {
+        DocumentBuilder builder = borrowBuilder();
+        try {
+            ParsedInvoiceDTO invoice = toParsedInvoice(readDocument(xmlStream, builder));
             log.info("Factura parseada exitosamente: {}", invoice.getInvoiceNumber());
             return invoice;
 
         } catch (Exception e) {
             log.error("Error parseando XML de factura: {}", e.getMessage(), e);
             throw new BusinessRuleException("xml.parse.error");
+        } finally {
+            releaseBuilder(builder);
         }
     }
 
     @Override
     public boolean isValidInvoiceXml(File xmlFile) {
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(xmlFile);
-
-            // Intentar extraer el XML interno del CDATA (estructura envolvente)
-            doc = extractInnerXmlIfNeeded(doc, builder);
-
-            // Validar elementos básicos que debe tener una factura DIAN
-            String invoiceNumber = getElementValue(doc, "cbc:ID");
-            String issueDate = getElementValue(doc, "cbc:IssueDate");
-            NodeList supplierNodes = doc.getElementsByTagName("cac:AccountingSupplierParty");
+        try (InputStream in = Files.newInputStream(xmlFile.toPath())) {
+            return isValidInvoiceXml(in);
+        } catch (IOException e) {
+            log.warn("Archivo XML no válido: {}", e.getMessage());
+            return false;
+        }
+    }
 
-            return invoiceNumber != null && !invoiceNumber.isEmpty() &&
-                    issueDate != null && !issueDate.isEmpty() &&
-                    supplierNodes.getLength() > 0;
+    @Override
+    public boolean isValidInvoiceXml(InputStream xmlStream) {
+        DocumentBuilder builder = borrowBuilder();
+        try {
+            return findMissingRequiredElement(readDocument(xmlStream, builder)) == null;
 
         } catch (Exception e) {
             log.warn("Archivo XML no válido: {}", e.getMessage());
             return false;
+        } finally {
+            releaseBuilder(builder);
+        }
+    }
+
+    private DocumentBuilder borrowBuilder() {
+        DocumentBuilder builder = builderPool.poll();
+        if (builder != null) {
+            return builder;
+        }
+        try {
+            // DocumentBuilderFactory no garantiza ser thread-safe
+            synchronized (factory) {
+                return factory.newDocumentBuilder();
+            }
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("No se pudo crear el parser XML", e);
         }
     }
 
+    private void releaseBuilder(DocumentBuilder builder) {
+        builder.reset();
+        // Si el pool está lleno el builder simplemente se descarta
+        builderPool.offer(builder);
+    }
+
+    private Document readDocument(InputStream xmlStream, DocumentBuilder builder) throws SAXException, IOException {
+        Document doc = builder.parse(xmlStream);
+        doc.getDocumentElement().normalize();
+
+        // Intentar extraer el XML interno del CDATA (estructura envolvente)
+        return extractInnerXmlIfNeeded(doc, builder);
+    }
+
+    /**
+     * Valida los elementos básicos que debe tener una factura DIAN.
+     * 
+     * @return Nombre del primer elemento faltante, o null si están todos
+     */
+    private String findMissingRequiredElement(Document doc) {
+        String invoiceNumber = getElementValue(doc, "cbc:ID");
+        if (invoiceNumber == null || invoiceNumber.isEmpty()) {
+            return "cbc:ID";
+        }
+        String issueDate = getElementValue(doc, "cbc:IssueDate");
+        if (issueDate == null || issueDate.isEmpty()) {
+            return "cbc:IssueDate";
+        }
+        if (doc.getElementsByTagName("cac:AccountingSupplierParty").getLength() == 0) {
+            return "cac:AccountingSupplierParty";
+        }
+        return null;
+    }
+
+    private ParsedInvoiceDTO toParsedInvoice(Document doc) {
+        ParsedInvoiceDTO invoice = new ParsedInvoiceDTO();
+
+        // Número de factura
+        invoice.setInvoiceNumber(getElementValue(doc, "cbc:ID"));
+
+        // Fechas
+        String issueDateStr = getElementValue(doc, "cbc:IssueDate");
+        if (issueDateStr != null && !issueDateStr.isEmpty()) {
+            // Intentar obtener también la hora si existe
+            String issueTimeStr = getElementValue(doc, "cbc:IssueTime");
+            if (issueTimeStr != null && !issueTimeStr.isEmpty()) {
+                invoice.setIssueDate(InvoiceDateParser.parseDateTime(issueDateStr + "T" + issueTimeStr));
+            } else {
+                invoice.setIssueDate(InvoiceDateParser.parseDateTime(issueDateStr));
+            }
+        }
+
+        String dueDateStr = getElementValue(doc, "cbc:DueDate");
+        if (dueDateStr != null && !dueDateStr.isEmpty()) {
+            invoice.setDueDate(InvoiceDateParser.parseDateTime(dueDateStr));
+        }
+
+        // Información del proveedor (AccountingSupplierParty)
+        NodeList supplierNodes = doc.getElementsByTagName("cac:AccountingSupplierParty");
+        if (supplierNodes.getLength() > 0) {
+            Element supplierElement = (Element) supplierNodes.item(0);
+            invoice.setSupplierId(getElementValue(supplierElement, "cbc:CompanyID"));
+
+            Element partyNameElement = (Element) supplierElement.getElementsByTagName("cac:PartyName").item(0);
+            if (partyNameElement != null) {
+                invoice.setSupplierName(getElementValue(partyNameElement, "cbc:Name"));
+            }
+        }
+
+        // Totales monetarios
+        NodeList monetaryTotalNodes = doc.getElementsByTagName("cac:LegalMonetaryTotal");
+        if (monetaryTotalNodes.getLength() > 0) {
+            Element monetaryElement = (Element) monetaryTotalNodes.item(0);
+
+            String lineExtensionAmount = getElementValue(monetaryElement, "cbc:LineExtensionAmount");
+            if (lineExtensionAmount != null) {
+                invoice.setSubtotal(new BigDecimal(lineExtensionAmount));
+            }
+
+            String taxExclusiveAmount = getElementValue(monetaryElement, "cbc:TaxExclusiveAmount");
+            String taxInclusiveAmount = getElementValue(monetaryElement, "cbc:TaxInclusiveAmount");
+            if (taxExclusiveAmount != null && taxInclusiveAmount != null) {
+                BigDecimal taxExclusive = new BigDecimal(taxExclusiveAmount);
+                BigDecimal taxInclusive = new BigDecimal(taxInclusiveAmount);
+                invoice.setTax(taxInclusive.subtract(taxExclusive));
+            }
+
+            String payableAmount = getElementValue(monetaryElement, "cbc:PayableAmount");
+            if (payableAmount != null) {
+                invoice.setTotal(new BigDecimal(payableAmount));
+            }
+        }
+
+        // Retenciones (WithholdingTaxTotal)
+        NodeList withholdingNodes = doc.getElementsByTagName("cac:WithholdingTaxTotal");
+        if (withholdingNodes.getLength() > 0) {
+            for (int i = 0; i < withholdingNodes.getLength(); i++) {
+                Element withholdingElement = (Element) withholdingNodes.item(i);
+                String taxAmount = getElementValue(withholdingElement, "cbc:TaxAmount");
+
+                // Intentar determinar el tipo de retención por el nombre del impuesto
+                NodeList taxSubtotalNodes = withholdingElement.getElementsByTagName("cac:TaxSubtotal");
+                if (taxSubtotalNodes.getLength() > 0) {
+                    Element taxSubtotal = (Element) taxSubtotalNodes.item(0);
+                    Element taxCategory = (Element) taxSubtotal.getElementsByTagName("cac:TaxCategory").item(0);
+                    if (taxCategory != null) {
+                        Element taxScheme = (Element) taxCategory.getElementsByTagName("cac:TaxScheme").item(0);
+                        if (taxScheme != null) {
+                            String taxName = getElementValue(taxScheme, "cbc:Name");
+                            if (taxName != null && taxName.contains("ICA")) {
+                                invoice.setWithholdingICA(new BigDecimal(taxAmount));
+                            } else {
+                                invoice.setWithholdingTax(new BigDecimal(taxAmount));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // Ítems de la factura
+        List<ParsedInvoiceItemDTO> items = parseInvoiceItems(doc);
+        invoice.setItems(items);
+
+        return invoice;
+    }
+
     /**
      * Extrae el XML interno del CDATA si el documento tiene estructura envolvente.
      * Las facturas DIAN a veces vienen envueltas en un XML contenedor donde el XML
      * real está en el CDATA del elemento cbc:Description.
      */
-    private Document extractInnerXmlIfNeeded(Document doc, DocumentBuilder builder) throws Exception {
+    private Document extractInnerXmlIfNeeded(Document doc, DocumentBuilder builder)
+            throws SAXException, IOException {
         // Intentar buscar cbc:Description con CDATA
         NodeList descriptionNodes = doc.getElementsByTagName("cbc:Description");
         if (descriptionNodes.getLength() > 0) {
@@ -0,0 +1,646 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.construmedicis.buildtracking.email.dto.InvoiceParseResultDTO;
+import com.construmedicis.buildtracking.email.dto.ParsedInvoiceDTO;
+import com.construmedicis.buildtracking.email.dto.ParsedInvoiceItemDTO;
+import com.construmedicis.buildtracking.email.services.InvoiceXmlParser;
+import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Parser de facturas DIAN basado en StAX: recorre el XML una sola vez, sin
+ * construir un DOM, y extrae encabezado, proveedor, totales, retenciones e
+ * ítems a medida que llegan los eventos.
+ * <p>
+ * Reproduce la semántica del parser DOM ({@link InvoiceXmlParserImpl}): cada
+ * valor es el texto del primer elemento con ese nombre calificado dentro de
+ * su ámbito, igual que {@code getElementsByTagName(...).item(0)}. Se activa con
+ * {@code buildtracking.xml.parser=stax}.
+ * <p>
+ * En un AttachedDocument la factura embebida en el CDATA no se copia a un
+ * String: el parser interno la lee directamente de los eventos del documento
+ * externo, en fragmentos.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "buildtracking.xml.parser", havingValue = "stax")
+public class StaxInvoiceXmlParserImpl implements InvoiceXmlParser {
+
+    // La fábrica es thread-safe una vez configurada; los readers no
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    // Propiedad del parser StAX del JDK: entrega las secciones CDATA largas en
+    // fragmentos de este tamaño en lugar de un solo evento
+    private static final String CDATA_CHUNK_SIZE = "jdk.xml.cdataChunkSize";
+    private static final int CDATA_CHUNK_CHARS = 8192;
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        if (factory.isPropertySupported(CDATA_CHUNK_SIZE)) {
+            factory.setProperty(CDATA_CHUNK_SIZE, CDATA_CHUNK_CHARS);
+        }
+        return factory;
+    }
+
+    @Override
+    public InvoiceParseResultDTO parse(InputStream xmlStream) {
+        RawInvoice raw;
+        try {
+            raw = read(xmlStream);
+        } catch (XMLStreamException e) {
+            log.warn("XML mal formado: {}", e.getMessage());
+            return InvoiceParseResultDTO.malformed("XML mal formado: " + e.getMessage());
+        }
+
+        String missing = findMissingRequiredElement(raw);
+        if (missing != null) {
+            return InvoiceParseResultDTO.notDianInvoice("No es una factura DIAN: falta " + missing);
+        }
+
+        try {
+            ParsedInvoiceDTO invoice = toParsedInvoice(raw);
+            log.info("Factura parseada exitosamente: {}", invoice.getInvoiceNumber());
+            return InvoiceParseResultDTO.valid(invoice);
+        } catch (RuntimeException e) {
+            log.warn("Factura con valores inválidos: {}", e.getMessage());
+            return InvoiceParseResultDTO.malformed("Valor inválido en la factura: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public ParsedInvoiceDTO parseXml(File xmlFile) throws IOException {
+        try (InputStream in = Files.newInputStream(xmlFile.toPath())) {
+            return parseXml(in);
+        }
+    }
+
+    @Override
+    public ParsedInvoiceDTO parseXml(InputStream xmlStream) throws IOException {
+        try {
+            ParsedInvoiceDTO invoice = toParsedInvoice(read(xmlStream));
+            log.info("Factura parseada exitosamente: {}", invoice.getInvoiceNumber());
+            return invoice;
+        } catch (Exception e) {
+            log.error("Error parseando XML de factura: {}", e.getMessage(), e);
+            throw new BusinessRuleException("xml.parse.error");
+        }
+    }
+
+    @Override
+    public boolean isValidInvoiceXml(File xmlFile) {
+        try (InputStream in = Files.newInputStream(xmlFile.toPath())) {
+            return isValidInvoiceXml(in);
+        } catch (IOException e) {
+            log.warn("Archivo XML no válido: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isValidInvoiceXml(InputStream xmlStream) {
+        try {
+            return findMissingRequiredElement(read(xmlStream)) == null;
+
+        } catch (Exception e) {
+            log.warn("Archivo XML no válido: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Valida los elementos básicos que debe tener una factura DIAN.
+     * 
+     * @return Nombre del primer elemento faltante, o null si están todos
+     */
+    private String findMissingRequiredElement(RawInvoice raw) {
+        if (raw.invoiceNumber == null || raw.invoiceNumber.isEmpty()) {
+            return "cbc:ID";
+        }
+        if (raw.issueDate == null || raw.issueDate.isEmpty()) {
+            return "cbc:IssueDate";
+        }
+        if (!raw.supplierFound) {
+            return "cac:AccountingSupplierParty";
+        }
+        return null;
+    }
+
+    /**
+     * Recorre el documento. Si el primer cbc:Description contiene una factura
+     * embebida (AttachedDocument), el recorrido externo se detiene ahí y se
+     * recorre el XML interno, leído del mismo reader externo.
+     */
+    private RawInvoice read(InputStream xmlStream) throws XMLStreamException {
+        InvoiceScanner outer = new InvoiceScanner(true);
+        XMLStreamReader outerReader = XML_INPUT_FACTORY.createXMLStreamReader(xmlStream);
+        try {
+            Reader wrappedInvoice = scan(outerReader, outer);
+            if (wrappedInvoice == null) {
+                return outer.invoice;
+            }
+
+            log.debug("Detectada estructura envolvente, extrayendo XML interno del CDATA");
+            InvoiceScanner inner = new InvoiceScanner(false);
+            XMLStreamReader innerReader = XML_INPUT_FACTORY.createXMLStreamReader(wrappedInvoice);
+            try {
+                scan(innerReader, inner);
+            } finally {
+                innerReader.close();
+            }
+            return inner.invoice;
+        } finally {
+            outerReader.close();
+        }
+    }
+
+    /**
+     * @return Contenido de la factura embebida si se detectó una (el reader
+     *         queda posicionado dentro del cbc:Description), o null si se
+     *         recorrió todo el documento
+     */
+    private Reader scan(XMLStreamReader reader, InvoiceScanner scanner) throws XMLStreamException {
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> scanner.startElement(qualifiedName(reader));
+                case XMLStreamConstants.END_ELEMENT -> scanner.endElement();
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                    scanner.text(reader);
+                    String start = scanner.wrappedInvoiceStart();
+                    if (start != null) {
+                        return new ElementTextReader(start, reader);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        scanner.finish();
+        return null;
+    }
+
+    /**
+     * Nombre tal como aparece en el XML (prefijo:local), que es con lo que
+     * compara getElementsByTagName en el parser DOM.
+     */
+    private String qualifiedName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        return prefix == null || prefix.isEmpty() ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+    }
+
+    private ParsedInvoiceDTO toParsedInvoice(RawInvoice raw) {
+        ParsedInvoiceDTO invoice = new ParsedInvoiceDTO();
+
+        // Número de factura
+        invoice.setInvoiceNumber(raw.invoiceNumber);
+
+        // Fechas
+        if (raw.issueDate != null && !raw.issueDate.isEmpty()) {
+            if (raw.issueTime != null && !raw.issueTime.isEmpty()) {
+                invoice.setIssueDate(InvoiceDateParser.parseDateTime(raw.issueDate + "T" + raw.issueTime));
+            } else {
+                invoice.setIssueDate(InvoiceDateParser.parseDateTime(raw.issueDate));
+            }
+        }
+        if (raw.dueDate != null && !raw.dueDate.isEmpty()) {
+            invoice.setDueDate(InvoiceDateParser.parseDateTime(raw.dueDate));
+        }
+
+        // Proveedor
+        invoice.setSupplierId(raw.supplierId);
+        invoice.setSupplierName(raw.supplierName);
+
+        // Totales monetarios
+        if (raw.lineExtensionAmount != null) {
+            invoice.setSubtotal(new BigDecimal(raw.lineExtensionAmount));
+        }
+        if (raw.taxExclusiveAmount != null && raw.taxInclusiveAmount != null) {
+            invoice.setTax(new BigDecimal(raw.taxInclusiveAmount).subtract(new BigDecimal(raw.taxExclusiveAmount)));
+        }
+        if (raw.payableAmount != null) {
+            invoice.setTotal(new BigDecimal(raw.payableAmount));
+        }
+
+        // Retenciones: la última de cada tipo prevalece, como en el parser DOM
+        for (RawWithholding withholding : raw.withholdings) {
+            if (!withholding.hasTaxScheme()) {
+                continue;
+            }
+            if (withholding.taxName() != null && withholding.taxName().contains("ICA")) {
+                invoice.setWithholdingICA(new BigDecimal(withholding.taxAmount()));
+            } else {
+                invoice.setWithholdingTax(new BigDecimal(withholding.taxAmount()));
+            }
+        }
+
+        // Ítems de la factura
+        List<ParsedInvoiceItemDTO> items = new ArrayList<>(raw.lines.size());
+        for (RawLine line : raw.lines) {
+            ParsedInvoiceItemDTO item = new ParsedInvoiceItemDTO();
+            if (line.quantity() != null) {
+                item.setQuantity(new BigDecimal(line.quantity()));
+            }
+            if (line.lineExtensionAmount() != null) {
+                item.setLineTotal(new BigDecimal(line.lineExtensionAmount()));
+            }
+            if (line.priceAmount() != null) {
+                item.setUnitPrice(new BigDecimal(line.priceAmount()));
+            }
+            item.setDescription(line.description());
+            item.setItemCode(line.itemCode());
+            if (line.taxAmount() != null) {
+                item.setTaxAmount(new BigDecimal(line.taxAmount()));
+            }
+            items.add(item);
+        }
+        invoice.setItems(items);
+
+        return invoice;
+    }
+
+    /**
+     * Valores tal como vienen en el XML; la conversión a números y fechas se
+     * hace aparte para que la validación no falle por un monto mal formado,
+     * igual que en el parser DOM.
+     */
+    private static final class RawInvoice {
+        private String invoiceNumber;
+        private String issueDate;
+        private String issueTime;
+        private String dueDate;
+        private boolean supplierFound;
+        private String supplierId;
+        private String supplierName;
+        private String lineExtensionAmount;
+        private String taxExclusiveAmount;
+        private String taxInclusiveAmount;
+        private String payableAmount;
+        private final List<RawWithholding> withholdings = new ArrayList<>();
+        private final List<RawLine> lines = new ArrayList<>();
+    }
+
+    private record RawWithholding(String taxAmount, boolean hasTaxScheme, String taxName) {
+    }
+
+    private record RawLine(String quantity, String lineExtensionAmount, String priceAmount, String description,
+            String itemCode, String taxAmount) {
+    }
+
+    /**
+     * Ámbito abierto por un elemento (ej: cac:InvoiceLine). Guarda el texto del
+     * primer descendiente de cada nombre buscado; al cerrarse el elemento
+     * ejecuta onClose con los valores completos.
+     */
+    private static final class Scope {
+        private final int depth;
+        private final Set<String> wanted;
+        private final Map<String, String> values = new HashMap<>();
+        private final Consumer<Scope> onClose;
+        private boolean open = true;
+
+        private Scope(int depth, Set<String> wanted, Consumer<Scope> onClose) {
+            this.depth = depth;
+            this.wanted = wanted;
+            this.onClose = onClose;
+        }
+
+        private String value(String name) {
+            return values.get(name);
+        }
+    }
+
+    /**
+     * Texto de un elemento en captura (equivalente a getTextContent: incluye el
+     * texto de los descendientes y las secciones CDATA).
+     */
+    private static final class Capture {
+        private final Scope scope;
+        private final String name;
+        private final int depth;
+        private final StringBuilder text = new StringBuilder();
+
+        private Capture(Scope scope, String name, int depth) {
+            this.scope = scope;
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static final class InvoiceScanner {
+
+        private static final String DESCRIPTION = "cbc:Description";
+        private static final String XML_DECLARATION = "<?xml";
+        private static final String INVOICE_ROOT = "<Invoice";
+        private static final Set<String> DOCUMENT_VALUES = Set.of(
+                "cbc:ID", "cbc:IssueDate", "cbc:IssueTime", "cbc:DueDate");
+        private static final Set<String> DOCUMENT_VALUES_WITH_WRAPPER = Set.of(
+                "cbc:ID", "cbc:IssueDate", "cbc:IssueTime", "cbc:DueDate", DESCRIPTION);
+
+        private final boolean detectWrapper;
+        private final RawInvoice invoice = new RawInvoice();
+        private final List<Scope> scopes = new ArrayList<>();
+        private final List<Capture> captures = new ArrayList<>();
+        private final Scope document;
+        // Primer cbc:Description del documento mientras no se sabe si trae una
+        // factura embebida
+        private Capture wrapperCandidate;
+        private int depth;
+
+        // Primer elemento de cada tipo dentro de su ámbito padre
+        private Scope supplier;
+        private Scope partyName;
+        private Scope monetaryTotal;
+        private Scope withholding;
+        private Scope taxSubtotal;
+        private Scope taxCategory;
+        private Scope taxScheme;
+        private Scope line;
+        private Scope linePrice;
+        private Scope lineItem;
+        private Scope lineTaxTotal;
+
+        private InvoiceScanner(boolean detectWrapper) {
+            this.detectWrapper = detectWrapper;
+            this.document = open(detectWrapper ? DOCUMENT_VALUES_WITH_WRAPPER : DOCUMENT_VALUES, this::closeDocument);
+        }
+
+        private Scope open(Set<String> wanted, Consumer<Scope> onClose) {
+            Scope scope = new Scope(depth, wanted, onClose);
+            scopes.add(scope);
+            return scope;
+        }
+
+        private void startElement(String name) {
+            depth++;
+
+            // Capturar el primer descendiente buscado de cada ámbito abierto
+            for (Scope scope : scopes) {
+                if (scope.wanted.contains(name) && !scope.values.containsKey(name)) {
+                    scope.values.put(name, null);
+                    Capture capture = new Capture(scope, name, depth);
+                    captures.add(capture);
+                    if (detectWrapper && scope == document && DESCRIPTION.equals(name)) {
+                        wrapperCandidate = capture;
+                    }
+                }
+            }
+
+            switch (name) {
+                case "cac:AccountingSupplierParty" -> {
+                    if (supplier == null) {
+                        invoice.supplierFound = true;
+                        supplier = open(Set.of("cbc:CompanyID"), s -> invoice.supplierId = s.value("cbc:CompanyID"));
+                    }
+                }
+                case "cac:PartyName" -> {
+                    if (isOpen(supplier) && partyName == null) {
+                        partyName = open(Set.of("cbc:Name"), s -> invoice.supplierName = s.value("cbc:Name"));
+                    }
+                }
+                case "cac:LegalMonetaryTotal" -> {
+                    if (monetaryTotal == null) {
+                        monetaryTotal = open(Set.of("cbc:LineExtensionAmount", "cbc:TaxExclusiveAmount",
+                                "cbc:TaxInclusiveAmount", "cbc:PayableAmount"), this::closeMonetaryTotal);
+                    }
+                }
+                case "cac:WithholdingTaxTotal" -> {
+                    taxSubtotal = null;
+                    taxCategory = null;
+                    taxScheme = null;
+                    withholding = open(Set.of("cbc:TaxAmount"), this::closeWithholding);
+                }
+                case "cac:TaxSubtotal" -> {
+                    if (isOpen(withholding) && taxSubtotal == null) {
+                        taxSubtotal = open(Set.of(), s -> {
+                        });
+                    }
+                }
+                case "cac:TaxCategory" -> {
+                    if (isOpen(taxSubtotal) && taxCategory == null) {
+                        taxCategory = open(Set.of(), s -> {
+                        });
+                    }
+                }
+                case "cac:TaxScheme" -> {
+                    if (isOpen(taxCategory) && taxScheme == null) {
+                        taxScheme = open(Set.of("cbc:Name"), s -> {
+                        });
+                    }
+                }
+                case "cac:InvoiceLine" -> {
+                    linePrice = null;
+                    lineItem = null;
+                    lineTaxTotal = null;
+                    line = open(Set.of("cbc:InvoicedQuantity", "cbc:LineExtensionAmount"), this::closeLine);
+                }
+                case "cac:Price" -> {
+                    if (isOpen(line) && linePrice == null) {
+                        linePrice = open(Set.of("cbc:PriceAmount"), s -> {
+                        });
+                    }
+                }
+                case "cac:Item" -> {
+                    if (isOpen(line) && lineItem == null) {
+                        lineItem = open(Set.of(DESCRIPTION, "cbc:ID"), s -> {
+                        });
+                    }
+                }
+                case "cac:TaxTotal" -> {
+                    if (isOpen(line) && lineTaxTotal == null) {
+                        lineTaxTotal = open(Set.of("cbc:TaxAmount"), s -> {
+                        });
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        private void endElement() {
+            for (int i = captures.size() - 1; i >= 0; i--) {
+                Capture capture = captures.get(i);
+                if (capture.depth != depth) {
+                    continue;
+                }
+                captures.remove(i);
+                capture.scope.values.put(capture.name, capture.text.toString());
+                if (capture == wrapperCandidate) {
+                    wrapperCandidate = null;
+                }
+            }
+
+            for (int i = scopes.size() - 1; i >= 0; i--) {
+                Scope scope = scopes.get(i);
+                if (scope.depth == depth) {
+                    scopes.remove(i);
+                    scope.open = false;
+                    scope.onClose.accept(scope);
+                }
+            }
+
+            depth--;
+        }
+
+        /**
+         * Cierra el ámbito del documento al llegar al final del XML.
+         */
+        private void finish() {
+            for (int i = scopes.size() - 1; i >= 0; i--) {
+                Scope scope = scopes.remove(i);
+                scope.open = false;
+                scope.onClose.accept(scope);
+            }
+        }
+
+        private void text(XMLStreamReader reader) {
+            for (Capture capture : captures) {
+                capture.text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+
+        private boolean isOpen(Scope scope) {
+            return scope != null && scope.open;
+        }
+
+        /**
+         * Revisa el inicio del primer cbc:Description del documento a medida que
+         * llega su texto. Basta con los primeros caracteres para decidir si es
+         * una factura embebida; el resto no se acumula.
+         *
+         * @return Texto recibido hasta ahora si es una factura embebida, o null
+         */
+        private String wrappedInvoiceStart() {
+            if (wrapperCandidate == null) {
+                return null;
+            }
+            String text = wrapperCandidate.text.toString();
+            String start = text.stripLeading();
+            if (start.startsWith(XML_DECLARATION) || start.startsWith(INVOICE_ROOT)) {
+                return text;
+            }
+            if (!XML_DECLARATION.startsWith(start) && !INVOICE_ROOT.startsWith(start)) {
+                wrapperCandidate = null; // Descripción normal
+            }
+            return null;
+        }
+
+        private void closeDocument(Scope scope) {
+            invoice.invoiceNumber = scope.value("cbc:ID");
+            invoice.issueDate = scope.value("cbc:IssueDate");
+            invoice.issueTime = scope.value("cbc:IssueTime");
+            invoice.dueDate = scope.value("cbc:DueDate");
+        }
+
+        private void closeMonetaryTotal(Scope scope) {
+            invoice.lineExtensionAmount = scope.value("cbc:LineExtensionAmount");
+            invoice.taxExclusiveAmount = scope.value("cbc:TaxExclusiveAmount");
+            invoice.taxInclusiveAmount = scope.value("cbc:TaxInclusiveAmount");
+            invoice.payableAmount = scope.value("cbc:PayableAmount");
+        }
+
+        private void closeWithholding(Scope scope) {
+            invoice.withholdings.add(new RawWithholding(scope.value("cbc:TaxAmount"), taxScheme != null,
+                    taxScheme != null ? taxScheme.value("cbc:Name") : null));
+        }
+
+        private void closeLine(Scope scope) {
+            invoice.lines.add(new RawLine(
+                    scope.value("cbc:InvoicedQuantity"),
+                    scope.value("cbc:LineExtensionAmount"),
+                    linePrice != null ? linePrice.value("cbc:PriceAmount") : null,
+                    lineItem != null ? lineItem.value(DESCRIPTION) : null,
+                    lineItem != null ? lineItem.value("cbc:ID") : null,
+                    lineTaxTotal != null ? lineTaxTotal.value("cbc:TaxAmount") : null));
+        }
+    }
+
+    /**
+     * Texto de un elemento leído directamente de los eventos del reader externo
+     * (equivalente a getTextContent), precedido por el texto que ya se había
+     * recibido. Termina al cerrarse el elemento.
+     */
+    private static final class ElementTextReader extends Reader {
+        private final String start;
+        private final XMLStreamReader reader;
+        private int startOffset;
+        private int nesting;
+        private boolean inText;
+        private int textOffset;
+        private boolean ended;
+
+        private ElementTextReader(String start, XMLStreamReader reader) {
+            this.start = start;
+            this.reader = reader;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (startOffset < start.length()) {
+                int count = Math.min(length, start.length() - startOffset);
+                start.getChars(startOffset, startOffset + count, buffer, offset);
+                startOffset += count;
+                return count;
+            }
+            try {
+                while (!ended) {
+                    if (inText && textOffset < reader.getTextLength()) {
+                        int count = reader.getTextCharacters(textOffset, buffer, offset,
+                                Math.min(length, reader.getTextLength() - textOffset));
+                        textOffset += count;
+                        return count;
+                    }
+                    inText = false;
+                    if (!reader.hasNext()) {
+                        break;
+                    }
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT -> nesting++;
+                        case XMLStreamConstants.END_ELEMENT -> ended = nesting-- == 0;
+                        case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                            inText = true;
+                            textOffset = 0;
+                        }
+                        default -> {
+                        }
+                    }
+                }
+                return -1;
+            } catch (XMLStreamException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() {
+            // El reader externo lo cierra quien lo creó
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.construmedicis.buildtracking.email.dto.EmailSyncResultDTO;
+import com.construmedicis.buildtracking.email.dto.SyncJobDTO;
+import com.construmedicis.buildtracking.email.models.SyncJob;
+import com.construmedicis.buildtracking.email.models.SyncJobFile;
+import com.construmedicis.buildtracking.email.models.SyncJob.SyncJobStatus;
+import com.construmedicis.buildtracking.email.models.SyncJob.SyncJobType;
+import com.construmedicis.buildtracking.email.repository.EmailConfigRepository;
+import com.construmedicis.buildtracking.email.repository.SyncJobRepository;
+import com.construmedicis.buildtracking.email.services.EmailConfigService;
+import com.construmedicis.buildtracking.email.services.SyncJobService;
+import com.construmedicis.buildtracking.invoice.dto.UploadedFileResultDTO;
+import com.construmedicis.buildtracking.invoice.services.InvoiceService;
+import com.construmedicis.buildtracking.invoice.services.SourceAttachment;
+import com.construmedicis.buildtracking.project.repository.ProjectRepository;
+import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Los trabajos corren en un pool propio (no en los hilos de Tomcat). Mientras
+ * corren, un scheduler copia cada cierto intervalo los contadores del
+ * resultado en memoria a la fila del trabajo y los publica a los suscriptores
+ * SSE; así el progreso se persiste sin escribir en BD por cada factura.
+ */
+@Service
+@Slf4j
+public class SyncJobServiceImpl implements SyncJobService {
+
+    private static final int MAX_STORED_ERRORS = 100;
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final long SSE_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+    private static final String UPLOAD_DIR = System.getProperty("java.io.tmpdir") + "/buildtracking_uploads/";
+
+    private final SyncJobRepository syncJobRepository;
+    private final EmailConfigRepository emailConfigRepository;
+    private final ProjectRepository projectRepository;
+    private final EmailConfigService emailConfigService;
+    private final InvoiceService invoiceService;
+    private final long progressIntervalMillis;
+    private final ExecutorService jobExecutor;
+    private final ScheduledExecutorService progressScheduler;
+
+    // Clave de deduplicación (config:{id}, label:{etiqueta}|{desde}|{hasta} o upload:{directorio})
+    // -> trabajo activo
+    private final Map<String, Long> activeJobs = new ConcurrentHashMap<>();
+    private final Map<Long, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    public SyncJobServiceImpl(SyncJobRepository syncJobRepository,
+            EmailConfigRepository emailConfigRepository,
+            ProjectRepository projectRepository,
+            EmailConfigService emailConfigService,
+            InvoiceService invoiceService,
+            @Value("${buildtracking.sync.job-workers:2}") int jobWorkers,
+            @Value("${buildtracking.sync.progress-interval-ms:2000}") long progressIntervalMillis) {
+        this.syncJobRepository = syncJobRepository;
+        this.emailConfigRepository = emailConfigRepository;
+        this.projectRepository = projectRepository;
+        this.emailConfigService = emailConfigService;
+        this.invoiceService = invoiceService;
+        this.progressIntervalMillis = progressIntervalMillis;
+        this.jobExecutor = Executors.newFixedThreadPool(jobWorkers,
+                Thread.ofPlatform().name("sync-job-", 0).factory());
+        this.progressScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("sync-job-progress").daemon().factory());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        progressScheduler.shutdownNow();
+    }
+
+    /**
+     * Un trabajo que estaba en cola o corriendo cuando se detuvo la aplicación
+     * ya no avanzará: se marca como fallido para que no quede activo para
+     * siempre.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void failInterruptedJobs() {
+        List<SyncJob> interrupted = syncJobRepository.findByStatusIn(
+                EnumSet.of(SyncJobStatus.QUEUED, SyncJobStatus.RUNNING));
+        for (SyncJob job : interrupted) {
+            job.setStatus(SyncJobStatus.FAILED);
+            job.setFinishedDate(LocalDateTime.now());
+            job.getErrors().add("Trabajo interrumpido por reinicio del servidor");
+            job.setErrorCount(job.getErrors().size());
+        }
+        if (!interrupted.isEmpty()) {
+            log.warn("{} trabajos de sincronización interrumpidos marcados como fallidos", interrupted.size());
+        }
+        // Las cargas que quedaron en disco eran de esos trabajos
+        deleteRecursively(Path.of(UPLOAD_DIR));
+    }
+
+    @Override
+    public SyncJobDTO submitEmailConfigSync(Long emailConfigId) {
+        if (!emailConfigRepository.existsById(emailConfigId)) {
+            throw new BusinessRuleException("email.config.not.found");
+        }
+        SyncJob job = SyncJob.builder()
+                .type(SyncJobType.EMAIL_CONFIG)
+                .emailConfigId(emailConfigId)
+                .build();
+        return submit("config:" + emailConfigId, job,
+                result -> emailConfigService.syncEmails(emailConfigId, result));
+    }
+
+    @Override
+    public SyncJobDTO submitLabelSync(String gmailLabel, String after, String before) {
+        SyncJob job = SyncJob.builder()
+                .type(SyncJobType.GMAIL_LABEL)
+                .gmailLabel(gmailLabel)
+                .after(after)
+                .before(before)
+                .build();
+        // El rango es parte de la clave: otro rango de la misma etiqueta es otro trabajo
+        String key = "label:" + gmailLabel + "|" + (after != null ? after : "") + "|"
+                + (before != null ? before : "");
+        return submit(key, job,
+                result -> invoiceService.syncFromGmail(gmailLabel, after, before, result));
+    }
+
+    @Override
+    public SyncJobDTO submitUpload(List<MultipartFile> files, Long projectId) {
+        if (files == null || files.isEmpty()) {
+            throw new BusinessRuleException("invoice.upload.empty");
+        }
+        if (projectId != null && !projectRepository.existsById(projectId)) {
+            throw new BusinessRuleException("project.not.found");
+        }
+
+        Path uploadDir = null;
+        try {
+            uploadDir = Files.createTempDirectory(Files.createDirectories(Path.of(UPLOAD_DIR)), "upload_");
+            List<SourceAttachment> staged = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                MultipartFile file = files.get(i);
+                // Nombre por posición: el nombre original puede repetirse o traer rutas
+                Path stagedFile = uploadDir.resolve(i + ".part");
+                file.transferTo(stagedFile);
+                staged.add(new SourceAttachment(null, null, file.getOriginalFilename(),
+                        () -> Files.newInputStream(stagedFile)));
+            }
+
+            SyncJob job = SyncJob.builder()
+                    .type(SyncJobType.XML_UPLOAD)
+                    .projectId(projectId)
+                    .build();
+            Path jobDir = uploadDir;
+            return submit("upload:" + uploadDir.getFileName(), job, result -> {
+                try {
+                    invoiceService.uploadInvoices(staged, projectId, result);
+                } finally {
+                    deleteRecursively(jobDir);
+                }
+            });
+        } catch (IOException e) {
+            log.error("No se pudieron guardar los archivos de la carga: {}", e.getMessage(), e);
+            deleteRecursively(uploadDir);
+            throw new BusinessRuleException("invoice.upload.staging.failed");
+        } catch (RuntimeException e) {
+            deleteRecursively(uploadDir);
+            throw e;
+        }
+    }
+
+    @Override
+    public SyncJobDTO findById(Long id) {
+        return toDTO(findJob(id));
+    }
+
+    @Override
+    public SseEmitter subscribe(Long id) {
+        SyncJob job = findJob(id);
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT_MILLIS);
+        if (job.isFinished()) {
+            send(emitter, "completed", toDTO(job));
+            emitter.complete();
+            return emitter;
+        }
+
+        List<SseEmitter> subscribers = emitters.computeIfAbsent(id, key -> new CopyOnWriteArrayList<>());
+        subscribers.add(emitter);
+        emitter.onCompletion(() -> subscribers.remove(emitter));
+        emitter.onTimeout(() -> subscribers.remove(emitter));
+        emitter.onError(e -> subscribers.remove(emitter));
+
+        // Releer: el trabajo pudo terminar antes de registrar al suscriptor
+        job = findJob(id);
+        if (job.isFinished()) {
+            send(emitter, "completed", toDTO(job));
+            emitter.complete();
+        } else {
+            send(emitter, "progress", toDTO(job));
+        }
+        return emitter;
+    }
+
+    /**
+     * Sincronizado para que dos envíos simultáneos con la misma clave (doble
+     * clic) no creen dos trabajos.
+     */
+    private synchronized SyncJobDTO submit(String key, SyncJob job, SyncTask task) {
+        Long activeJobId = activeJobs.get(key);
+        if (activeJobId != null) {
+            log.info("Ya hay una sincronización activa para {} (trabajo {})", key, activeJobId);
+            return findById(activeJobId);
+        }
+
+        SyncJob saved = syncJobRepository.save(job);
+        activeJobs.put(key, saved.getId());
+        try {
+            jobExecutor.execute(() -> run(key, new RunningJob(saved.getId()), task));
+        } catch (RuntimeException e) {
+            activeJobs.remove(key);
+            throw e;
+        }
+        log.info("Sincronización {} encolada como trabajo {}", key, saved.getId());
+        return toDTO(saved);
+    }
+
+    private void run(String key, RunningJob running, SyncTask task) {
+        try {
+            SyncJob job = findJob(running.id);
+            job.setStatus(SyncJobStatus.RUNNING);
+            job.setStartedDate(LocalDateTime.now());
+            publish(syncJobRepository.save(job), "progress");
+
+            ScheduledFuture<?> progress = progressScheduler.scheduleAtFixedRate(running::flushProgress,
+                    progressIntervalMillis, progressIntervalMillis, TimeUnit.MILLISECONDS);
+            try {
+                task.run(running.result);
+            } catch (Exception e) {
+                log.error("Error en trabajo de sincronización {}: {}", running.id, e.getMessage(), e);
+                running.result.getErrors().add("Error general: " + e.getMessage());
+                running.result.setSyncStatus("FAILED");
+            } finally {
+                progress.cancel(false);
+            }
+
+            running.finish();
+        } catch (RuntimeException e) {
+            log.error("No se pudo registrar el estado del trabajo {}: {}", running.id, e.getMessage(), e);
+        } finally {
+            activeJobs.remove(key, running.id);
+            List<SseEmitter> subscribers = emitters.remove(running.id);
+            if (subscribers != null) {
+                subscribers.forEach(SseEmitter::complete);
+            }
+        }
+    }
+
+    /**
+     * Copia el resultado en memoria a la fila del trabajo. Los contadores se
+     * leen bajo el monitor del resultado, el mismo que usa el motor de ingesta
+     * al incrementarlos.
+     */
+    private SyncJob saveProgress(Long jobId, EmailSyncResultDTO result, SyncJobStatus finalStatus) {
+        SyncJob job = findJob(jobId);
+        synchronized (result) {
+            job.setEmailsProcessed(result.getEmailsProcessed());
+            job.setInvoicesCreated(result.getInvoicesCreated());
+            job.setInvoicesUpdated(result.getInvoicesUpdated());
+            job.setInvoicesAutoAssigned(result.getInvoicesAutoAssigned());
+            job.setInvoicesPendingReview(result.getInvoicesPendingReview());
+            job.setAttachmentsSkipped(result.getAttachmentsSkipped());
+        }
+
+        List<String> errors = result.getErrors();
+        synchronized (errors) {
+            job.setErrorCount(errors.size());
+            // Solo se guardan los primeros errores; el total queda en errorCount
+            if (job.getErrors().size() < Math.min(errors.size(), MAX_STORED_ERRORS)) {
+                List<String> stored = new ArrayList<>();
+                for (String error : errors.subList(0, Math.min(errors.size(), MAX_STORED_ERRORS))) {
+                    stored.add(error != null && error.length() > MAX_ERROR_LENGTH
+                            ? error.substring(0, MAX_ERROR_LENGTH)
+                            : error);
+                }
+                job.setErrors(stored);
+            }
+        }
+
+        if (finalStatus != null) {
+            if (result.getFiles() != null) {
+                job.setFiles(result.getFiles().stream().map(SyncJobServiceImpl::toFile).toList());
+            }
+            job.setStatus(finalStatus);
+            job.setFinishedDate(LocalDateTime.now());
+        }
+        return syncJobRepository.save(job);
+    }
+
+    private void publish(SyncJob job, String eventName) {
+        List<SseEmitter> subscribers = emitters.get(job.getId());
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        SyncJobDTO dto = toDTO(job);
+        for (SseEmitter emitter : subscribers) {
+            if (!send(emitter, eventName, dto)) {
+                subscribers.remove(emitter);
+            }
+        }
+    }
+
+    private boolean send(SseEmitter emitter, String eventName, SyncJobDTO dto) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).id(String.valueOf(dto.getId())).data(dto));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Cliente desconectado
+            log.debug("No se pudo enviar evento del trabajo {}: {}", dto.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo borrar {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private SyncJob findJob(Long id) {
+        return syncJobRepository.findById(id)
+                .orElseThrow(() -> new BusinessRuleException("sync.job.not.found"));
+    }
+
+    private static SyncJobStatus finalStatus(EmailSyncResultDTO result) {
+        if ("SUCCESS".equals(result.getSyncStatus())) {
+            return SyncJobStatus.SUCCESS;
+        }
+        if ("PARTIAL_SUCCESS".equals(result.getSyncStatus())) {
+            return SyncJobStatus.PARTIAL_SUCCESS;
+        }
+        return SyncJobStatus.FAILED;
+    }
+
+    private SyncJobDTO toDTO(SyncJob job) {
+        return SyncJobDTO.builder()
+                .id(job.getId())
+                .type(job.getType())
+                .emailConfigId(job.getEmailConfigId())
+                .gmailLabel(job.getGmailLabel())
+                .after(job.getAfter())
+                .before(job.getBefore())
+                .projectId(job.getProjectId())
+                .status(job.getStatus())
+                .emailsProcessed(job.getEmailsProcessed())
+                .invoicesCreated(job.getInvoicesCreated())
+                .invoicesUpdated(job.getInvoicesUpdated())
+                .invoicesAutoAssigned(job.getInvoicesAutoAssigned())
+                .invoicesPendingReview(job.getInvoicesPendingReview())
+                .attachmentsSkipped(job.getAttachmentsSkipped())
+                .errorCount(job.getErrorCount())
+                .errors(new ArrayList<>(job.getErrors()))
+                .files(job.getFiles().stream().map(SyncJobServiceImpl::toFileDTO).toList())
+                .createdDate(job.getCreatedDate())
+                .startedDate(job.getStartedDate())
+                .finishedDate(job.getFinishedDate())
+                .build();
+    }
+
+    private static SyncJobFile toFile(UploadedFileResultDTO fileResult) {
+        return SyncJobFile.builder()
+                .filename(fileResult.getFilename())
+                .status(fileResult.getStatus())
+                .invoiceNumbers(join(fileResult.getInvoiceNumbers(), ","))
+                .rejectedXmls(join(fileResult.getRejectedXmls(), "\n"))
+                .errors(join(fileResult.getErrors(), "\n"))
+                .build();
+    }
+
+    private static UploadedFileResultDTO toFileDTO(SyncJobFile file) {
+        return UploadedFileResultDTO.builder()
+                .filename(file.getFilename())
+                .status(file.getStatus())
+                .invoiceNumbers(split(file.getInvoiceNumbers(), ","))
+                .rejectedXmls(split(file.getRejectedXmls(), "\n"))
+                .errors(split(file.getErrors(), "\n"))
+                .build();
+    }
+
+    private static String join(List<String> values, String separator) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        // Un separador dentro de un valor partiría la lista al leerla
+        return values.stream()
+                .map(value -> value.replace(separator, " "))
+                .collect(Collectors.joining(separator));
+    }
+
+    private static List<String> split(String value, String separator) {
+        return value == null || value.isEmpty() ? List.of() : List.of(value.split(separator));
+    }
+
+    @FunctionalInterface
+    private interface SyncTask {
+        void run(EmailSyncResultDTO result) throws Exception;
+    }
+
+    /**
+     * Estado en memoria de un trabajo en curso. El flush periódico y el cierre
+     * se serializan en este objeto para que un flush tardío no sobrescriba el
+     * estado final.
+     */
+    private final class RunningJob {
+        private final Long id;
+        private final EmailSyncResultDTO result = EmailSyncResultDTO.started();
+        private boolean finished;
+
+        RunningJob(Long id) {
+            this.id = id;
+        }
+
+        synchronized void flushProgress() {
+            if (finished) {
+                return;
+            }
+            try {
+                publish(saveProgress(id, result, null), "progress");
+            } catch (RuntimeException e) {
+                log.warn("No se pudo guardar el progreso del trabajo {}: {}", id, e.getMessage());
+            }
+        }
+
+        synchronized void finish() {
+            finished = true;
+            SyncJob job = saveProgress(id, result, finalStatus(result));
+            publish(job, "completed");
+            log.info("Trabajo de sincronización {} terminado: {}", id, job.getStatus());
+        }
+    }
+}
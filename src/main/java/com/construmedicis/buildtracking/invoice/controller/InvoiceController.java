@@ -1,12 +1,18 @@
 package com.construmedicis.buildtracking.invoice.controller;
 
-import com.construmedicis.buildtracking.email.dto.EmailSyncResultDTO;
+import com.construmedicis.buildtracking.email.dto.SyncJobDTO;
+import com.construmedicis.buildtracking.email.services.SyncJobService;
 import com.construmedicis.buildtracking.invoice.dto.InvoiceDTO;
+import com.construmedicis.buildtracking.invoice.dto.InvoicePageDTO;
+import com.construmedicis.buildtracking.invoice.dto.InvoiceSearchDTO;
 import com.construmedicis.buildtracking.invoice.services.InvoiceService;
 import com.construmedicis.buildtracking.util.response.Response;
+import com.construmedicis.buildtracking.util.response.handler.ResponseHandler;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -16,9 +22,11 @@ import java.util.List;
 public class InvoiceController {
 
     private final InvoiceService service;
+    private final SyncJobService syncJobService;
 
-    public InvoiceController(InvoiceService service) {
+    public InvoiceController(InvoiceService service, SyncJobService syncJobService) {
         this.service = service;
+        this.syncJobService = syncJobService;
     }
 
     @GetMapping
@@ -26,6 +34,11 @@ public class InvoiceController {
         return ResponseEntity.ok(service.findAll());
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<Response<InvoicePageDTO>> search(@ModelAttribute InvoiceSearchDTO criteria) {
+        return ResponseEntity.ok(service.search(criteria));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Response<InvoiceDTO>> getById(@PathVariable Long id) {
         return ResponseEntity.ok(service.findById(id));
@@ -76,22 +89,57 @@ public class InvoiceController {
         return ResponseEntity.ok(service.unassignProject(id));
     }
 
+    @PutMapping("/assign-project")
+    public ResponseEntity<Response<List<InvoiceDTO>>> assignProjects(
+            @RequestParam Long projectId,
+            @RequestBody List<Long> invoiceIds) {
+        return ResponseEntity.ok(service.assignProject(invoiceIds, projectId));
+    }
+
+    @PutMapping("/unassign-project")
+    public ResponseEntity<Response<List<InvoiceDTO>>> unassignProjects(@RequestBody List<Long> invoiceIds) {
+        return ResponseEntity.ok(service.unassignProject(invoiceIds));
+    }
+
     /**
      * Sincroniza facturas desde Gmail.
      * Descarga XMLs de la etiqueta especificada, verifica duplicados,
      * crea facturas nuevas, asigna proyectos automáticamente y actualiza catálogo
-     * de items.
+     * de items. Se ejecuta como trabajo en segundo plano; el avance se consulta
+     * en /api/sync-jobs/{jobId}.
      * 
      * @param gmailLabel Etiqueta de Gmail (ej: "Facturas/Proyecto1")
      * @param after      Fecha desde (formato yyyy/MM/dd, opcional)
      * @param before     Fecha hasta (formato yyyy/MM/dd, opcional)
-     * @return Resultado con estadísticas de sincronización
+     * @return Trabajo de sincronización encolado
      */
     @PostMapping("/sync-gmail")
-    public ResponseEntity<Response<EmailSyncResultDTO>> syncFromGmail(
+    public ResponseEntity<Response<SyncJobDTO>> syncFromGmail(
             @RequestParam String gmailLabel,
             @RequestParam(required = false) String after,
             @RequestParam(required = false) String before) {
-        return ResponseEntity.ok(service.syncFromGmail(gmailLabel, after, before));
+        SyncJobDTO job = syncJobService.submitLabelSync(gmailLabel, after, before);
+        return ResponseEntity.accepted().body(new ResponseHandler<>(202, "Sincronización encolada",
+                "/api/sync-jobs/" + job.getId(), job).getResponse());
+    }
+
+    /**
+     * Carga facturas desde archivos XML o ZIP en una sola petición multipart.
+     * Los archivos se guardan en disco y se procesan en un trabajo en segundo
+     * plano; cada archivo es un adjunto más del pipeline de ingesta.
+     * 
+     * @param files     Archivos .xml o .zip (parámetro repetido "files")
+     * @param projectId Proyecto al que se asocian los ítems de catálogo
+     *                  (opcional)
+     * @return 202 con el trabajo encolado; su avance y, al terminar, el
+     *         resultado por archivo se consultan en /api/sync-jobs/{id}
+     */
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Response<SyncJobDTO>> upload(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(required = false) Long projectId) {
+        SyncJobDTO job = syncJobService.submitUpload(files, projectId);
+        return ResponseEntity.accepted().body(new ResponseHandler<>(202, "Carga encolada",
+                "/api/sync-jobs/" + job.getId(), job).getResponse());
     }
 }
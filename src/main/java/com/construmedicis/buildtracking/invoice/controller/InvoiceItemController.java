@@ -33,6 +33,11 @@ public class InvoiceItemController {
         return ResponseEntity.ok(service.save(invoiceItemDTO));
     }
 
+    @PutMapping("/{id}/item/{itemId}")
+    public ResponseEntity<Response<InvoiceItemDTO>> reassignItem(@PathVariable Long id, @PathVariable Long itemId) {
+        return ResponseEntity.ok(service.reassignItem(id, itemId));
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Response<Void>> delete(@PathVariable Long id) {
         return ResponseEntity.ok(service.deleteById(id));
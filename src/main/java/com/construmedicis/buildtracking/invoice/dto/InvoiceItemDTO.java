@@ -14,7 +14,9 @@ public class InvoiceItemDTO {
     private Long id;
     private Long invoiceId;
     private Long itemId; // Puede ser null si es ítem personalizado
+    private Integer matchConfidence; // 0-100%, confianza del emparejamiento con el catálogo
     private String description;
+    private String supplierItemCode;
     private BigDecimal quantity;
     private BigDecimal unitPrice;
     private BigDecimal lineTotal;
@@ -0,0 +1,17 @@
+package com.construmedicis.buildtracking.invoice.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoicePageDTO {
+
+    private List<InvoiceDTO> invoices;
+    private Integer size; // Tamaño de página aplicado (después de acotarlo)
+    private String nextCursor; // null en la última página
+}
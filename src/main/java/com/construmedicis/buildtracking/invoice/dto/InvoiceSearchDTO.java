@@ -0,0 +1,37 @@
+package com.construmedicis.buildtracking.invoice.dto;
+
+import com.construmedicis.buildtracking.invoice.models.Invoice.InvoiceSource;
+import lombok.*;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filtros de GET /api/invoices/search. Todos son opcionales y se combinan con
+ * AND; cursor es el nextCursor de la página anterior.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceSearchDTO {
+
+    private Long projectId;
+    private String supplierId;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime startDate;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime endDate;
+    private Integer minConfidence; // Inclusivo
+    private Integer maxConfidence; // Inclusivo
+    private InvoiceSource source;
+    private SortOrder sort; // ISSUE_DATE_DESC si no se indica
+    private Integer size;
+    private String cursor;
+
+    public enum SortOrder {
+        ISSUE_DATE_DESC, // Más recientes primero
+        ISSUE_DATE_ASC // Más antiguas primero
+    }
+}
@@ -0,0 +1,19 @@
+package com.construmedicis.buildtracking.invoice.dto;
+
+import java.util.List;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UploadedFileResultDTO {
+
+    private String filename;
+    private String status; // SUCCESS, PARTIAL_SUCCESS, FAILED, SKIPPED, UNSUPPORTED
+    private List<String> invoiceNumbers; // Facturas creadas o actualizadas
+    private List<String> rejectedXmls; // XML que no son facturas DIAN
+    private List<String> errors;
+}
@@ -10,7 +10,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "invoices")
+// Índices de la búsqueda paginada por (issue_date, id), con y sin filtro de proyecto o proveedor
+@Table(name = "invoices", indexes = {
+        @Index(name = "idx_invoice_issue_date_id", columnList = "issue_date, id"),
+        @Index(name = "idx_invoice_project_issue_date_id", columnList = "project_id, issue_date, id"),
+        @Index(name = "idx_invoice_supplier_issue_date_id", columnList = "supplier_id, issue_date, id") })
 @Getter
 @Setter
 @Builder
@@ -20,7 +24,7 @@ public class Invoice {
 
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoice_seq")
-    @SequenceGenerator(name = "invoice_seq", sequenceName = "invoice_sequence", allocationSize = 1)
+    @SequenceGenerator(name = "invoice_seq", sequenceName = "invoice_sequence", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true)
@@ -8,7 +8,8 @@ import lombok.*;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "invoice_items")
+// Las lecturas de facturas agregan sus líneas por invoice_id
+@Table(name = "invoice_items", indexes = @Index(name = "idx_invoice_item_invoice", columnList = "invoice_id"))
 @Getter
 @Setter
 @Builder
@@ -18,7 +19,7 @@ public class InvoiceItem {
 
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoice_item_seq")
-    @SequenceGenerator(name = "invoice_item_seq", sequenceName = "invoice_item_sequence", allocationSize = 1)
+    @SequenceGenerator(name = "invoice_item_seq", sequenceName = "invoice_item_sequence", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -30,9 +31,15 @@ public class InvoiceItem {
     @JoinColumn(name = "item_id")
     private Item item; // Referencia al catálogo de ítems (puede ser null si es ítem personalizado)
 
+    @Column(name = "match_confidence")
+    private Integer matchConfidence; // 0-100%, confianza del emparejamiento con el ítem del catálogo
+
     @Column(nullable = false, length = 500)
     private String description; // Descripción específica de esta línea
 
+    @Column(name = "supplier_item_code", length = 100)
+    private String supplierItemCode; // Código del producto según el proveedor (cbc:ID de la línea)
+
     @Column(nullable = false, precision = 19, scale = 4)
     private BigDecimal quantity;
 
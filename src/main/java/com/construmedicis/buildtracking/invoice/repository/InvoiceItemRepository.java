@@ -2,8 +2,11 @@ package com.construmedicis.buildtracking.invoice.repository;
 
 import com.construmedicis.buildtracking.invoice.models.InvoiceItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -12,4 +15,13 @@ public interface InvoiceItemRepository extends JpaRepository<InvoiceItem, Long>
     List<InvoiceItem> findByInvoiceId(Long invoiceId);
 
     List<InvoiceItem> findByItemId(Long itemId);
+
+    // Filas [invoiceId, invoiceItemId] de varias facturas en una sola consulta
+    @Query("select ii.invoice.id, ii.id from InvoiceItem ii where ii.invoice.id in :invoiceIds order by ii.id")
+    List<Object[]> findIdsByInvoiceIds(@Param("invoiceIds") Collection<Long> invoiceIds);
+
+    // Stock recalculado desde cero: filas [itemId, projectId, cantidad, costo] de las facturas asignadas
+    @Query("select ii.item.id, i.project.id, sum(ii.quantity), sum(ii.lineTotal) from InvoiceItem ii join ii.invoice i "
+            + "where ii.item is not null and i.project is not null group by ii.item.id, i.project.id")
+    List<Object[]> sumAssignedByItemAndProject();
 }
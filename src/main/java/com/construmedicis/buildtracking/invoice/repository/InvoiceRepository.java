@@ -2,22 +2,57 @@ package com.construmedicis.buildtracking.invoice.repository;
 
 import com.construmedicis.buildtracking.invoice.models.Invoice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
+public interface InvoiceRepository extends JpaRepository<Invoice, Long>, JpaSpecificationExecutor<Invoice> {
 
     Optional<Invoice> findByInvoiceNumber(String invoiceNumber);
 
-    List<Invoice> findByProjectId(Long projectId);
-
-    List<Invoice> findBySupplierId(String supplierId);
-
-    List<Invoice> findByIssueDateBetween(LocalDateTime startDate, LocalDateTime endDate);
-
-    List<Invoice> findByAssignmentConfidenceLessThan(Integer confidence);
+    /**
+     * Columnas de InvoiceRow con los ids de las líneas agregados por factura
+     * (array_agg); cada consulta de lectura agrega su WHERE y termina con
+     * ROW_GROUPING, así una lista de N facturas es una sola sentencia.
+     */
+    String ROW_SELECT = "select i.id as \"id\", i.invoice_number as \"invoiceNumber\", "
+            + "i.issue_date as \"issueDate\", i.due_date as \"dueDate\", i.supplier_id as \"supplierId\", "
+            + "i.supplier_name as \"supplierName\", i.project_id as \"projectId\", i.subtotal as \"subtotal\", "
+            + "i.tax as \"tax\", i.withholding_tax as \"withholdingTax\", i.withholdingica as \"withholdingICA\", "
+            + "i.total as \"total\", i.source as \"source\", i.assignment_confidence as \"assignmentConfidence\", "
+            + "coalesce(array_agg(ii.id order by ii.id) filter (where ii.id is not null), '{}') as \"invoiceItemIds\" "
+            + "from invoices i left join invoice_items ii on ii.invoice_id = i.id ";
+    String ROW_GROUPING = " group by i.id order by i.issue_date desc, i.id desc";
+
+    @Query(value = ROW_SELECT + "where i.id = :id" + ROW_GROUPING, nativeQuery = true)
+    Optional<InvoiceRow> findRowById(@Param("id") Long id);
+
+    @Query(value = ROW_SELECT + ROW_GROUPING, nativeQuery = true)
+    List<InvoiceRow> findAllRows();
+
+    @Query(value = ROW_SELECT + "where i.project_id = :projectId" + ROW_GROUPING, nativeQuery = true)
+    List<InvoiceRow> findRowsByProjectId(@Param("projectId") Long projectId);
+
+    @Query(value = ROW_SELECT + "where i.supplier_id = :supplierId" + ROW_GROUPING, nativeQuery = true)
+    List<InvoiceRow> findRowsBySupplierId(@Param("supplierId") String supplierId);
+
+    @Query(value = ROW_SELECT + "where i.issue_date between :startDate and :endDate" + ROW_GROUPING,
+            nativeQuery = true)
+    List<InvoiceRow> findRowsByIssueDateBetween(@Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate);
+
+    @Query(value = ROW_SELECT + "where i.assignment_confidence < :confidence" + ROW_GROUPING, nativeQuery = true)
+    List<InvoiceRow> findRowsByAssignmentConfidenceLessThan(@Param("confidence") Integer confidence);
+
+    // Facturas con sus líneas e ítems en una sola consulta (asignación en lote)
+    @Query("select distinct i from Invoice i left join fetch i.invoiceItems ii left join fetch ii.item "
+            + "where i.id in :ids")
+    List<Invoice> findAllWithItemsByIdIn(@Param("ids") Collection<Long> ids);
 }
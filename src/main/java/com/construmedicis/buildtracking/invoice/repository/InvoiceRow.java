@@ -0,0 +1,44 @@
+package com.construmedicis.buildtracking.invoice.repository;
+
+import com.construmedicis.buildtracking.invoice.models.Invoice.InvoiceSource;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Proyección de una factura para las consultas de lectura: columnas de la
+ * factura más los ids de sus líneas agregados en la misma fila, sin cargar la
+ * entidad ni su colección de líneas.
+ */
+public interface InvoiceRow {
+
+    Long getId();
+
+    String getInvoiceNumber();
+
+    LocalDateTime getIssueDate();
+
+    LocalDateTime getDueDate();
+
+    String getSupplierId();
+
+    String getSupplierName();
+
+    Long getProjectId();
+
+    BigDecimal getSubtotal();
+
+    BigDecimal getTax();
+
+    BigDecimal getWithholdingTax();
+
+    BigDecimal getWithholdingICA();
+
+    BigDecimal getTotal();
+
+    InvoiceSource getSource();
+
+    Integer getAssignmentConfidence();
+
+    Long[] getInvoiceItemIds();
+}
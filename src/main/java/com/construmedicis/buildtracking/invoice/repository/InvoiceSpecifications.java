@@ -0,0 +1,67 @@
+package com.construmedicis.buildtracking.invoice.repository;
+
+import com.construmedicis.buildtracking.invoice.dto.InvoiceSearchDTO;
+import com.construmedicis.buildtracking.invoice.models.Invoice;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consultas de búsqueda de facturas: solo se agregan los filtros indicados,
+ * así el plan de PostgreSQL puede usar el índice compuesto que corresponda
+ * (proyecto o proveedor seguido de issue_date, id).
+ */
+public final class InvoiceSpecifications {
+
+    private InvoiceSpecifications() {
+    }
+
+    /**
+     * Facturas que cumplen los filtros y, si hay cursor, vienen después de
+     * (afterIssueDate, afterId) en el orden pedido.
+     */
+    public static Specification<Invoice> search(InvoiceSearchDTO criteria, boolean ascending,
+            LocalDateTime afterIssueDate, Long afterId) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            Path<LocalDateTime> issueDate = root.get("issueDate");
+            Path<Long> id = root.get("id");
+
+            if (criteria.getProjectId() != null) {
+                predicates.add(cb.equal(root.get("project").get("id"), criteria.getProjectId()));
+            }
+            if (criteria.getSupplierId() != null && !criteria.getSupplierId().isBlank()) {
+                predicates.add(cb.equal(root.get("supplierId"), criteria.getSupplierId().trim()));
+            }
+            if (criteria.getStartDate() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(issueDate, criteria.getStartDate()));
+            }
+            if (criteria.getEndDate() != null) {
+                predicates.add(cb.lessThanOrEqualTo(issueDate, criteria.getEndDate()));
+            }
+            if (criteria.getMinConfidence() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("assignmentConfidence"), criteria.getMinConfidence()));
+            }
+            if (criteria.getMaxConfidence() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("assignmentConfidence"), criteria.getMaxConfidence()));
+            }
+            if (criteria.getSource() != null) {
+                predicates.add(cb.equal(root.get("source"), criteria.getSource()));
+            }
+
+            // Seek: (issueDate, id) estrictamente después del último de la página anterior
+            if (afterIssueDate != null && afterId != null) {
+                predicates.add(ascending
+                        ? cb.or(cb.greaterThan(issueDate, afterIssueDate),
+                                cb.and(cb.equal(issueDate, afterIssueDate), cb.greaterThan(id, afterId)))
+                        : cb.or(cb.lessThan(issueDate, afterIssueDate),
+                                cb.and(cb.equal(issueDate, afterIssueDate), cb.lessThan(id, afterId))));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+}
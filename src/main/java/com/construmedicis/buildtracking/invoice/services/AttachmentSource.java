@@ -0,0 +1,21 @@
+package com.construmedicis.buildtracking.invoice.services;
+
+/**
+ * Origen de adjuntos de facturas (Gmail, carga manual, ...). El motor de
+ * ingesta llama {@link #publish(AttachmentSink)} una sola vez y procesa los
+ * adjuntos a medida que llegan.
+ */
+@FunctionalInterface
+public interface AttachmentSource {
+
+    /**
+     * Publica todos los adjuntos de la fuente en el sink. Puede bloquear cuando
+     * la etapa de descarga está llena (backpressure).
+     */
+    void publish(AttachmentSink sink) throws Exception;
+
+    @FunctionalInterface
+    interface AttachmentSink {
+        void accept(SourceAttachment attachment) throws InterruptedException;
+    }
+}
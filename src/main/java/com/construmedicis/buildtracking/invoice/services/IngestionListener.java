@@ -0,0 +1,39 @@
+package com.construmedicis.buildtracking.invoice.services;
+
+/**
+ * Recibe el resultado de cada adjunto a medida que avanza por el motor de
+ * ingesta. Los métodos se invocan desde los workers del pipeline, de forma
+ * concurrente.
+ */
+public interface IngestionListener {
+
+    IngestionListener NONE = new IngestionListener() {
+    };
+
+    /**
+     * El adjunto ya se había procesado (mismo mensaje/parte o mismo contenido).
+     */
+    default void attachmentSkipped(SourceAttachment attachment) {
+    }
+
+    /**
+     * Se guardó una factura del adjunto.
+     *
+     * @param updated true si era una corrección de una factura existente
+     */
+    default void invoiceSaved(SourceAttachment attachment, String invoiceNumber, boolean updated) {
+    }
+
+    /**
+     * Un XML del adjunto se descartó por no ser una factura DIAN. No cuenta como
+     * error de la sincronización.
+     */
+    default void xmlRejected(SourceAttachment attachment, String xmlFilename, String reason) {
+    }
+
+    /**
+     * Falló el adjunto o una de sus facturas.
+     */
+    default void attachmentFailed(SourceAttachment attachment, String error) {
+    }
+}
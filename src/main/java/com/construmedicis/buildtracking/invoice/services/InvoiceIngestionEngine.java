@@ -0,0 +1,40 @@
+package com.construmedicis.buildtracking.invoice.services;
+
+import com.construmedicis.buildtracking.email.dto.EmailSyncResultDTO;
+import com.construmedicis.buildtracking.invoice.models.Invoice.InvoiceSource;
+
+/**
+ * Pipeline único de ingesta de facturas: descarga → extracción de XML → parseo
+ * → persistencia → asignación de proyecto. Todas las entradas (sincronización
+ * por etiqueta, por configuración de proyecto, cargas) lo usan para obtener el
+ * mismo comportamiento.
+ */
+public interface InvoiceIngestionEngine {
+
+    /**
+     * Procesa todos los adjuntos de la fuente y bloquea hasta terminar. Cada
+     * factura se guarda en su propia transacción; los adjuntos ya procesados
+     * se omiten y se cuentan en attachmentsSkipped.
+     *
+     * @param source        Fuente de adjuntos
+     * @param invoiceSource Origen con el que se registran las facturas nuevas
+     * @param projectId     Proyecto al que se asocian los ítems de catálogo
+     *                      (opcional)
+     * @param result        Estadísticas a acumular; su lista de errores debe
+     *                      ser thread-safe
+     * @param listener      Recibe el resultado de cada adjunto
+     * @throws InterruptedException Si se interrumpe el hilo que espera el
+     *                              pipeline
+     */
+    void ingest(AttachmentSource source, InvoiceSource invoiceSource, Long projectId, EmailSyncResultDTO result,
+            IngestionListener listener) throws InterruptedException;
+
+    /**
+     * Igual que {@link #ingest(AttachmentSource, InvoiceSource, Long,
+     * EmailSyncResultDTO, IngestionListener)} sin seguimiento por adjunto.
+     */
+    default void ingest(AttachmentSource source, InvoiceSource invoiceSource, Long projectId,
+            EmailSyncResultDTO result) throws InterruptedException {
+        ingest(source, invoiceSource, projectId, result, IngestionListener.NONE);
+    }
+}
@@ -9,6 +9,12 @@ public interface InvoiceItemService {
 
     Response<InvoiceItemDTO> save(InvoiceItemDTO invoiceItemDTO);
 
+    /**
+     * Corrige el ítem del catálogo de una línea y aprende el código del
+     * proveedor para las siguientes facturas.
+     */
+    Response<InvoiceItemDTO> reassignItem(Long id, Long itemId);
+
     Response<InvoiceItemDTO> findById(Long id);
 
     Response<List<InvoiceItemDTO>> findAll();
@@ -2,6 +2,8 @@ package com.construmedicis.buildtracking.invoice.services;
 
 import com.construmedicis.buildtracking.email.dto.EmailSyncResultDTO;
 import com.construmedicis.buildtracking.invoice.dto.InvoiceDTO;
+import com.construmedicis.buildtracking.invoice.dto.InvoicePageDTO;
+import com.construmedicis.buildtracking.invoice.dto.InvoiceSearchDTO;
 import com.construmedicis.buildtracking.util.response.Response;
 
 import java.time.LocalDateTime;
@@ -25,10 +27,26 @@ public interface InvoiceService {
 
     Response<List<InvoiceDTO>> findPendingReview(Integer maxConfidence);
 
+    /**
+     * Búsqueda paginada por cursor sobre (issueDate, id): cada página se lee
+     * con el índice desde donde terminó la anterior, sin OFFSET ni conteo.
+     */
+    Response<InvoicePageDTO> search(InvoiceSearchDTO criteria);
+
     Response<InvoiceDTO> assignProject(Long invoiceId, Long projectId);
 
     Response<InvoiceDTO> unassignProject(Long invoiceId);
 
+    /**
+     * Asigna varias facturas al proyecto en una transacción: los ítems se
+     * asocian al proyecto y el stock se ajusta con una sentencia cada uno, sin
+     * importar cuántas facturas sean.
+     */
+    Response<List<InvoiceDTO>> assignProject(List<Long> invoiceIds, Long projectId);
+
+    /** Desasigna varias facturas; las que no tienen proyecto se dejan igual. */
+    Response<List<InvoiceDTO>> unassignProject(List<Long> invoiceIds);
+
     /**
      * Sincroniza facturas desde Gmail con la etiqueta especificada y rango de
      * fechas opcional.
@@ -38,7 +56,24 @@ public interface InvoiceService {
      * @param gmailLabel Etiqueta de Gmail para filtrar correos
      * @param after      Fecha desde (formato yyyy/MM/dd, opcional)
      * @param before     Fecha hasta (formato yyyy/MM/dd, opcional)
-     * @return Resultado con estadísticas de sincronización
+     * @param result     Estadísticas a llenar durante la sincronización (se
+     *                   leen como progreso mientras avanza)
+     */
+    void syncFromGmail(String gmailLabel, String after, String before, EmailSyncResultDTO result);
+
+    /**
+     * Carga facturas desde archivos XML o ZIP (ej: el ZIP mensual del
+     * contador). Los archivos se procesan en paralelo con el mismo pipeline que
+     * la sincronización de Gmail y se registran con origen XML_UPLOAD. Corre
+     * dentro de un trabajo de {@code SyncJobService}, que deja los archivos en
+     * disco antes de llamarlo. El resultado por archivo queda en
+     * {@code result.files}.
+     * 
+     * @param files     Archivos .xml o .zip ya guardados en disco
+     * @param projectId Proyecto al que se asocian los ítems de catálogo
+     *                  (opcional)
+     * @param result    Estadísticas a llenar durante la carga (se leen como
+     *                  progreso mientras avanza)
      */
-    Response<EmailSyncResultDTO> syncFromGmail(String gmailLabel, String after, String before);
+    void uploadInvoices(List<SourceAttachment> files, Long projectId, EmailSyncResultDTO result);
 }
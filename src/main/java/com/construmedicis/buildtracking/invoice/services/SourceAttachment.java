@@ -0,0 +1,26 @@
+package com.construmedicis.buildtracking.invoice.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Adjunto publicado por una {@link AttachmentSource}, pendiente de descarga.
+ * <p>
+ * messageId y partId identifican el adjunto en su origen (ej: mensaje y parte
+ * de Gmail) y permiten omitirlo sin descargarlo si ya se procesó. Son
+ * opcionales: sin ellos (ej: archivos cargados) el adjunto solo se deduplica
+ * por contenido. El contenido se abre de forma perezosa desde la etapa de
+ * descarga del motor.
+ *
+ * @param messageId Identificador del mensaje de origen (opcional)
+ * @param partId    Identificador del adjunto dentro del mensaje (opcional)
+ * @param filename  Nombre del archivo (define si es XML o ZIP)
+ * @param content   Abre el contenido decodificado del adjunto
+ */
+public record SourceAttachment(String messageId, String partId, String filename, ContentLoader content) {
+
+    @FunctionalInterface
+    public interface ContentLoader {
+        InputStream open() throws IOException;
+    }
+}
@@ -0,0 +1,570 @@
+package com.construmedicis.buildtracking.invoice.services.impl;
+
+import com.construmedicis.buildtracking.assignment.dto.ProjectAssignmentResultDTO;
+import com.construmedicis.buildtracking.assignment.services.ProjectAssignmentRuleService;
+import com.construmedicis.buildtracking.email.dto.EmailSyncResultDTO;
+import com.construmedicis.buildtracking.email.dto.InvoiceParseResultDTO;
+import com.construmedicis.buildtracking.email.dto.ParsedInvoiceDTO;
+import com.construmedicis.buildtracking.email.dto.ParsedInvoiceItemDTO;
+import com.construmedicis.buildtracking.email.services.AttachmentExtractor;
+import com.construmedicis.buildtracking.email.services.IngestionLedgerService;
+import com.construmedicis.buildtracking.email.services.InvoiceAttachment;
+import com.construmedicis.buildtracking.email.services.InvoiceXmlParser;
+import com.construmedicis.buildtracking.invoice.dto.InvoiceDTO;
+import com.construmedicis.buildtracking.invoice.models.Invoice;
+import com.construmedicis.buildtracking.invoice.models.Invoice.InvoiceSource;
+import com.construmedicis.buildtracking.invoice.models.InvoiceItem;
+import com.construmedicis.buildtracking.invoice.repository.InvoiceRepository;
+import com.construmedicis.buildtracking.invoice.services.AttachmentSource;
+import com.construmedicis.buildtracking.invoice.services.AttachmentSource.AttachmentSink;
+import com.construmedicis.buildtracking.invoice.services.IngestionListener;
+import com.construmedicis.buildtracking.invoice.services.InvoiceIngestionEngine;
+import com.construmedicis.buildtracking.invoice.services.SourceAttachment;
+import com.construmedicis.buildtracking.item.models.Item;
+import com.construmedicis.buildtracking.item.services.ItemMatchingService;
+import com.construmedicis.buildtracking.item.services.ItemMatchingService.ItemMatch;
+import com.construmedicis.buildtracking.item.services.StockLedgerService;
+import com.construmedicis.buildtracking.project.models.Project;
+import com.construmedicis.buildtracking.project.repository.ProjectRepository;
+import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
+import com.construmedicis.buildtracking.util.pipeline.PipelineStage;
+import com.construmedicis.buildtracking.util.response.Response;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.security.DigestInputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class InvoiceIngestionEngineImpl implements InvoiceIngestionEngine {
+
+    /** Confianza mínima de una regla para asignar el proyecto sin revisión. */
+    private static final int AUTO_ASSIGN_CONFIDENCE = 70;
+
+    /** messageId con que se registran los adjuntos sin mensaje de origen. */
+    private static final String CONTENT_ONLY_MESSAGE_ID = "content";
+
+    private final InvoiceRepository invoiceRepository;
+    private final ProjectRepository projectRepository;
+    private final InvoiceXmlParser xmlParser;
+    private final AttachmentExtractor attachmentExtractor;
+    private final IngestionLedgerService ingestionLedgerService;
+    private final ItemMatchingService itemMatchingService;
+    private final ProjectAssignmentRuleService assignmentRuleService;
+    private final StockLedgerService stockLedgerService;
+    private final TransactionTemplate invoiceTransaction;
+    private final int fetchWorkers;
+    private final int parseWorkers;
+    private final int persistWorkers;
+    private final int queueCapacity;
+
+    public InvoiceIngestionEngineImpl(InvoiceRepository invoiceRepository,
+            ProjectRepository projectRepository,
+            InvoiceXmlParser xmlParser,
+            AttachmentExtractor attachmentExtractor,
+            IngestionLedgerService ingestionLedgerService,
+            ItemMatchingService itemMatchingService,
+            ProjectAssignmentRuleService assignmentRuleService,
+            StockLedgerService stockLedgerService,
+            PlatformTransactionManager transactionManager,
+            @Value("${buildtracking.sync.fetch-workers:8}") int fetchWorkers,
+            @Value("${buildtracking.sync.parse-workers:4}") int parseWorkers,
+            @Value("${buildtracking.sync.persist-workers:1}") int persistWorkers,
+            @Value("${buildtracking.sync.queue-capacity:32}") int queueCapacity) {
+        this.invoiceRepository = invoiceRepository;
+        this.projectRepository = projectRepository;
+        this.xmlParser = xmlParser;
+        this.attachmentExtractor = attachmentExtractor;
+        this.ingestionLedgerService = ingestionLedgerService;
+        this.itemMatchingService = itemMatchingService;
+        this.assignmentRuleService = assignmentRuleService;
+        this.stockLedgerService = stockLedgerService;
+        this.fetchWorkers = fetchWorkers;
+        this.parseWorkers = parseWorkers;
+        this.persistWorkers = persistWorkers;
+        this.queueCapacity = queueCapacity;
+
+        // Cada factura se guarda en su propia transacción, aunque el llamador
+        // tenga una abierta
+        this.invoiceTransaction = new TransactionTemplate(transactionManager);
+        this.invoiceTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Arma y ejecuta las etapas del pipeline. Cada etapa tiene su propio pool de
+     * workers y una cola acotada; cuando la fuente termina de publicar se cierra
+     * cada etapa y se espera a que se vacíe antes de cerrar la siguiente.
+     */
+    @Override
+    public void ingest(AttachmentSource source, InvoiceSource invoiceSource, Long projectId,
+            EmailSyncResultDTO result, IngestionListener listener) throws InterruptedException {
+        PipelineStage<InvoicePayload> persistStage = new PipelineStage<>("ingest-persist", persistWorkers,
+                queueCapacity,
+                payload -> persistInvoice(payload, invoiceSource, projectId, result, listener),
+                (payload, e) -> recordError(result, listener, payload.ticket().attachment(),
+                        "Error en factura " + payload.invoice().getInvoiceNumber(), e));
+
+        PipelineStage<XmlPayload> parseStage = new PipelineStage<>("ingest-parse", parseWorkers,
+                queueCapacity,
+                payload -> parseXmlAttachment(payload, persistStage, listener),
+                (payload, e) -> recordError(result, listener, payload.ticket().attachment(),
+                        "Error en " + payload.xml().getFilename(), e),
+                payload -> discardXml(payload.xml()));
+
+        PipelineStage<SourceAttachment> downloadStage = new PipelineStage<>("ingest-download", fetchWorkers,
+                queueCapacity,
+                attachment -> downloadAttachment(attachment, parseStage, result, listener),
+                (attachment, e) -> recordError(result, listener, attachment,
+                        "Error en adjunto " + attachment.filename(), e));
+
+        try {
+            try {
+                source.publish(attachment -> queueAttachment(attachment, downloadStage, result, listener));
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                // Lo ya publicado se sigue procesando
+                log.error("Error obteniendo adjuntos: {}", e.getMessage(), e);
+                result.getErrors().add("Error obteniendo adjuntos: " + e.getMessage());
+            }
+            downloadStage.complete();
+            parseStage.complete();
+            persistStage.complete();
+        } catch (InterruptedException e) {
+            downloadStage.abort();
+            parseStage.abort();
+            persistStage.abort();
+            throw e;
+        }
+    }
+
+    private void recordError(EmailSyncResultDTO result, IngestionListener listener, SourceAttachment attachment,
+            String context, Exception e) {
+        log.error("{}: {}", context, e.getMessage(), e);
+        result.getErrors().add(context + ": " + e.getMessage());
+        listener.attachmentFailed(attachment, context + ": " + e.getMessage());
+    }
+
+    /**
+     * Libera un XML que quedó en cola al abortar (borra su archivo de spill).
+     */
+    private void discardXml(InvoiceAttachment xml) {
+        try {
+            xml.close();
+        } catch (IOException e) {
+            log.warn("No se pudo liberar el XML {}: {}", xml.getFilename(), e.getMessage());
+        }
+    }
+
+    private void countSkipped(EmailSyncResultDTO result, IngestionListener listener, SourceAttachment attachment) {
+        synchronized (result) {
+            result.setAttachmentsSkipped(result.getAttachmentsSkipped() + 1);
+        }
+        listener.attachmentSkipped(attachment);
+    }
+
+    /**
+     * Registra el adjunto en el ledger. Los adjuntos sin mensaje/parte de origen
+     * (ej: cargas) se registran con su hash como clave.
+     */
+    private void recordIngested(SourceAttachment attachment, String sha256) {
+        if (attachment.messageId() != null && attachment.partId() != null) {
+            ingestionLedgerService.recordIngested(attachment.messageId(), attachment.partId(), attachment.filename(),
+                    sha256);
+        } else {
+            ingestionLedgerService.recordIngested(CONTENT_ONLY_MESSAGE_ID, sha256, attachment.filename(), sha256);
+        }
+    }
+
+    /**
+     * Entrada del pipeline ({@link AttachmentSink}): descarta los adjuntos que no
+     * son XML ni ZIP y los ya procesados, y encola el resto para descarga.
+     */
+    private void queueAttachment(SourceAttachment attachment, PipelineStage<SourceAttachment> downloadStage,
+            EmailSyncResultDTO result, IngestionListener listener) throws InterruptedException {
+        String filename = attachment.filename();
+        if (!attachmentExtractor.isSupported(filename)) {
+            if (filename != null) {
+                log.debug("Adjunto omitido (no XML ni ZIP): {}", filename);
+            }
+        } else if (attachment.messageId() != null && attachment.partId() != null
+                && ingestionLedgerService.isAttachmentIngested(attachment.messageId(), attachment.partId())) {
+            // Ya procesado en una sincronización anterior: no se descarga
+            log.debug("Adjunto {} del mensaje {} ya procesado, omitiendo", filename, attachment.messageId());
+            countSkipped(result, listener, attachment);
+        } else {
+            downloadStage.submit(attachment);
+        }
+    }
+
+    /**
+     * Etapa 1: descarga el adjunto y encola los XML a parsear (directos o leídos
+     * de un ZIP) a medida que se extraen, con backpressure hacia el parseo.
+     */
+    private void downloadAttachment(SourceAttachment attachment, PipelineStage<XmlPayload> parseStage,
+            EmailSyncResultDTO result, IngestionListener listener) throws Exception {
+        String filename = attachment.filename();
+        log.info("Descargando adjunto: {} del mensaje {}", filename, attachment.messageId());
+
+        // Se copia a memoria (o a disco si es grande) calculando el SHA-256 en la
+        // misma lectura
+        InvoiceAttachment content;
+        String sha256;
+        try (DigestInputStream in = ingestionLedgerService.digesting(attachment.content().open())) {
+            content = attachmentExtractor.buffer(filename, in);
+            sha256 = ingestionLedgerService.sha256(in);
+        }
+
+        log.info("Adjunto descargado: {} ({} bytes)", filename, content.size());
+
+        // Mismo contenido ya procesado (ej: factura reenviada en otro correo):
+        // se registra este mensaje para omitirlo antes de descargar la próxima vez
+        if (ingestionLedgerService.isContentIngested(sha256)) {
+            content.close();
+            log.info("Adjunto {} con contenido ya procesado, omitiendo", filename);
+            recordIngested(attachment, sha256);
+            countSkipped(result, listener, attachment);
+            return;
+        }
+
+        IngestionTicket ticket = new IngestionTicket(attachment, sha256);
+        attachmentExtractor.extractXml(content, xml -> {
+            ticket.xmlQueued();
+            parseStage.submit(new XmlPayload(xml, ticket));
+        });
+        // Libera la reserva de la extracción; si la extracción falla el adjunto
+        // nunca se registra y se reintenta en la siguiente sincronización
+        ticket.xmlCompleted();
+    }
+
+    /**
+     * Etapa 2: valida y parsea el XML en una sola lectura y encola la factura
+     * para persistencia.
+     */
+    private void parseXmlAttachment(XmlPayload payload, PipelineStage<InvoicePayload> persistStage,
+            IngestionListener listener) throws Exception {
+        InvoiceAttachment xml = payload.xml();
+        InvoiceParseResultDTO parseResult;
+        try (xml; InputStream in = xml.openStream()) {
+            log.info("Parseando XML: {} ({} bytes)", xml.getFilename(), xml.size());
+            parseResult = xmlParser.parse(in);
+        }
+
+        switch (parseResult.getStatus()) {
+            case VALID -> {
+                log.info("Factura parseada: {}", parseResult.getInvoice().getInvoiceNumber());
+                persistStage.submit(new InvoicePayload(parseResult.getInvoice(), payload.ticket()));
+            }
+            case NOT_DIAN_INVOICE -> {
+                log.warn("XML no válido (no es formato DIAN): {} - {}", xml.getFilename(), parseResult.getReason());
+                listener.xmlRejected(payload.ticket().attachment(), xml.getFilename(), parseResult.getReason());
+                payload.ticket().xmlCompleted();
+            }
+            case MALFORMED -> throw new IllegalArgumentException(parseResult.getReason());
+        }
+    }
+
+    /**
+     * Etapa 3: guarda la factura en su propia transacción y, tras el commit,
+     * avisa al listener y da por terminado el XML.
+     */
+    private void persistInvoice(InvoicePayload payload, InvoiceSource invoiceSource, Long projectId,
+            EmailSyncResultDTO result, IngestionListener listener) {
+        PersistOutcome outcome = invoiceTransaction.execute(
+                status -> persistParsedInvoice(payload.invoice(), invoiceSource, projectId, result));
+        if (outcome != PersistOutcome.UNCHANGED) {
+            listener.invoiceSaved(payload.ticket().attachment(), payload.invoice().getInvoiceNumber(),
+                    outcome == PersistOutcome.UPDATED);
+        }
+        payload.ticket().xmlCompleted();
+    }
+
+    /**
+     * Crea o actualiza la factura con sus líneas y evalúa la asignación de
+     * proyecto.
+     */
+    private PersistOutcome persistParsedInvoice(ParsedInvoiceDTO parsedInvoice, InvoiceSource invoiceSource,
+            Long projectId, EmailSyncResultDTO result) {
+        // Verificar si ya existe (actualizar si es corrección)
+        Optional<Invoice> existingInvoice = invoiceRepository
+                .findByInvoiceNumber(parsedInvoice.getInvoiceNumber());
+
+        Invoice invoice;
+        boolean corrected = existingInvoice.isPresent();
+
+        if (corrected) {
+            // Factura existe - verificar si hay cambios
+            invoice = existingInvoice.get();
+
+            if (!hasInvoiceChanged(invoice, parsedInvoice)) {
+                // Sin cambios - omitir actualización
+                log.info("Factura {} ya existe sin cambios, omitiendo", parsedInvoice.getInvoiceNumber());
+                return PersistOutcome.UNCHANGED;
+            }
+
+            // Hay cambios - actualizar con nueva información (corrección)
+            log.info("Factura {} ya existe (ID: {}), actualizando con corrección",
+                    parsedInvoice.getInvoiceNumber(), invoice.getId());
+
+            updateInvoiceFromParsed(invoice, parsedInvoice);
+
+            // Reemplazar items antiguos (orphanRemoval los elimina al hacer flush);
+            // si la factura ya estaba asignada, salen del stock de su proyecto
+            stockLedgerService.recordLinesRemoved(invoice.getInvoiceItems(), invoice.getProject());
+            invoice.getInvoiceItems().clear();
+        } else {
+            // Crear nueva factura
+            invoice = createInvoiceFromParsed(parsedInvoice, invoiceSource);
+        }
+
+        // Proyecto de la fuente (ej: configuración de correo de un proyecto),
+        // cargado en esta transacción para compararlo con los del catálogo
+        Project sourceProject = projectId != null ? projectRepository.findById(projectId).orElse(null) : null;
+
+        // Armar el agregado completo y guardarlo en cascada: las líneas se insertan
+        // en batches JDBC y los IDs salen del optimizador pooled de la secuencia
+        for (ParsedInvoiceItemDTO parsedItem : parsedInvoice.getItems()) {
+            ItemMatch match = itemMatchingService.findOrCreateItem(parsedItem, parsedInvoice.getSupplierId(),
+                    sourceProject);
+            invoice.addInvoiceItem(createInvoiceItemFromParsed(parsedItem, match));
+        }
+
+        Invoice savedInvoice = invoiceRepository.save(invoice);
+        if (corrected) {
+            stockLedgerService.recordLinesAdded(savedInvoice.getInvoiceItems(), savedInvoice.getProject());
+        }
+
+        synchronized (result) {
+            if (corrected) {
+                result.setInvoicesUpdated(result.getInvoicesUpdated() + 1);
+            } else {
+                result.setInvoicesCreated(result.getInvoicesCreated() + 1);
+            }
+        }
+        log.info("Factura {} {} exitosamente con {} items", parsedInvoice.getInvoiceNumber(),
+                corrected ? "actualizada" : "creada", savedInvoice.getInvoiceItems().size());
+
+        // Evaluar reglas de asignación automática con las líneas que ya están en memoria
+        List<String> lineDescriptions = savedInvoice.getInvoiceItems().stream()
+                .map(InvoiceItem::getDescription)
+                .collect(Collectors.toList());
+        Response<ProjectAssignmentResultDTO> assignmentResponse = assignmentRuleService
+                .evaluateRulesForInvoice(toDTO(savedInvoice), lineDescriptions);
+
+        if (assignmentResponse.getStatus() == 200 && assignmentResponse.getData() != null) {
+            ProjectAssignmentResultDTO assignmentResult = assignmentResponse.getData();
+
+            if (assignmentResult.getConfidence() >= AUTO_ASSIGN_CONFIDENCE) {
+                assignProject(savedInvoice, assignmentResult.getProjectId(), assignmentResult.getConfidence());
+                synchronized (result) {
+                    result.setInvoicesAutoAssigned(result.getInvoicesAutoAssigned() + 1);
+                }
+
+                log.info("Factura {} auto-asignada a proyecto {} (confianza {}%)",
+                        parsedInvoice.getInvoiceNumber(), assignmentResult.getProjectId(),
+                        assignmentResult.getConfidence());
+            } else {
+                // Guardar solo la confianza sin asignar proyecto
+                savedInvoice.setAssignmentConfidence(assignmentResult.getConfidence());
+                invoiceRepository.save(savedInvoice);
+                synchronized (result) {
+                    result.setInvoicesPendingReview(result.getInvoicesPendingReview() + 1);
+                }
+                log.info("Factura {} pendiente revisión manual (confianza {}%)",
+                        parsedInvoice.getInvoiceNumber(), assignmentResult.getConfidence());
+            }
+        } else {
+            synchronized (result) {
+                result.setInvoicesPendingReview(result.getInvoicesPendingReview() + 1);
+            }
+        }
+        return corrected ? PersistOutcome.UPDATED : PersistOutcome.CREATED;
+    }
+
+    /**
+     * Asigna la factura al proyecto con el mismo efecto que una asignación
+     * manual: asocia sus ítems al proyecto y registra sus movimientos de stock.
+     * Trabaja sobre el agregado ya cargado, sin volver a leer la factura. A
+     * diferencia de la manual, guarda la confianza de la regla que coincidió.
+     */
+    private void assignProject(Invoice invoice, Long projectId, int confidence) {
+        Project project = projectRepository.findById(projectId)
+                .orElseThrow(() -> new BusinessRuleException("project.not.found"));
+
+        Project previous = invoice.getProject();
+        invoice.setProject(project);
+        invoice.setAssignmentConfidence(confidence);
+
+        for (InvoiceItem invoiceItem : invoice.getInvoiceItems()) {
+            Item catalogItem = invoiceItem.getItem();
+            if (catalogItem != null && !catalogItem.getProjects().contains(project)) {
+                catalogItem.getProjects().add(project);
+            }
+        }
+
+        invoiceRepository.save(invoice);
+        stockLedgerService.recordProjectChange(invoice.getInvoiceItems(), previous, project);
+    }
+
+    /**
+     * Verifica si los datos parseados son diferentes a la factura existente.
+     * Retorna true si hay cambios que ameriten actualizar.
+     */
+    private boolean hasInvoiceChanged(Invoice existing, ParsedInvoiceDTO parsed) {
+        // Normalizar valores null a BigDecimal.ZERO para comparación
+        BigDecimal existingWithholdingTax = existing.getWithholdingTax() != null
+                ? existing.getWithholdingTax()
+                : BigDecimal.ZERO;
+        BigDecimal parsedWithholdingTax = parsed.getWithholdingTax() != null
+                ? parsed.getWithholdingTax()
+                : BigDecimal.ZERO;
+        BigDecimal existingWithholdingICA = existing.getWithholdingICA() != null
+                ? existing.getWithholdingICA()
+                : BigDecimal.ZERO;
+        BigDecimal parsedWithholdingICA = parsed.getWithholdingICA() != null
+                ? parsed.getWithholdingICA()
+                : BigDecimal.ZERO;
+
+        // Comparar campos principales
+        return !existing.getIssueDate().equals(parsed.getIssueDate())
+                || !Objects.equals(existing.getDueDate(), parsed.getDueDate()) // dueDate puede ser null
+                || !existing.getSupplierId().equals(parsed.getSupplierId())
+                || !existing.getSupplierName().equals(parsed.getSupplierName())
+                || existing.getSubtotal().compareTo(parsed.getSubtotal()) != 0
+                || existing.getTax().compareTo(parsed.getTax()) != 0
+                || existingWithholdingTax.compareTo(parsedWithholdingTax) != 0
+                || existingWithholdingICA.compareTo(parsedWithholdingICA) != 0
+                || existing.getTotal().compareTo(parsed.getTotal()) != 0;
+    }
+
+    /**
+     * Actualiza una factura existente con datos parseados (para correcciones).
+     */
+    private void updateInvoiceFromParsed(Invoice invoice, ParsedInvoiceDTO parsed) {
+        invoice.setIssueDate(parsed.getIssueDate());
+        invoice.setDueDate(parsed.getDueDate());
+        invoice.setSupplierId(parsed.getSupplierId());
+        invoice.setSupplierName(parsed.getSupplierName());
+        invoice.setSubtotal(parsed.getSubtotal());
+        invoice.setTax(parsed.getTax());
+        invoice.setWithholdingTax(parsed.getWithholdingTax() != null ? parsed.getWithholdingTax() : BigDecimal.ZERO);
+        invoice.setWithholdingICA(parsed.getWithholdingICA() != null ? parsed.getWithholdingICA() : BigDecimal.ZERO);
+        invoice.setTotal(parsed.getTotal());
+        // Mantener project y assignmentConfidence de la factura original
+        // Resetear confianza a 0 para re-evaluar reglas con nueva información
+        invoice.setAssignmentConfidence(0);
+        log.info("Factura {} actualizada: subtotal={}, tax={}, total={}",
+                invoice.getInvoiceNumber(), invoice.getSubtotal(), invoice.getTax(), invoice.getTotal());
+    }
+
+    private Invoice createInvoiceFromParsed(ParsedInvoiceDTO parsed, InvoiceSource invoiceSource) {
+        return Invoice.builder()
+                .invoiceNumber(parsed.getInvoiceNumber())
+                .issueDate(parsed.getIssueDate())
+                .dueDate(parsed.getDueDate())
+                .supplierId(parsed.getSupplierId())
+                .supplierName(parsed.getSupplierName())
+                .subtotal(parsed.getSubtotal())
+                .tax(parsed.getTax())
+                .withholdingTax(parsed.getWithholdingTax() != null ? parsed.getWithholdingTax() : BigDecimal.ZERO)
+                .withholdingICA(parsed.getWithholdingICA() != null ? parsed.getWithholdingICA() : BigDecimal.ZERO)
+                .total(parsed.getTotal())
+                .source(invoiceSource)
+                .assignmentConfidence(0) // Se actualizará después de evaluar reglas
+                .build();
+    }
+
+    private InvoiceItem createInvoiceItemFromParsed(ParsedInvoiceItemDTO parsed, ItemMatch match) {
+        return InvoiceItem.builder()
+                .item(match.item())
+                .matchConfidence(match.confidence())
+                .supplierItemCode(parsed.getItemCode())
+                .description(parsed.getDescription())
+                .quantity(parsed.getQuantity())
+                .unitPrice(parsed.getUnitPrice())
+                .lineTotal(parsed.getLineTotal())
+                .taxAmount(parsed.getTaxAmount())
+                .build();
+    }
+
+    private InvoiceDTO toDTO(Invoice invoice) {
+        return InvoiceDTO.builder()
+                .id(invoice.getId())
+                .invoiceNumber(invoice.getInvoiceNumber())
+                .issueDate(invoice.getIssueDate())
+                .dueDate(invoice.getDueDate())
+                .supplierId(invoice.getSupplierId())
+                .supplierName(invoice.getSupplierName())
+                .projectId(invoice.getProject() != null ? invoice.getProject().getId() : null)
+                .subtotal(invoice.getSubtotal())
+                .tax(invoice.getTax())
+                .withholdingTax(invoice.getWithholdingTax())
+                .withholdingICA(invoice.getWithholdingICA())
+                .total(invoice.getTotal())
+                .source(invoice.getSource())
+                .assignmentConfidence(invoice.getAssignmentConfidence())
+                .invoiceItemIds(invoice.getInvoiceItems().stream()
+                        .map(InvoiceItem::getId)
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    /**
+     * XML pendiente de parseo y el adjunto del que proviene.
+     */
+    private record XmlPayload(InvoiceAttachment xml, IngestionTicket ticket) {
+    }
+
+    /**
+     * Factura parseada pendiente de persistencia.
+     */
+    private record InvoicePayload(ParsedInvoiceDTO invoice, IngestionTicket ticket) {
+    }
+
+    private enum PersistOutcome {
+        CREATED, UPDATED, UNCHANGED
+    }
+
+    /**
+     * Seguimiento de un adjunto a través de las etapas. Cuenta los XML que aún no
+     * terminan, más una reserva mientras dura la extracción; los que fallan
+     * nunca se completan, así que el adjunto solo queda registrado como
+     * procesado si todas sus facturas se guardaron o descartaron.
+     */
+    private final class IngestionTicket {
+        private final SourceAttachment attachment;
+        private final String sha256;
+        private final AtomicInteger pendingXmls = new AtomicInteger(1);
+
+        private IngestionTicket(SourceAttachment attachment, String sha256) {
+            this.attachment = attachment;
+            this.sha256 = sha256;
+        }
+
+        private SourceAttachment attachment() {
+            return attachment;
+        }
+
+        private void xmlQueued() {
+            pendingXmls.incrementAndGet();
+        }
+
+        private void xmlCompleted() {
+            if (pendingXmls.decrementAndGet() == 0) {
+                recordIngested(attachment, sha256);
+            }
+        }
+    }
+}
@@ -5,7 +5,11 @@ import com.construmedicis.buildtracking.invoice.models.InvoiceItem;
 import com.construmedicis.buildtracking.invoice.repository.InvoiceItemRepository;
 import com.construmedicis.buildtracking.invoice.repository.InvoiceRepository;
 import com.construmedicis.buildtracking.invoice.services.InvoiceItemService;
+import com.construmedicis.buildtracking.invoice.models.Invoice;
+import com.construmedicis.buildtracking.item.models.Item;
 import com.construmedicis.buildtracking.item.repository.ItemRepository;
+import com.construmedicis.buildtracking.item.services.StockLedgerService;
+import com.construmedicis.buildtracking.item.services.SupplierItemMappingService;
 import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
 import com.construmedicis.buildtracking.util.response.Response;
 import com.construmedicis.buildtracking.util.response.handler.ResponseHandler;
@@ -21,13 +25,19 @@ public class InvoiceItemServiceImpl implements InvoiceItemService {
     private final InvoiceItemRepository invoiceItemRepository;
     private final InvoiceRepository invoiceRepository;
     private final ItemRepository itemRepository;
+    private final StockLedgerService stockLedgerService;
+    private final SupplierItemMappingService supplierItemMappingService;
 
     public InvoiceItemServiceImpl(InvoiceItemRepository invoiceItemRepository,
             InvoiceRepository invoiceRepository,
-            ItemRepository itemRepository) {
+            ItemRepository itemRepository,
+            StockLedgerService stockLedgerService,
+            SupplierItemMappingService supplierItemMappingService) {
         this.invoiceItemRepository = invoiceItemRepository;
         this.invoiceRepository = invoiceRepository;
         this.itemRepository = itemRepository;
+        this.stockLedgerService = stockLedgerService;
+        this.supplierItemMappingService = supplierItemMappingService;
     }
 
     @Override
@@ -43,11 +53,42 @@ public class InvoiceItemServiceImpl implements InvoiceItemService {
             throw new BusinessRuleException("item.not.found");
         }
 
+        // Al actualizar una línea, su versión anterior sale del stock
+        if (invoiceItemDTO.getId() != null) {
+            invoiceItemRepository.findById(invoiceItemDTO.getId()).ifPresent(existing -> stockLedgerService
+                    .recordLinesRemoved(List.of(existing), existing.getInvoice().getProject()));
+        }
+
         InvoiceItem invoiceItem = fromDTO(invoiceItemDTO);
         InvoiceItem saved = invoiceItemRepository.save(invoiceItem);
+        stockLedgerService.recordLinesAdded(List.of(saved), saved.getInvoice().getProject());
         return new ResponseHandler<>(201, "Invoice item created", "/api/invoice-items", toDTO(saved)).getResponse();
     }
 
+    @Override
+    @Transactional
+    public Response<InvoiceItemDTO> reassignItem(Long id, Long itemId) {
+        InvoiceItem invoiceItem = invoiceItemRepository.findById(id)
+                .orElseThrow(() -> new BusinessRuleException("invoice.item.not.found"));
+        Item item = itemRepository.findById(itemId)
+                .orElseThrow(() -> new BusinessRuleException("item.not.found"));
+
+        Item previous = invoiceItem.getItem();
+        invoiceItem.setItem(item);
+        invoiceItem.setMatchConfidence(100); // Confirmado manualmente
+        InvoiceItem saved = invoiceItemRepository.save(invoiceItem);
+
+        // Las siguientes compras de este código al mismo proveedor irán a este ítem
+        Invoice invoice = invoiceItem.getInvoice();
+        supplierItemMappingService.correct(invoice.getSupplierId(), invoiceItem.getSupplierItemCode(), item);
+
+        // El stock solo cuenta facturas asignadas a un proyecto
+        stockLedgerService.recordItemChange(saved, previous, invoice.getProject());
+
+        return new ResponseHandler<>(200, "Invoice item reassigned", "/api/invoice-items/{id}/item/{itemId}",
+                toDTO(saved)).getResponse();
+    }
+
     @Override
     public Response<InvoiceItemDTO> findById(Long id) {
         InvoiceItem invoiceItem = invoiceItemRepository.findById(id)
@@ -67,10 +108,10 @@ public class InvoiceItemServiceImpl implements InvoiceItemService {
     @Override
     @Transactional
     public Response<Void> deleteById(Long id) {
-        if (!invoiceItemRepository.existsById(id)) {
-            throw new BusinessRuleException("invoice.item.not.found");
-        }
-        invoiceItemRepository.deleteById(id);
+        InvoiceItem invoiceItem = invoiceItemRepository.findById(id)
+                .orElseThrow(() -> new BusinessRuleException("invoice.item.not.found"));
+        stockLedgerService.recordLinesRemoved(List.of(invoiceItem), invoiceItem.getInvoice().getProject());
+        invoiceItemRepository.delete(invoiceItem);
         return new ResponseHandler<Void>(200, "Invoice item deleted", "/api/invoice-items/{id}", null).getResponse();
     }
 
@@ -105,6 +146,9 @@ public class InvoiceItemServiceImpl implements InvoiceItemService {
             throw new BusinessRuleException("invoice.not.found");
         }
         List<InvoiceItem> items = invoiceItemRepository.findByInvoiceId(invoiceId);
+        if (!items.isEmpty()) {
+            stockLedgerService.recordLinesRemoved(items, items.get(0).getInvoice().getProject());
+        }
         invoiceItemRepository.deleteAll(items);
         return new ResponseHandler<Void>(200, "Invoice items deleted", "/api/invoice-items/invoice/{invoiceId}", null)
                 .getResponse();
@@ -117,6 +161,8 @@ public class InvoiceItemServiceImpl implements InvoiceItemService {
                 .id(item.getId())
                 .invoiceId(item.getInvoice() != null ? item.getInvoice().getId() : null)
                 .itemId(item.getItem() != null ? item.getItem().getId() : null)
+                .matchConfidence(item.getMatchConfidence())
+                .supplierItemCode(item.getSupplierItemCode())
                 .description(item.getDescription())
                 .quantity(item.getQuantity())
                 .unitPrice(item.getUnitPrice())
@@ -129,6 +175,7 @@ public class InvoiceItemServiceImpl implements InvoiceItemService {
         InvoiceItem item = InvoiceItem.builder()
                 .id(dto.getId())
                 .description(dto.getDescription())
+                .supplierItemCode(dto.getSupplierItemCode())
                 .quantity(dto.getQuantity())
                 .unitPrice(dto.getUnitPrice())
                 .lineTotal(dto.getLineTotal())
@@ -0,0 +1,37 @@
+package com.construmedicis.buildtracking.invoice.services.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import com.construmedicis.buildtracking.invoice.models.Invoice;
+import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
+
+/**
+ * Cursor opaco de la búsqueda paginada: issueDate e id de la última factura de
+ * la página, en Base64 URL.
+ */
+record InvoiceSearchCursor(LocalDateTime issueDate, Long id) {
+
+    static InvoiceSearchCursor of(Invoice invoice) {
+        return new InvoiceSearchCursor(invoice.getIssueDate(), invoice.getId());
+    }
+
+    String encode() {
+        String value = issueDate + "_" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static InvoiceSearchCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("_");
+            if (parts.length != 2) {
+                throw new BusinessRuleException("invoice.search.cursor.invalid");
+            }
+            return new InvoiceSearchCursor(LocalDateTime.parse(parts[0]), Long.valueOf(parts[1]));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new BusinessRuleException("invoice.search.cursor.invalid");
+        }
+    }
+}
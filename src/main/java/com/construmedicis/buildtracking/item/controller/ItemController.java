@@ -6,7 +6,10 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import com.construmedicis.buildtracking.item.dto.ItemDTO;
+import com.construmedicis.buildtracking.item.dto.ProjectStockDTO;
+import com.construmedicis.buildtracking.item.dto.StockReconciliationDTO;
 import com.construmedicis.buildtracking.item.services.ItemService;
+import com.construmedicis.buildtracking.item.services.StockLedgerService;
 import com.construmedicis.buildtracking.util.response.Response;
 
 @RestController
@@ -14,9 +17,11 @@ import com.construmedicis.buildtracking.util.response.Response;
 public class ItemController {
 
     private final ItemService service;
+    private final StockLedgerService stockLedgerService;
 
-    public ItemController(ItemService service) {
+    public ItemController(ItemService service, StockLedgerService stockLedgerService) {
         this.service = service;
+        this.stockLedgerService = stockLedgerService;
     }
 
     @GetMapping
@@ -44,8 +49,18 @@ public class ItemController {
         return ResponseEntity.ok(service.findByProjectId(projectId));
     }
 
+    @GetMapping("/project/{projectId}/stock")
+    public ResponseEntity<Response<List<ProjectStockDTO>>> getProjectStock(@PathVariable Long projectId) {
+        return ResponseEntity.ok(stockLedgerService.findProjectStock(projectId));
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Response<Void>> delete(@PathVariable Long id) {
         return ResponseEntity.ok(service.deleteById(id));
     }
+
+    @PostMapping("/stock/reconcile")
+    public ResponseEntity<Response<StockReconciliationDTO>> reconcileStock() {
+        return ResponseEntity.ok(stockLedgerService.reconcile());
+    }
 }
@@ -1,5 +1,6 @@
 package com.construmedicis.buildtracking.item.dto;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
 
 import java.util.List;
@@ -13,6 +14,8 @@ public class ItemDTO {
     private Long id;
     private String name;
     private String description;
+    // Stock calculado por el libro de stock; se ignora al crear o actualizar
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
     private Integer quantity;
     private List<Long> projectIds;
 }
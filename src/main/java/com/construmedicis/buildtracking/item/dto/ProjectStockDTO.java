@@ -0,0 +1,20 @@
+package com.construmedicis.buildtracking.item.dto;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProjectStockDTO {
+    private Long itemId;
+    private String itemName;
+    private String itemDescription;
+    private BigDecimal quantity;
+    private BigDecimal totalCost;
+    // totalCost / quantity; null si la cantidad es 0
+    private BigDecimal averageUnitPrice;
+}
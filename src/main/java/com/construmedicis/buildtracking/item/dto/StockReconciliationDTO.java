@@ -0,0 +1,21 @@
+package com.construmedicis.buildtracking.item.dto;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class StockReconciliationDTO {
+    private LocalDateTime checkedAt;
+    private Integer itemsChecked;
+    // Pares (ítem, proyecto) cuyo libro no coincidía con el recálculo; se ajustaron
+    private Integer ledgerAdjustments;
+    // Ítems cuyo saldo materializado no coincidía con el recálculo; se corrigieron
+    private Integer balancesCorrected;
+    // Pares (ítem, proyecto) cuyo saldo por proyecto no coincidía; se recalcularon
+    private Integer projectBalancesCorrected;
+}
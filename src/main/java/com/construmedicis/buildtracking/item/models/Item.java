@@ -2,31 +2,43 @@ package com.construmedicis.buildtracking.item.models;
 
 import lombok.*;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 import com.construmedicis.buildtracking.project.models.Project;
 
 import jakarta.persistence.*;
 
+import org.hibernate.annotations.ColumnDefault;
+
 @Getter
 @Setter
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 @Entity
-@Table(name = "item")
+@Table(name = "item", indexes = {
+        @Index(name = "idx_item_description", columnList = "item_description"),
+        @Index(name = "idx_item_name", columnList = "item_name") })
 public class Item {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_id_seq")
-    @SequenceGenerator(name = "item_id_seq", sequenceName = "item_id_seq", allocationSize = 1)
+    @SequenceGenerator(name = "item_id_seq", sequenceName = "item_id_seq", allocationSize = 50)
     @Column(name = "item_id")
     private Long id;
     @Column(name = "item_name")
     private String name;
     @Column(name = "item_description")
     private String description;
-    @Column(name = "item_quantity")
+    // Saldo exacto del libro de stock y su parte entera. Solo los escriben las
+    // sentencias nativas del libro (ItemRepository.addToStock / recomputeStock):
+    // guardar la entidad nunca los sobrescribe con un valor leído antes
+    @Column(name = "item_quantity", insertable = false, updatable = false)
+    @ColumnDefault("0")
     private Integer quantity;
+    @Column(name = "item_stock_balance", precision = 19, scale = 4, insertable = false, updatable = false)
+    @ColumnDefault("0")
+    private BigDecimal stockBalance;
 
     @ManyToMany
     @JoinTable(name = "item_project", joinColumns = @JoinColumn(name = "item_id"), inverseJoinColumns = @JoinColumn(name = "project_id"))
@@ -0,0 +1,56 @@
+package com.construmedicis.buildtracking.item.models;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Saldo materializado de un ítem en un proyecto: cantidad exacta y costo
+ * acumulado de sus líneas en facturas asignadas al proyecto. Lo mantiene el
+ * libro de stock con el mismo delta de cada movimiento, así la lista de
+ * materiales de una obra se lee sin recorrer las líneas de factura.
+ * <p>
+ * Como en el libro, ítem y proyecto son ids sin llave foránea.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@IdClass(ItemProjectStock.Key.class)
+@Table(name = "item_project_stock",
+        indexes = @Index(name = "idx_item_project_stock_project", columnList = "project_id"))
+public class ItemProjectStock {
+
+    @Id
+    @Column(name = "item_id")
+    private Long itemId;
+
+    @Id
+    @Column(name = "project_id")
+    private Long projectId;
+
+    @Column(name = "quantity", nullable = false, precision = 19, scale = 4)
+    private BigDecimal quantity;
+
+    // Suma de lineTotal de las líneas; el precio promedio es totalCost / quantity
+    @Column(name = "total_cost", nullable = false, precision = 19, scale = 2)
+    private BigDecimal totalCost;
+
+    @Column(name = "updated_date", nullable = false)
+    private LocalDateTime updatedDate;
+
+    @Getter
+    @Setter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private Long itemId;
+        private Long projectId;
+    }
+}
@@ -0,0 +1,72 @@
+package com.construmedicis.buildtracking.item.models;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Movimiento del libro de stock: cantidad y costo con signo de un ítem en un
+ * proyecto. Solo se insertan filas; el stock de un ítem es la suma de sus
+ * movimientos.
+ * <p>
+ * Ítem, proyecto y línea se guardan como ids sin llave foránea porque el
+ * libro sobrevive a las líneas y facturas que lo originaron (borrar una línea
+ * registra su salida, no borra su entrada).
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "stock_movements", indexes = {
+        @Index(name = "idx_stock_movement_item_project", columnList = "item_id, project_id"),
+        @Index(name = "idx_stock_movement_invoice_item", columnList = "invoice_item_id") })
+public class StockMovement {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_movement_id_seq")
+    @SequenceGenerator(name = "stock_movement_id_seq", sequenceName = "stock_movement_id_seq", allocationSize = 50)
+    @Column(name = "stock_movement_id")
+    private Long id;
+
+    @Column(name = "item_id", nullable = false)
+    private Long itemId;
+
+    @Column(name = "project_id")
+    private Long projectId;
+
+    // Línea de factura que originó el movimiento (null en ajustes de conciliación)
+    @Column(name = "invoice_item_id")
+    private Long invoiceItemId;
+
+    @Column(name = "quantity", nullable = false, precision = 19, scale = 4)
+    private BigDecimal quantity;
+
+    // Costo con signo (lineTotal de la línea); null en movimientos anteriores al costo
+    @Column(name = "amount", precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "movement_type", nullable = false, length = 20)
+    private MovementType movementType;
+
+    @Column(name = "created_date", nullable = false)
+    private LocalDateTime createdDate;
+
+    @PrePersist
+    protected void onCreate() {
+        createdDate = LocalDateTime.now();
+    }
+
+    public enum MovementType {
+        ASSIGNED, // Factura asignada a un proyecto (+)
+        UNASSIGNED, // Factura desasignada o movida a otro proyecto (-)
+        LINE_ADDED, // Línea nueva o corregida en una factura asignada (+)
+        LINE_REMOVED, // Línea borrada o reemplazada en una factura asignada (-)
+        ITEM_CHANGED, // Línea reasignada a otro ítem del catálogo (- y +)
+        RECONCILED // Ajuste de la conciliación contra el recálculo completo
+    }
+}
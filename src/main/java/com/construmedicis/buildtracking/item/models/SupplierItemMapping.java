@@ -0,0 +1,59 @@
+package com.construmedicis.buildtracking.item.models;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Código de producto de un proveedor (cbc:ID de la línea de factura) asociado
+ * a un ítem del catálogo. Se aprende al emparejar la primera línea con ese
+ * código o al corregir manualmente el ítem de una línea, y se consulta antes
+ * que cualquier comparación de texto.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "supplier_item_mappings",
+        uniqueConstraints = @UniqueConstraint(name = "uk_supplier_item_code", columnNames = { "supplier_nit", "supplier_item_code" }),
+        indexes = @Index(name = "idx_supplier_item_mapping_item", columnList = "item_id"))
+public class SupplierItemMapping {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "supplier_item_mapping_id_seq")
+    @SequenceGenerator(name = "supplier_item_mapping_id_seq", sequenceName = "supplier_item_mapping_id_seq",
+            allocationSize = 50)
+    @Column(name = "supplier_item_mapping_id")
+    private Long id;
+
+    @Column(name = "supplier_nit", nullable = false, length = 50)
+    private String supplierNit;
+
+    @Column(name = "supplier_item_code", nullable = false, length = 100)
+    private String supplierItemCode;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "item_id", nullable = false)
+    private Item item;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "source", nullable = false, length = 20)
+    private MappingSource source;
+
+    @Column(name = "updated_date", nullable = false)
+    private LocalDateTime updatedDate;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedDate = LocalDateTime.now();
+    }
+
+    public enum MappingSource {
+        MATCHED, // Aprendido del emparejamiento automático de una línea
+        MANUAL // Corrección manual del ítem de una línea
+    }
+}
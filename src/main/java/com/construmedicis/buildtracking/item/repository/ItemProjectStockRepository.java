@@ -0,0 +1,61 @@
+package com.construmedicis.buildtracking.item.repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.construmedicis.buildtracking.item.models.ItemProjectStock;
+
+@Repository
+public interface ItemProjectStockRepository extends JpaRepository<ItemProjectStock, ItemProjectStock.Key> {
+
+    /**
+     * Suma a cada par (ítem, proyecto) su delta de cantidad y costo en una sola
+     * sentencia, creando el saldo si no existía. Los arreglos son paralelos y
+     * sin pares repetidos.
+     */
+    @Modifying
+    @Query(value = "insert into item_project_stock (item_id, project_id, quantity, total_cost, updated_date) "
+            + "select d.item_id, d.project_id, d.quantity, d.cost, now() "
+            + "from unnest(cast(:itemIds as bigint[]), cast(:projectIds as bigint[]), "
+            + "cast(:quantities as numeric[]), cast(:costs as numeric[])) as d(item_id, project_id, quantity, cost) "
+            + "on conflict (item_id, project_id) do update set "
+            + "quantity = item_project_stock.quantity + excluded.quantity, "
+            + "total_cost = item_project_stock.total_cost + excluded.total_cost, "
+            + "updated_date = excluded.updated_date", nativeQuery = true)
+    int addToStock(@Param("itemIds") Long[] itemIds, @Param("projectIds") Long[] projectIds,
+            @Param("quantities") BigDecimal[] quantities, @Param("costs") BigDecimal[] costs);
+
+    /**
+     * Recalcula desde las líneas el saldo de los pares indicados en una sola
+     * sentencia (0 si ya no tienen líneas en facturas del proyecto).
+     */
+    @Modifying
+    @Query(value = "insert into item_project_stock (item_id, project_id, quantity, total_cost, updated_date) "
+            + "select k.item_id, k.project_id, coalesce(sum(ii.quantity), 0), coalesce(sum(ii.line_total), 0), now() "
+            + "from unnest(cast(:itemIds as bigint[]), cast(:projectIds as bigint[])) as k(item_id, project_id) "
+            + "left join (invoice_items ii join invoices inv on inv.id = ii.invoice_id) "
+            + "on ii.item_id = k.item_id and inv.project_id = k.project_id "
+            + "group by k.item_id, k.project_id "
+            + "on conflict (item_id, project_id) do update set quantity = excluded.quantity, "
+            + "total_cost = excluded.total_cost, updated_date = excluded.updated_date", nativeQuery = true)
+    int recomputeStock(@Param("itemIds") Long[] itemIds, @Param("projectIds") Long[] projectIds);
+
+    // Filas [itemId, projectId, cantidad, costo]
+    @Query("select s.itemId, s.projectId, s.quantity, s.totalCost from ItemProjectStock s")
+    List<Object[]> findAllBalances();
+
+    /**
+     * Lista de materiales del proyecto: filas [itemId, nombre, descripción,
+     * cantidad, costo] de los ítems con saldo, por nombre.
+     */
+    @Query("select i.id, i.name, i.description, s.quantity, s.totalCost from ItemProjectStock s, Item i "
+            + "where i.id = s.itemId and s.projectId = :projectId and (s.quantity <> 0 or s.totalCost <> 0) "
+            + "order by i.name, i.id")
+    List<Object[]> findBillOfMaterials(@Param("projectId") Long projectId);
+}
@@ -1,9 +1,15 @@
 package com.construmedicis.buildtracking.item.repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import com.construmedicis.buildtracking.item.models.Item;
 
@@ -12,7 +18,63 @@ public interface ItemRepository extends JpaRepository<Item, Long> {
 
     List<Item> findByProjects_Id(Long projectId);
 
-    Optional<Item> findByNameContainingIgnoreCase(String name);
+    Optional<Item> findFirstByNameOrderByIdAsc(String name);
 
-    Optional<Item> findByDescription(String description);
+    Optional<Item> findFirstByDescriptionOrderByIdAsc(String description);
+
+    @Query("select i.id, i.name, i.description from Item i")
+    Stream<Object[]> streamCatalogKeys();
+
+    /**
+     * Ítem con la descripción más parecida según pg_trgm (id, similitud). El
+     * operador % filtra con pg_trgm.similarity_threshold usando el índice GIN
+     * idx_item_description_trgm.
+     */
+    @Query(value = "select i.item_id, similarity(i.item_description, :description) as score from item i "
+            + "where i.item_description % :description order by score desc, i.item_id limit 1",
+            nativeQuery = true)
+    List<Object[]> findMostSimilarByDescription(@Param("description") String description);
+
+    /**
+     * Suma a cada ítem su delta en una sola sentencia, sin leer los ítems: dos
+     * transacciones que mueven el mismo ítem no pierden actualizaciones. Los
+     * arreglos son paralelos (itemIds[i] recibe deltas[i]) y sin ids repetidos.
+     */
+    @Modifying
+    @Query(value = "update item set item_stock_balance = coalesce(item_stock_balance, 0) + d.delta, "
+            + "item_quantity = trunc(coalesce(item_stock_balance, 0) + d.delta) "
+            + "from unnest(cast(:itemIds as bigint[]), cast(:deltas as numeric[])) as d(item_id, delta) "
+            + "where item.item_id = d.item_id", nativeQuery = true)
+    int addToStock(@Param("itemIds") Long[] itemIds, @Param("deltas") BigDecimal[] deltas);
+
+    /**
+     * Recalcula desde las líneas el stock de los ítems indicados en una sola
+     * sentencia: la suma de sus cantidades en facturas asignadas a un
+     * proyecto (0 si no tienen ninguna).
+     */
+    @Modifying
+    @Query(value = "update item set item_stock_balance = s.total, item_quantity = trunc(s.total) "
+            + "from (select ids.item_id, coalesce(sum(ii.quantity) filter (where inv.project_id is not null), 0) as total "
+            + "from (select distinct unnest(cast(:itemIds as bigint[])) as item_id) ids "
+            + "left join invoice_items ii on ii.item_id = ids.item_id "
+            + "left join invoices inv on inv.id = ii.invoice_id "
+            + "group by ids.item_id) s "
+            + "where item.item_id = s.item_id", nativeQuery = true)
+    int recomputeStock(@Param("itemIds") Long[] itemIds);
+
+    /**
+     * Asocia al proyecto los ítems de las líneas de esas facturas que aún no
+     * lo tienen, en una sola sentencia.
+     */
+    @Modifying
+    @Query(value = "insert into item_project (item_id, project_id) "
+            + "select distinct ii.item_id, :projectId from invoice_items ii "
+            + "where ii.invoice_id in (:invoiceIds) and ii.item_id is not null and not exists "
+            + "(select 1 from item_project ip where ip.item_id = ii.item_id and ip.project_id = :projectId)",
+            nativeQuery = true)
+    int addProjectToInvoiceItems(@Param("invoiceIds") Collection<Long> invoiceIds,
+            @Param("projectId") Long projectId);
+
+    @Query("select i.id, i.stockBalance from Item i")
+    List<Object[]> findStockBalances();
 }
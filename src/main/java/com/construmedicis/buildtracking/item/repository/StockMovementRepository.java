@@ -0,0 +1,18 @@
+package com.construmedicis.buildtracking.item.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import com.construmedicis.buildtracking.item.models.StockMovement;
+
+@Repository
+public interface StockMovementRepository extends JpaRepository<StockMovement, Long> {
+
+    // Filas [itemId, projectId, cantidad, costo]
+    @Query("select m.itemId, m.projectId, sum(m.quantity), sum(coalesce(m.amount, 0)) from StockMovement m "
+            + "group by m.itemId, m.projectId")
+    List<Object[]> sumByItemAndProject();
+}
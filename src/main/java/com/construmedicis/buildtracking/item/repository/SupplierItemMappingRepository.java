@@ -0,0 +1,25 @@
+package com.construmedicis.buildtracking.item.repository;
+
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.construmedicis.buildtracking.item.models.SupplierItemMapping;
+
+@Repository
+public interface SupplierItemMappingRepository extends JpaRepository<SupplierItemMapping, Long> {
+
+    Optional<SupplierItemMapping> findBySupplierNitAndSupplierItemCode(String supplierNit, String supplierItemCode);
+
+    @Query("select m.supplierNit, m.supplierItemCode, m.item.id from SupplierItemMapping m")
+    Stream<Object[]> streamMappingKeys();
+
+    @Modifying
+    @Query("delete from SupplierItemMapping m where m.item.id = :itemId")
+    int deleteByItemId(@Param("itemId") Long itemId);
+}
@@ -0,0 +1,45 @@
+package com.construmedicis.buildtracking.item.services;
+
+import java.util.Optional;
+
+import com.construmedicis.buildtracking.item.models.Item;
+
+/**
+ * Índice en memoria del catálogo de ítems: descripción y código (nombre)
+ * normalizados, códigos de proveedor mapeados y trigramas de la descripción
+ * para el emparejamiento aproximado. Así el emparejamiento de líneas de
+ * factura no consulta la base de datos por cada línea.
+ * <p>
+ * Los cambios hechos dentro de una transacción se ven de inmediato en esa
+ * misma transacción y se publican al resto solo al hacer commit, así un
+ * rollback nunca deja ids inexistentes en el índice.
+ */
+public interface ItemCatalogIndex {
+
+    /** Id del ítem con esa descripción (normalizada), si existe. */
+    Optional<Long> findByDescription(String description);
+
+    /** Id del ítem cuyo nombre es ese código de proveedor (normalizado), si existe. */
+    Optional<Long> findByCode(String itemCode);
+
+    /** Id del ítem mapeado al código de ese proveedor (ver SupplierItemMapping), si existe. */
+    Optional<Long> findBySupplierCode(String supplierNit, String supplierItemCode);
+
+    /**
+     * Ítem cuya descripción más se parece a la dada (similitud de trigramas
+     * entre 0 y 1, al menos threshold), si existe.
+     */
+    Optional<SimilarItem> findSimilar(String description, double threshold);
+
+    /** Agrega o actualiza el ítem (ya guardado, con id) en el índice. */
+    void register(Item item);
+
+    /** Agrega o reemplaza el mapeo (ya guardado) de un código de proveedor. */
+    void registerSupplierCode(String supplierNit, String supplierItemCode, Long itemId);
+
+    /** Quita el ítem del índice, incluidos los códigos de proveedor que apuntan a él. */
+    void remove(Long itemId);
+
+    record SimilarItem(Long itemId, double similarity) {
+    }
+}
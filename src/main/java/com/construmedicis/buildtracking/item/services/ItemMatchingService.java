@@ -14,9 +14,24 @@ public interface ItemMatchingService {
     /**
      * Find an existing item in the catalog or create a new one.
      * 
-     * @param parsedItem The parsed invoice item from XML
-     * @param project    The project to associate with the item
-     * @return The matched or newly created Item
+     * @param parsedItem  The parsed invoice item from XML
+     * @param supplierNit The supplier's NIT, scoping the line's item code
+     * @param project     The project to associate with the item
+     * @return The matched or newly created Item, with the match confidence
      */
-    Item findOrCreateItem(ParsedInvoiceItemDTO parsedItem, Project project);
+    ItemMatch findOrCreateItem(ParsedInvoiceItemDTO parsedItem, String supplierNit, Project project);
+
+    enum MatchType {
+        SUPPLIER_CODE, // Item code already mapped for this supplier
+        DESCRIPTION, // Same normalized description
+        CODE, // Supplier item code equals the item name
+        SIMILAR, // Trigram similarity above the configured threshold
+        CREATED // No match, a new catalog item was created
+    }
+
+    /**
+     * @param confidence 0-100%; 100 for exact matches and created items
+     */
+    record ItemMatch(Item item, int confidence, MatchType matchType) {
+    }
 }
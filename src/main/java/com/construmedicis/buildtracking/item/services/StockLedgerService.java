@@ -0,0 +1,58 @@
+package com.construmedicis.buildtracking.item.services;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.construmedicis.buildtracking.invoice.models.InvoiceItem;
+import com.construmedicis.buildtracking.item.dto.ProjectStockDTO;
+import com.construmedicis.buildtracking.item.dto.StockReconciliationDTO;
+import com.construmedicis.buildtracking.item.models.Item;
+import com.construmedicis.buildtracking.project.models.Project;
+import com.construmedicis.buildtracking.util.response.Response;
+
+/**
+ * Libro de movimientos de stock. El stock de un ítem es la cantidad de sus
+ * líneas en facturas asignadas a un proyecto; cada cambio que la afecta se
+ * registra como movimiento y el saldo del ítem se ajusta por la diferencia,
+ * sin recorrer su historial de compras.
+ * <p>
+ * Cada movimiento ajusta también el saldo del ítem en el proyecto (cantidad y
+ * costo acumulado), del que se lee la lista de materiales de la obra.
+ * <p>
+ * Los métodos leen ítem, cantidad y total de las líneas en el momento de la llamada:
+ * las salidas se registran antes de modificar o borrar la línea y las
+ * entradas después de guardarla.
+ */
+public interface StockLedgerService {
+
+    /** Factura que pasa de un proyecto a otro (cualquiera de los dos puede ser null). */
+    void recordProjectChange(Collection<InvoiceItem> lines, Project previous, Project current);
+
+    /**
+     * Varias facturas que cambian de proyecto: los movimientos se insertan en
+     * batch y los saldos se ajustan con una sola sentencia.
+     */
+    void recordProjectChanges(List<ProjectChange> changes);
+
+    /** Líneas que entran a una factura asignada al proyecto (no hace nada si es null). */
+    void recordLinesAdded(Collection<InvoiceItem> lines, Project project);
+
+    /** Líneas que salen de una factura asignada al proyecto (no hace nada si es null). */
+    void recordLinesRemoved(Collection<InvoiceItem> lines, Project project);
+
+    /** Línea de una factura asignada que cambió de ítem del catálogo. */
+    void recordItemChange(InvoiceItem line, Item previous, Project project);
+
+    /** Lista de materiales del proyecto desde los saldos por proyecto. */
+    Response<List<ProjectStockDTO>> findProjectStock(Long projectId);
+
+    /**
+     * Compara el libro y los saldos con el stock recalculado desde las líneas
+     * y corrige las diferencias con movimientos de ajuste y recalculando los
+     * saldos que no cuadran.
+     */
+    Response<StockReconciliationDTO> reconcile();
+
+    record ProjectChange(Collection<InvoiceItem> lines, Project previous, Project current) {
+    }
+}
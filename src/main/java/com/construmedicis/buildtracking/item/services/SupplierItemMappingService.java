@@ -0,0 +1,27 @@
+package com.construmedicis.buildtracking.item.services;
+
+import java.util.Optional;
+
+import com.construmedicis.buildtracking.item.models.Item;
+
+/**
+ * Mapeo (NIT del proveedor, código del proveedor) → ítem del catálogo. Las
+ * consultas se resuelven desde el caché de {@link ItemCatalogIndex}.
+ */
+public interface SupplierItemMappingService {
+
+    /** Id del ítem mapeado a ese código del proveedor, si existe. */
+    Optional<Long> findItemId(String supplierNit, String supplierItemCode);
+
+    /**
+     * Registra el ítem con que se emparejó una línea, solo si el código aún no
+     * estaba mapeado.
+     */
+    void learn(String supplierNit, String supplierItemCode, Item item);
+
+    /** Apunta el código al ítem elegido manualmente, reemplazando el anterior. */
+    void correct(String supplierNit, String supplierItemCode, Item item);
+
+    /** Elimina los mapeos hacia un ítem (antes de borrarlo). */
+    void deleteByItemId(Long itemId);
+}
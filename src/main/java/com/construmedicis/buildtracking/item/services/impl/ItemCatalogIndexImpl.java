@@ -0,0 +1,275 @@
+package com.construmedicis.buildtracking.item.services.impl;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.construmedicis.buildtracking.item.models.Item;
+import com.construmedicis.buildtracking.item.repository.ItemRepository;
+import com.construmedicis.buildtracking.item.repository.SupplierItemMappingRepository;
+import com.construmedicis.buildtracking.item.services.ItemCatalogIndex;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Mapas concurrentes clave normalizada → id. Si dos ítems comparten clave gana
+ * el de menor id, igual que las consultas de respaldo del repositorio. Hasta
+ * que termina la carga inicial las búsquedas simplemente no encuentran nada y
+ * el llamador cae a la base de datos.
+ */
+@Service
+@Slf4j
+public class ItemCatalogIndexImpl implements ItemCatalogIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final ItemRepository itemRepository;
+    private final SupplierItemMappingRepository supplierItemMappingRepository;
+
+    private final Map<String, Long> byDescription = new ConcurrentHashMap<>();
+    private final Map<String, Long> byCode = new ConcurrentHashMap<>();
+    // "NIT|código" -> id; a diferencia de los anteriores, la clave es única en la base
+    private final Map<String, Long> bySupplierCode = new ConcurrentHashMap<>();
+    // Claves actuales de cada ítem, para limpiar las viejas al actualizar o borrar
+    private final Map<Long, Keys> keysById = new ConcurrentHashMap<>();
+    private final TrigramIndex trigramIndex = new TrigramIndex();
+
+    public ItemCatalogIndexImpl(ItemRepository itemRepository,
+            SupplierItemMappingRepository supplierItemMappingRepository) {
+        this.itemRepository = itemRepository;
+        this.supplierItemMappingRepository = supplierItemMappingRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        long count = 0;
+        try (Stream<Object[]> rows = itemRepository.streamCatalogKeys()) {
+            for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                put((Long) row[0], new Keys(normalize((String) row[2]), normalize((String) row[1])));
+                count++;
+            }
+        }
+        long mappings = 0;
+        try (Stream<Object[]> rows = supplierItemMappingRepository.streamMappingKeys()) {
+            for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                String key = supplierKey((String) row[0], (String) row[1]);
+                if (key != null) {
+                    bySupplierCode.put(key, (Long) row[2]);
+                    mappings++;
+                }
+            }
+        }
+        log.info("Índice del catálogo de ítems cargado: {} ítems, {} códigos de proveedor", count, mappings);
+    }
+
+    @Override
+    public Optional<Long> findByDescription(String description) {
+        return find(normalize(description), byDescription, PendingChanges::byDescription);
+    }
+
+    @Override
+    public Optional<Long> findByCode(String itemCode) {
+        return find(normalize(itemCode), byCode, PendingChanges::byCode);
+    }
+
+    @Override
+    public Optional<Long> findBySupplierCode(String supplierNit, String supplierItemCode) {
+        return find(supplierKey(supplierNit, supplierItemCode), bySupplierCode, PendingChanges::bySupplierCode);
+    }
+
+    @Override
+    public Optional<SimilarItem> findSimilar(String description, double threshold) {
+        Set<String> query = TrigramIndex.trigrams(normalize(description));
+        PendingChanges pending = currentPendingChanges();
+        if (pending == null) {
+            return trigramIndex.search(query, threshold, Set.of());
+        }
+
+        // Los ítems cambiados en esta transacción se comparan con sus claves nuevas
+        Set<Long> excluded = new HashSet<>(pending.removed());
+        excluded.addAll(pending.registered().keySet());
+        SimilarItem best = trigramIndex.search(query, threshold, excluded).orElse(null);
+        for (Map.Entry<Long, Keys> entry : pending.registered().entrySet()) {
+            double similarity = TrigramIndex.similarity(query, TrigramIndex.trigrams(entry.getValue().description()));
+            if (similarity >= threshold && (best == null || similarity > best.similarity()
+                    || (similarity == best.similarity() && entry.getKey() < best.itemId()))) {
+                best = new SimilarItem(entry.getKey(), similarity);
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    @Override
+    public void register(Item item) {
+        Keys keys = new Keys(normalize(item.getDescription()), normalize(item.getName()));
+        PendingChanges pending = pendingChanges();
+        if (pending == null) {
+            put(item.getId(), keys);
+            return;
+        }
+        pending.registered().put(item.getId(), keys);
+        pending.removed().remove(item.getId());
+        if (keys.description() != null) {
+            pending.byDescription().put(keys.description(), item.getId());
+        }
+        if (keys.code() != null) {
+            pending.byCode().put(keys.code(), item.getId());
+        }
+    }
+
+    @Override
+    public void registerSupplierCode(String supplierNit, String supplierItemCode, Long itemId) {
+        String key = supplierKey(supplierNit, supplierItemCode);
+        if (key == null) {
+            return;
+        }
+        PendingChanges pending = pendingChanges();
+        if (pending == null) {
+            bySupplierCode.put(key, itemId);
+        } else {
+            pending.bySupplierCode().put(key, itemId);
+        }
+    }
+
+    @Override
+    public void remove(Long itemId) {
+        PendingChanges pending = pendingChanges();
+        if (pending == null) {
+            evict(itemId);
+            bySupplierCode.values().removeIf(itemId::equals);
+            return;
+        }
+        pending.registered().remove(itemId);
+        pending.removed().add(itemId);
+        pending.byDescription().values().removeIf(itemId::equals);
+        pending.byCode().values().removeIf(itemId::equals);
+        pending.bySupplierCode().values().removeIf(itemId::equals);
+    }
+
+    /**
+     * Mayúsculas sin tildes y con espacios colapsados, para que variaciones de
+     * formato entre proveedores no creen ítems duplicados.
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+        normalized = WHITESPACE.matcher(normalized.trim()).replaceAll(" ").toUpperCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    private static String supplierKey(String supplierNit, String supplierItemCode) {
+        String nit = normalize(supplierNit);
+        String code = normalize(supplierItemCode);
+        return nit != null && code != null ? nit + "|" + code : null;
+    }
+
+    private Optional<Long> find(String key, Map<String, Long> committed,
+            Function<PendingChanges, Map<String, Long>> pendingMap) {
+        if (key == null) {
+            return Optional.empty();
+        }
+        PendingChanges pending = currentPendingChanges();
+        if (pending != null) {
+            Long id = pendingMap.apply(pending).get(key);
+            if (id != null) {
+                return Optional.of(id);
+            }
+            id = committed.get(key);
+            return id != null && !pending.removed().contains(id) ? Optional.of(id) : Optional.empty();
+        }
+        return Optional.ofNullable(committed.get(key));
+    }
+
+    private synchronized void put(Long itemId, Keys keys) {
+        evict(itemId);
+        keysById.put(itemId, keys);
+        if (keys.description() != null) {
+            byDescription.merge(keys.description(), itemId, Math::min);
+        }
+        if (keys.code() != null) {
+            byCode.merge(keys.code(), itemId, Math::min);
+        }
+        trigramIndex.add(itemId, TrigramIndex.trigrams(keys.description()));
+    }
+
+    private synchronized void evict(Long itemId) {
+        trigramIndex.remove(itemId);
+        Keys keys = keysById.remove(itemId);
+        if (keys == null) {
+            return;
+        }
+        if (keys.description() != null) {
+            byDescription.remove(keys.description(), itemId);
+        }
+        if (keys.code() != null) {
+            byCode.remove(keys.code(), itemId);
+        }
+    }
+
+    private PendingChanges currentPendingChanges() {
+        return TransactionSynchronizationManager.isSynchronizationActive()
+                ? (PendingChanges) TransactionSynchronizationManager.getResource(this)
+                : null;
+    }
+
+    /**
+     * Cambios de la transacción actual (null fuera de una transacción). Se
+     * aplican al índice compartido después del commit y se descartan en
+     * rollback.
+     */
+    private PendingChanges pendingChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            PendingChanges created = new PendingChanges(new HashMap<>(), new HashSet<>(), new HashMap<>(),
+                    new HashMap<>(), new HashMap<>());
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    created.removed().forEach(itemId -> {
+                        evict(itemId);
+                        bySupplierCode.values().removeIf(itemId::equals);
+                    });
+                    created.registered().forEach(ItemCatalogIndexImpl.this::put);
+                    bySupplierCode.putAll(created.bySupplierCode());
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ItemCatalogIndexImpl.this);
+                }
+            });
+            pending = created;
+        }
+        return pending;
+    }
+
+    private record Keys(String description, String code) {
+    }
+
+    private record PendingChanges(Map<Long, Keys> registered, Set<Long> removed, Map<String, Long> byDescription,
+            Map<String, Long> byCode, Map<String, Long> bySupplierCode) {
+    }
+}
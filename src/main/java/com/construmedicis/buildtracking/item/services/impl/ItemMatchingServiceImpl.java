@@ -6,33 +6,135 @@ import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.construmedicis.buildtracking.email.dto.ParsedInvoiceItemDTO;
 import com.construmedicis.buildtracking.item.models.Item;
 import com.construmedicis.buildtracking.item.repository.ItemRepository;
+import com.construmedicis.buildtracking.item.services.ItemCatalogIndex;
+import com.construmedicis.buildtracking.item.services.ItemCatalogIndex.SimilarItem;
 import com.construmedicis.buildtracking.item.services.ItemMatchingService;
+import com.construmedicis.buildtracking.item.services.SupplierItemMappingService;
 import com.construmedicis.buildtracking.project.models.Project;
 
+/**
+ * Matches invoice lines against the in-memory {@link ItemCatalogIndex}; the
+ * database is only queried (by indexed exact match) when the index misses,
+ * e.g. for items written by another instance.
+ * <p>
+ * Lines whose supplier item code is already mapped to an item (see
+ * {@link SupplierItemMappingService}) resolve with a single lookup; every
+ * other match teaches the mapping for the next purchase.
+ * <p>
+ * When no exact match exists, the most similar description by trigram
+ * similarity is accepted above a configurable threshold, so supplier
+ * variations such as "CEMENTO GRIS 50KG ARGOS" and "Cemento gris x 50 kg" map
+ * to the same item instead of creating duplicates. Optionally, misses are
+ * checked against a pg_trgm index as well.
+ */
 @Service
 public class ItemMatchingServiceImpl implements ItemMatchingService {
 
     private static final Logger log = LoggerFactory.getLogger(ItemMatchingServiceImpl.class);
 
     private final ItemRepository itemRepository;
-
-    public ItemMatchingServiceImpl(ItemRepository itemRepository) {
+    private final ItemCatalogIndex catalogIndex;
+    private final SupplierItemMappingService supplierItemMappingService;
+    private final JdbcTemplate jdbcTemplate;
+    private final double similarityThreshold;
+    private volatile boolean pgTrgmEnabled;
+
+    public ItemMatchingServiceImpl(ItemRepository itemRepository, ItemCatalogIndex catalogIndex,
+            SupplierItemMappingService supplierItemMappingService, JdbcTemplate jdbcTemplate,
+            @Value("${buildtracking.item-matching.similarity-threshold:0.6}") double similarityThreshold,
+            @Value("${buildtracking.item-matching.pg-trgm:false}") boolean pgTrgmEnabled) {
         this.itemRepository = itemRepository;
+        this.catalogIndex = catalogIndex;
+        this.supplierItemMappingService = supplierItemMappingService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.similarityThreshold = Math.min(1, Math.max(0.1, similarityThreshold));
+        this.pgTrgmEnabled = pgTrgmEnabled;
+    }
+
+    /**
+     * Creates the pg_trgm extension and the GIN index used by the database
+     * fallback. If that is not possible (e.g. missing privileges), the fallback
+     * is disabled and only the in-memory index is used.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preparePgTrgm() {
+        if (!pgTrgmEnabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_item_description_trgm "
+                    + "ON item USING gin (item_description gin_trgm_ops)");
+            log.info("pg_trgm similarity fallback enabled");
+        } catch (DataAccessException e) {
+            pgTrgmEnabled = false;
+            log.warn("pg_trgm is not available, similarity fallback disabled: {}", e.getMessage());
+        }
     }
 
     @Override
-    public Item findOrCreateItem(ParsedInvoiceItemDTO parsedItem, Project project) {
-        // Strategy 1: Try to find by description exact match
-        Optional<Item> existingItem = itemRepository.findByDescription(parsedItem.getDescription());
+    public ItemMatch findOrCreateItem(ParsedInvoiceItemDTO parsedItem, String supplierNit, Project project) {
+        boolean hasCode = parsedItem.getItemCode() != null && !parsedItem.getItemCode().isEmpty();
+        int confidence = 100;
+
+        // Strategy 0: item already mapped to this supplier's item code
+        MatchType matchType = MatchType.SUPPLIER_CODE;
+        Optional<Item> existingItem = hasCode
+                ? supplierItemMappingService.findItemId(supplierNit, parsedItem.getItemCode())
+                        .flatMap(id -> loadItem(id, project))
+                : Optional.empty();
+
+        // Strategy 1: description match; Strategy 2: supplier item code stored as
+        // the item name
+        if (existingItem.isEmpty()) {
+            matchType = MatchType.DESCRIPTION;
+            Optional<Long> indexedId = catalogIndex.findByDescription(parsedItem.getDescription());
+            if (indexedId.isEmpty() && hasCode) {
+                matchType = MatchType.CODE;
+                indexedId = catalogIndex.findByCode(parsedItem.getItemCode());
+            }
+            existingItem = indexedId.flatMap(id -> loadItem(id, project));
+        }
+
+        if (existingItem.isEmpty()) {
+            existingItem = findInDatabase(parsedItem, hasCode);
+            if (existingItem.isPresent()) {
+                catalogIndex.register(existingItem.get());
+                matchType = parsedItem.getDescription() != null
+                        && parsedItem.getDescription().equals(existingItem.get().getDescription())
+                                ? MatchType.DESCRIPTION
+                                : MatchType.CODE;
+            }
+        }
+
+        // Strategy 3: most similar description
+        if (existingItem.isEmpty()) {
+            Optional<SimilarItem> similar = findSimilar(parsedItem.getDescription());
+            if (similar.isPresent()) {
+                existingItem = loadItem(similar.get().itemId(), project);
+                matchType = MatchType.SIMILAR;
+                confidence = (int) Math.round(similar.get().similarity() * 100);
+            }
+        }
 
         if (existingItem.isPresent()) {
             Item item = existingItem.get();
-            log.info("Found existing item by description: {} (ID: {})", item.getDescription(), item.getId());
+            if (matchType == MatchType.SIMILAR) {
+                log.info("Matched '{}' to similar item {} ({}%)", parsedItem.getDescription(), item.getId(),
+                        confidence);
+            } else {
+                log.debug("Found existing item for '{}' (ID: {})", parsedItem.getDescription(), item.getId());
+            }
 
             // Add project if not already associated (only if project is provided)
             if (project != null && !item.getProjects().contains(project)) {
@@ -41,47 +143,75 @@ public class ItemMatchingServiceImpl implements ItemMatchingService {
                 log.info("Associated project {} with item {}", project.getId(), item.getId());
             }
 
-            return item;
-        }
-
-        // Strategy 2: If itemCode is present, try to find by name (assuming itemCode
-        // could be in name)
-        if (parsedItem.getItemCode() != null && !parsedItem.getItemCode().isEmpty()) {
-            Optional<Item> byName = itemRepository.findByNameContainingIgnoreCase(parsedItem.getItemCode());
-            if (byName.isPresent()) {
-                Item item = byName.get();
-                log.info("Found existing item by code in name: {} (ID: {})", item.getName(), item.getId());
-
-                if (project != null && !item.getProjects().contains(project)) {
-                    item.getProjects().add(project);
-                    itemRepository.save(item);
-                    log.info("Associated project {} with item {}", project.getId(), item.getId());
-                }
-
-                return item;
+            if (hasCode && matchType != MatchType.SUPPLIER_CODE) {
+                supplierItemMappingService.learn(supplierNit, parsedItem.getItemCode(), item);
             }
+            return new ItemMatch(item, confidence, matchType);
         }
 
-        // Strategy 3: Create new item
+        // Strategy 4: Create new item
         log.info("No existing item found. Creating new item from invoice data: {}", parsedItem.getDescription());
 
         Item newItem = new Item();
         newItem.setName(parsedItem.getItemCode() != null ? parsedItem.getItemCode()
                 : extractShortName(parsedItem.getDescription()));
         newItem.setDescription(parsedItem.getDescription());
-        newItem.setQuantity(0); // Quantity in catalog is stock, not from invoice
 
         // Only associate with project if provided
         if (project != null) {
-            newItem.setProjects(Collections.singletonList(project));
+            newItem.setProjects(new ArrayList<>(Collections.singletonList(project)));
         } else {
             newItem.setProjects(new ArrayList<>());
         }
 
         Item saved = itemRepository.save(newItem);
+        catalogIndex.register(saved);
         log.info("Created new item: {} (ID: {})", saved.getDescription(), saved.getId());
 
-        return saved;
+        if (hasCode) {
+            supplierItemMappingService.learn(supplierNit, parsedItem.getItemCode(), saved);
+        }
+
+        return new ItemMatch(saved, 100, MatchType.CREATED);
+    }
+
+    /**
+     * Without a project to associate, a reference is enough and no query is
+     * issued; otherwise the item is loaded to check its projects.
+     */
+    private Optional<Item> loadItem(Long itemId, Project project) {
+        if (project == null) {
+            return Optional.of(itemRepository.getReferenceById(itemId));
+        }
+        Optional<Item> item = itemRepository.findById(itemId);
+        if (item.isEmpty()) {
+            // Deleted outside this instance
+            catalogIndex.remove(itemId);
+        }
+        return item;
+    }
+
+    private Optional<Item> findInDatabase(ParsedInvoiceItemDTO parsedItem, boolean hasCode) {
+        Optional<Item> item = parsedItem.getDescription() != null
+                ? itemRepository.findFirstByDescriptionOrderByIdAsc(parsedItem.getDescription())
+                : Optional.empty();
+        if (item.isEmpty() && hasCode) {
+            item = itemRepository.findFirstByNameOrderByIdAsc(parsedItem.getItemCode());
+        }
+        return item;
+    }
+
+    private Optional<SimilarItem> findSimilar(String description) {
+        Optional<SimilarItem> similar = catalogIndex.findSimilar(description, similarityThreshold);
+        if (similar.isPresent() || !pgTrgmEnabled || description == null) {
+            return similar;
+        }
+        // pg_trgm scores whole descriptions without unit/stop-word
+        // normalization, so the same threshold is slightly stricter here
+        return itemRepository.findMostSimilarByDescription(description).stream()
+                .map(row -> new SimilarItem(((Number) row[0]).longValue(), ((Number) row[1]).doubleValue()))
+                .filter(candidate -> candidate.similarity() >= similarityThreshold)
+                .findFirst();
     }
 
     /**
@@ -1,19 +1,19 @@
 package com.construmedicis.buildtracking.item.services.impl;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import com.construmedicis.buildtracking.invoice.models.InvoiceItem;
-import com.construmedicis.buildtracking.invoice.repository.InvoiceItemRepository;
 import com.construmedicis.buildtracking.item.dto.ItemDTO;
 import com.construmedicis.buildtracking.item.models.Item;
 import com.construmedicis.buildtracking.item.repository.ItemRepository;
 import com.construmedicis.buildtracking.project.repository.ProjectRepository;
+import com.construmedicis.buildtracking.item.services.ItemCatalogIndex;
 import com.construmedicis.buildtracking.item.services.ItemService;
+import com.construmedicis.buildtracking.item.services.SupplierItemMappingService;
 import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
 import com.construmedicis.buildtracking.util.response.Response;
 import com.construmedicis.buildtracking.util.response.handler.ResponseHandler;
 
-import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -23,13 +23,19 @@ public class ItemServiceImpl implements ItemService {
 
     private final ItemRepository repository;
     private final ProjectRepository projectRepository;
-    private final InvoiceItemRepository invoiceItemRepository;
+    private final ItemCatalogIndex catalogIndex;
+    private final SupplierItemMappingService supplierItemMappingService;
 
     public ItemServiceImpl(ItemRepository repository, ProjectRepository projectRepository,
-            InvoiceItemRepository invoiceItemRepository) {
+            ItemCatalogIndex catalogIndex, SupplierItemMappingService supplierItemMappingService) {
         this.repository = repository;
         this.projectRepository = projectRepository;
-        this.invoiceItemRepository = invoiceItemRepository;
+        this.catalogIndex = catalogIndex;
+        this.supplierItemMappingService = supplierItemMappingService;
+    }
+
+    private static int currentQuantity(Item item) {
+        return item.getQuantity() != null ? item.getQuantity() : 0;
     }
 
     private Item fromDTO(ItemDTO dto) {
@@ -39,7 +45,6 @@ public class ItemServiceImpl implements ItemService {
         i.setId(dto.getId());
         i.setName(dto.getName());
         i.setDescription(dto.getDescription());
-        i.setQuantity(dto.getQuantity());
         if (dto.getProjectIds() != null) {
             var projects = dto.getProjectIds().stream()
                     .map(pid -> projectRepository.findById(pid)
@@ -65,25 +70,36 @@ public class ItemServiceImpl implements ItemService {
     }
 
     @Override
+    @Transactional
     public Response<ItemDTO> save(ItemDTO item) {
+        // La cantidad sale del libro de stock (facturas asignadas): un ítem nuevo
+        // arranca en cero
+        if (item.getQuantity() != null && item.getQuantity() != 0) {
+            throw new BusinessRuleException("item.quantity.read.only");
+        }
         Item i = fromDTO(item);
         Item saved = repository.save(i);
+        catalogIndex.register(saved);
         return new ResponseHandler<>(201, "Item saved", "/api/items", toDTO(saved)).getResponse();
     }
 
     @Override
+    @Transactional
     public Response<ItemDTO> update(Long id, ItemDTO itemDTO) {
         Optional<Item> opt = repository.findById(id);
         if (opt.isEmpty())
             throw new BusinessRuleException("item.not.found");
 
         Item item = opt.get();
+        // Se acepta la cantidad actual (el cliente reenvía lo que leyó con GET),
+        // pero no un valor distinto: solo el libro de stock la modifica
+        if (itemDTO.getQuantity() != null && !itemDTO.getQuantity().equals(currentQuantity(item))) {
+            throw new BusinessRuleException("item.quantity.read.only");
+        }
         if (itemDTO.getName() != null)
             item.setName(itemDTO.getName());
         if (itemDTO.getDescription() != null)
             item.setDescription(itemDTO.getDescription());
-        if (itemDTO.getQuantity() != null)
-            item.setQuantity(itemDTO.getQuantity());
 
         if (itemDTO.getProjectIds() != null) {
             var projects = itemDTO.getProjectIds().stream()
@@ -94,6 +110,7 @@ public class ItemServiceImpl implements ItemService {
         }
 
         Item updated = repository.save(item);
+        catalogIndex.register(updated);
         return new ResponseHandler<>(200, "Item updated", "/api/items/{id}", toDTO(updated)).getResponse();
     }
 
@@ -110,33 +127,16 @@ public class ItemServiceImpl implements ItemService {
     }
 
     @Override
+    @Transactional
     public Response<Void> deleteById(Long id) {
         if (!repository.existsById(id))
             throw new BusinessRuleException("item.not.found");
+        supplierItemMappingService.deleteByItemId(id);
         repository.deleteById(id);
+        catalogIndex.remove(id);
         return new ResponseHandler<Void>(200, "Item deleted", "/api/items/{id}", null).getResponse();
     }
 
-    @Override
-    public void updateItemStock(Long itemId) {
-        // Buscar todos los invoice items asociados a este item
-        List<InvoiceItem> invoiceItems = invoiceItemRepository.findByItemId(itemId);
-
-        // Sumar las cantidades SOLO de invoice items cuyas facturas estén asignadas a
-        // un proyecto
-        BigDecimal totalQuantity = invoiceItems.stream()
-                .filter(invoiceItem -> invoiceItem.getInvoice() != null
-                        && invoiceItem.getInvoice().getProject() != null)
-                .map(InvoiceItem::getQuantity)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        // Actualizar el stock del item en el catálogo
-        Item item = repository.findById(itemId)
-                .orElseThrow(() -> new BusinessRuleException("item.not.found"));
-        item.setQuantity(totalQuantity.intValue());
-        repository.save(item);
-    }
-
     private ItemDTO toDTO(Item i) {
         if (i == null)
             return null;
@@ -144,7 +144,7 @@ public class ItemServiceImpl implements ItemService {
                 .id(i.getId())
                 .name(i.getName())
                 .description(i.getDescription())
-                .quantity(i.getQuantity())
+                .quantity(i.getQuantity() != null ? i.getQuantity() : 0)
                 .projectIds(i.getProjects() != null
                         ? i.getProjects().stream().map(p -> p.getId()).collect(Collectors.toList())
                         : null)
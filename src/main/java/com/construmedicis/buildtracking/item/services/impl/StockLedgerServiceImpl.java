@@ -0,0 +1,349 @@
+package com.construmedicis.buildtracking.item.services.impl;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.construmedicis.buildtracking.invoice.models.InvoiceItem;
+import com.construmedicis.buildtracking.invoice.repository.InvoiceItemRepository;
+import com.construmedicis.buildtracking.item.dto.ProjectStockDTO;
+import com.construmedicis.buildtracking.item.dto.StockReconciliationDTO;
+import com.construmedicis.buildtracking.item.models.Item;
+import com.construmedicis.buildtracking.item.models.StockMovement;
+import com.construmedicis.buildtracking.item.models.StockMovement.MovementType;
+import com.construmedicis.buildtracking.item.repository.ItemProjectStockRepository;
+import com.construmedicis.buildtracking.item.repository.ItemRepository;
+import com.construmedicis.buildtracking.item.repository.StockMovementRepository;
+import com.construmedicis.buildtracking.item.services.StockLedgerService;
+import com.construmedicis.buildtracking.project.models.Project;
+import com.construmedicis.buildtracking.project.repository.ProjectRepository;
+import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
+import com.construmedicis.buildtracking.util.response.Response;
+import com.construmedicis.buildtracking.util.response.handler.ResponseHandler;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+public class StockLedgerServiceImpl implements StockLedgerService {
+
+    // Orden de bloqueo de los saldos por proyecto: ítem y luego proyecto
+    private static final Comparator<StockKey> KEY_ORDER = Comparator.comparing(StockKey::itemId)
+            .thenComparing(StockKey::projectId);
+
+    private final StockMovementRepository movementRepository;
+    private final ItemRepository itemRepository;
+    private final ItemProjectStockRepository projectStockRepository;
+    private final InvoiceItemRepository invoiceItemRepository;
+    private final ProjectRepository projectRepository;
+
+    public StockLedgerServiceImpl(StockMovementRepository movementRepository, ItemRepository itemRepository,
+            ItemProjectStockRepository projectStockRepository, InvoiceItemRepository invoiceItemRepository,
+            ProjectRepository projectRepository) {
+        this.movementRepository = movementRepository;
+        this.itemRepository = itemRepository;
+        this.projectStockRepository = projectStockRepository;
+        this.invoiceItemRepository = invoiceItemRepository;
+        this.projectRepository = projectRepository;
+    }
+
+    @Override
+    @Transactional
+    public void recordProjectChange(Collection<InvoiceItem> lines, Project previous, Project current) {
+        recordProjectChanges(List.of(new ProjectChange(lines, previous, current)));
+    }
+
+    @Override
+    @Transactional
+    public void recordProjectChanges(List<ProjectChange> changes) {
+        List<StockMovement> movements = new ArrayList<>();
+        for (ProjectChange change : changes) {
+            if (Objects.equals(projectId(change.previous()), projectId(change.current()))) {
+                continue;
+            }
+            if (change.previous() != null) {
+                collect(change.lines(), change.previous().getId(), false, MovementType.UNASSIGNED, movements);
+            }
+            if (change.current() != null) {
+                collect(change.lines(), change.current().getId(), true, MovementType.ASSIGNED, movements);
+            }
+        }
+        post(movements);
+    }
+
+    @Override
+    @Transactional
+    public void recordLinesAdded(Collection<InvoiceItem> lines, Project project) {
+        record(lines, project, true, MovementType.LINE_ADDED);
+    }
+
+    @Override
+    @Transactional
+    public void recordLinesRemoved(Collection<InvoiceItem> lines, Project project) {
+        record(lines, project, false, MovementType.LINE_REMOVED);
+    }
+
+    @Override
+    @Transactional
+    public void recordItemChange(InvoiceItem line, Item previous, Project project) {
+        if (project == null || line.getQuantity() == null || line.getItem() == null
+                || (previous != null && previous.getId().equals(line.getItem().getId()))) {
+            return;
+        }
+        List<StockMovement> movements = new ArrayList<>();
+        BigDecimal cost = lineCost(line);
+        if (previous != null) {
+            add(movements, previous.getId(), project.getId(), line.getId(), line.getQuantity().negate(),
+                    cost.negate(), MovementType.ITEM_CHANGED);
+        }
+        add(movements, line.getItem().getId(), project.getId(), line.getId(), line.getQuantity(), cost,
+                MovementType.ITEM_CHANGED);
+        post(movements);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Response<List<ProjectStockDTO>> findProjectStock(Long projectId) {
+        if (!projectRepository.existsById(projectId)) {
+            throw new BusinessRuleException("project.not.found");
+        }
+        List<ProjectStockDTO> materials = new ArrayList<>();
+        for (Object[] row : projectStockRepository.findBillOfMaterials(projectId)) {
+            BigDecimal quantity = (BigDecimal) row[3];
+            BigDecimal totalCost = (BigDecimal) row[4];
+            materials.add(ProjectStockDTO.builder()
+                    .itemId((Long) row[0])
+                    .itemName((String) row[1])
+                    .itemDescription((String) row[2])
+                    .quantity(quantity)
+                    .totalCost(totalCost)
+                    .averageUnitPrice(quantity.signum() != 0 ? totalCost.divide(quantity, 2, RoundingMode.HALF_UP)
+                            : null)
+                    .build());
+        }
+        return new ResponseHandler<>(200, "Project stock found", "/api/items/project/{projectId}/stock", materials)
+                .getResponse();
+    }
+
+    /**
+     * Todas las consultas ven la misma instantánea (REPEATABLE READ), así los
+     * movimientos que se registran mientras tanto no aparecen como diferencias.
+     * Si uno de ellos toca un saldo que se está corrigiendo, la transacción
+     * falla por serialización y la siguiente conciliación lo vuelve a revisar.
+     */
+    @Override
+    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    public Response<StockReconciliationDTO> reconcile() {
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        for (Object[] row : itemRepository.findStockBalances()) {
+            balances.put((Long) row[0], (BigDecimal) row[1]);
+        }
+
+        Map<StockKey, Totals> expected = sumByKey(invoiceItemRepository.sumAssignedByItemAndProject());
+        Map<StockKey, Totals> ledger = sumByKey(movementRepository.sumByItemAndProject());
+        Map<StockKey, Totals> projectBalances = sumByKey(projectStockRepository.findAllBalances());
+
+        Set<StockKey> keys = new HashSet<>(expected.keySet());
+        keys.addAll(ledger.keySet());
+        List<StockMovement> adjustments = new ArrayList<>();
+        for (StockKey key : keys) {
+            // Los movimientos de ítems ya borrados no afectan ningún saldo
+            if (!balances.containsKey(key.itemId())) {
+                continue;
+            }
+            Totals difference = expected.getOrDefault(key, Totals.ZERO)
+                    .subtract(ledger.getOrDefault(key, Totals.ZERO));
+            if (!difference.isZero()) {
+                adjustments.add(StockMovement.builder()
+                        .itemId(key.itemId())
+                        .projectId(key.projectId())
+                        .quantity(difference.quantity())
+                        .amount(difference.cost())
+                        .movementType(MovementType.RECONCILED)
+                        .build());
+            }
+        }
+        movementRepository.saveAll(adjustments);
+
+        Set<StockKey> projectKeys = new HashSet<>(expected.keySet());
+        projectKeys.addAll(projectBalances.keySet());
+        List<StockKey> mismatchedProjects = projectKeys.stream()
+                .filter(key -> balances.containsKey(key.itemId()))
+                .filter(key -> !expected.getOrDefault(key, Totals.ZERO)
+                        .equalTo(projectBalances.getOrDefault(key, Totals.ZERO)))
+                .sorted(KEY_ORDER)
+                .toList();
+        if (!mismatchedProjects.isEmpty()) {
+            projectStockRepository.recomputeStock(mismatchedProjects.stream().map(StockKey::itemId).toArray(Long[]::new),
+                    mismatchedProjects.stream().map(StockKey::projectId).toArray(Long[]::new));
+        }
+
+        Map<Long, BigDecimal> expectedByItem = new HashMap<>();
+        expected.forEach((key, totals) -> expectedByItem.merge(key.itemId(), totals.quantity(), BigDecimal::add));
+        List<Long> mismatched = new ArrayList<>();
+        for (Map.Entry<Long, BigDecimal> entry : new TreeMap<>(balances).entrySet()) {
+            BigDecimal stock = expectedByItem.getOrDefault(entry.getKey(), BigDecimal.ZERO);
+            if (entry.getValue() == null || entry.getValue().compareTo(stock) != 0) {
+                mismatched.add(entry.getKey());
+            }
+        }
+        // Un solo UPDATE ... FROM (SELECT ... GROUP BY) recalcula todos los saldos que no cuadran
+        if (!mismatched.isEmpty()) {
+            itemRepository.recomputeStock(mismatched.toArray(Long[]::new));
+        }
+        int balancesCorrected = mismatched.size();
+
+        if (adjustments.isEmpty() && balancesCorrected == 0 && mismatchedProjects.isEmpty()) {
+            log.info("Conciliación de stock: {} ítems sin diferencias", balances.size());
+        } else {
+            log.warn("Conciliación de stock: {} ítems, {} ajustes en el libro, {} saldos corregidos, "
+                    + "{} saldos por proyecto recalculados", balances.size(), adjustments.size(),
+                    balancesCorrected, mismatchedProjects.size());
+        }
+
+        StockReconciliationDTO report = StockReconciliationDTO.builder()
+                .checkedAt(LocalDateTime.now())
+                .itemsChecked(balances.size())
+                .ledgerAdjustments(adjustments.size())
+                .balancesCorrected(balancesCorrected)
+                .projectBalancesCorrected(mismatchedProjects.size())
+                .build();
+        return new ResponseHandler<>(200, "Stock reconciled", "/api/items/stock/reconcile", report).getResponse();
+    }
+
+    private void record(Collection<InvoiceItem> lines, Project project, boolean incoming, MovementType type) {
+        if (project == null) {
+            return;
+        }
+        List<StockMovement> movements = new ArrayList<>();
+        collect(lines, project.getId(), incoming, type, movements);
+        post(movements);
+    }
+
+    private static void collect(Collection<InvoiceItem> lines, Long projectId, boolean incoming, MovementType type,
+            List<StockMovement> movements) {
+        if (lines == null) {
+            return;
+        }
+        for (InvoiceItem line : lines) {
+            if (line.getItem() != null && line.getQuantity() != null) {
+                BigDecimal quantity = incoming ? line.getQuantity() : line.getQuantity().negate();
+                BigDecimal cost = incoming ? lineCost(line) : lineCost(line).negate();
+                add(movements, line.getItem().getId(), projectId, line.getId(), quantity, cost, type);
+            }
+        }
+    }
+
+    private static void add(List<StockMovement> movements, Long itemId, Long projectId, Long invoiceItemId,
+            BigDecimal quantity, BigDecimal cost, MovementType type) {
+        if (quantity.signum() == 0 && cost.signum() == 0) {
+            return;
+        }
+        movements.add(StockMovement.builder()
+                .itemId(itemId)
+                .projectId(projectId)
+                .invoiceItemId(invoiceItemId)
+                .quantity(quantity)
+                .amount(cost)
+                .movementType(type)
+                .build());
+    }
+
+    private static BigDecimal lineCost(InvoiceItem line) {
+        return line.getLineTotal() != null ? line.getLineTotal() : BigDecimal.ZERO;
+    }
+
+    /**
+     * Inserta los movimientos (en batch) y ajusta con una sentencia cada uno
+     * los saldos de los ítems y los saldos por proyecto, con las llaves en
+     * orden para que dos transacciones que tocan los mismos saldos tiendan a
+     * bloquearlos en el mismo orden.
+     */
+    private void post(List<StockMovement> movements) {
+        if (movements.isEmpty()) {
+            return;
+        }
+        movementRepository.saveAll(movements);
+
+        TreeMap<Long, BigDecimal> itemDeltas = new TreeMap<>();
+        TreeMap<StockKey, Totals> projectDeltas = new TreeMap<>(KEY_ORDER);
+        for (StockMovement movement : movements) {
+            itemDeltas.merge(movement.getItemId(), movement.getQuantity(), BigDecimal::add);
+            projectDeltas.merge(new StockKey(movement.getItemId(), movement.getProjectId()),
+                    new Totals(movement.getQuantity(), movement.getAmount()), Totals::add);
+        }
+
+        itemDeltas.values().removeIf(delta -> delta.signum() == 0);
+        if (!itemDeltas.isEmpty()) {
+            itemRepository.addToStock(itemDeltas.keySet().toArray(Long[]::new),
+                    itemDeltas.values().toArray(BigDecimal[]::new));
+        }
+
+        projectDeltas.values().removeIf(Totals::isZero);
+        if (!projectDeltas.isEmpty()) {
+            projectStockRepository.addToStock(
+                    projectDeltas.keySet().stream().map(StockKey::itemId).toArray(Long[]::new),
+                    projectDeltas.keySet().stream().map(StockKey::projectId).toArray(Long[]::new),
+                    projectDeltas.values().stream().map(Totals::quantity).toArray(BigDecimal[]::new),
+                    projectDeltas.values().stream().map(Totals::cost).toArray(BigDecimal[]::new));
+        }
+    }
+
+    // Filas [itemId, projectId, cantidad, costo]
+    private static Map<StockKey, Totals> sumByKey(List<Object[]> rows) {
+        Map<StockKey, Totals> sums = new HashMap<>();
+        for (Object[] row : rows) {
+            sums.merge(new StockKey((Long) row[0], (Long) row[1]),
+                    new Totals((BigDecimal) row[2], (BigDecimal) row[3]), Totals::add);
+        }
+        return sums;
+    }
+
+    private static Long projectId(Project project) {
+        return project != null ? project.getId() : null;
+    }
+
+    private record StockKey(Long itemId, Long projectId) {
+    }
+
+    private record Totals(BigDecimal quantity, BigDecimal cost) {
+
+        static final Totals ZERO = new Totals(BigDecimal.ZERO, BigDecimal.ZERO);
+
+        Totals {
+            quantity = quantity != null ? quantity : BigDecimal.ZERO;
+            cost = cost != null ? cost : BigDecimal.ZERO;
+        }
+
+        Totals add(Totals other) {
+            return new Totals(quantity.add(other.quantity), cost.add(other.cost));
+        }
+
+        Totals subtract(Totals other) {
+            return new Totals(quantity.subtract(other.quantity), cost.subtract(other.cost));
+        }
+
+        boolean isZero() {
+            return quantity.signum() == 0 && cost.signum() == 0;
+        }
+
+        // Compara por valor: 2.0000 y 2 son iguales
+        boolean equalTo(Totals other) {
+            return quantity.compareTo(other.quantity) == 0 && cost.compareTo(other.cost) == 0;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.construmedicis.buildtracking.item.services.impl;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.construmedicis.buildtracking.item.services.StockLedgerService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Concilia el libro de stock al arrancar (en una base existente es lo que
+ * carga los saldos iniciales) y luego periódicamente.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "buildtracking.stock.reconcile-enabled", havingValue = "true", matchIfMissing = true)
+public class StockReconciliationJob {
+
+    private final StockLedgerService stockLedgerService;
+
+    public StockReconciliationJob(StockLedgerService stockLedgerService) {
+        this.stockLedgerService = stockLedgerService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        reconcile();
+    }
+
+    @Scheduled(cron = "${buildtracking.stock.reconcile-cron:0 0 3 * * *}")
+    public void reconcile() {
+        try {
+            stockLedgerService.reconcile();
+        } catch (RuntimeException e) {
+            log.error("Error conciliando el stock: {}", e.getMessage(), e);
+        }
+    }
+}
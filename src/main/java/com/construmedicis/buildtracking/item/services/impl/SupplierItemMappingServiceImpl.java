@@ -0,0 +1,80 @@
+package com.construmedicis.buildtracking.item.services.impl;
+
+import java.util.Optional;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.construmedicis.buildtracking.item.models.Item;
+import com.construmedicis.buildtracking.item.models.SupplierItemMapping;
+import com.construmedicis.buildtracking.item.models.SupplierItemMapping.MappingSource;
+import com.construmedicis.buildtracking.item.repository.SupplierItemMappingRepository;
+import com.construmedicis.buildtracking.item.services.ItemCatalogIndex;
+import com.construmedicis.buildtracking.item.services.SupplierItemMappingService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Las consultas van al caché de {@link ItemCatalogIndex} (cargado al
+ * arrancar); la tabla solo se lee al escribir. NIT y código se guardan
+ * normalizados como en el índice, así "ab-12" y "AB-12 " son el mismo código.
+ */
+@Service
+@Slf4j
+public class SupplierItemMappingServiceImpl implements SupplierItemMappingService {
+
+    private final SupplierItemMappingRepository repository;
+    private final ItemCatalogIndex catalogIndex;
+
+    public SupplierItemMappingServiceImpl(SupplierItemMappingRepository repository, ItemCatalogIndex catalogIndex) {
+        this.repository = repository;
+        this.catalogIndex = catalogIndex;
+    }
+
+    @Override
+    public Optional<Long> findItemId(String supplierNit, String supplierItemCode) {
+        return catalogIndex.findBySupplierCode(supplierNit, supplierItemCode);
+    }
+
+    @Override
+    @Transactional
+    public void learn(String supplierNit, String supplierItemCode, Item item) {
+        if (isBlank(supplierNit) || isBlank(supplierItemCode)
+                || catalogIndex.findBySupplierCode(supplierNit, supplierItemCode).isPresent()) {
+            return;
+        }
+        save(supplierNit, supplierItemCode, item, MappingSource.MATCHED);
+    }
+
+    @Override
+    @Transactional
+    public void correct(String supplierNit, String supplierItemCode, Item item) {
+        if (isBlank(supplierNit) || isBlank(supplierItemCode)) {
+            return;
+        }
+        save(supplierNit, supplierItemCode, item, MappingSource.MANUAL);
+        log.info("Código {} del proveedor {} reasignado manualmente al ítem {}", supplierItemCode, supplierNit,
+                item.getId());
+    }
+
+    @Override
+    @Transactional
+    public void deleteByItemId(Long itemId) {
+        repository.deleteByItemId(itemId);
+    }
+
+    private void save(String supplierNit, String supplierItemCode, Item item, MappingSource source) {
+        String nit = ItemCatalogIndexImpl.normalize(supplierNit);
+        String code = ItemCatalogIndexImpl.normalize(supplierItemCode);
+        SupplierItemMapping mapping = repository.findBySupplierNitAndSupplierItemCode(nit, code)
+                .orElseGet(() -> SupplierItemMapping.builder().supplierNit(nit).supplierItemCode(code).build());
+        mapping.setItem(item);
+        mapping.setSource(source);
+        repository.save(mapping);
+        catalogIndex.registerSupplierCode(nit, code, item.getId());
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -0,0 +1,342 @@
+package com.construmedicis.buildtracking.item.services.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import com.construmedicis.buildtracking.item.services.ItemCatalogIndex.SimilarItem;
+
+/**
+ * Índice invertido trigrama → ids de ítems para el emparejamiento aproximado
+ * de descripciones. Los trigramas se arman como en pg_trgm (por palabra, con
+ * dos espacios al inicio y uno al final) sobre tokens normalizados, y la
+ * similitud es la de Jaccard entre los conjuntos de trigramas.
+ * <p>
+ * Los candidatos salen solo de las listas de los trigramas menos frecuentes
+ * de la consulta (filtro por prefijo): un ítem con similitud &gt;= umbral
+ * comparte necesariamente alguno de ellos. Las coincidencias se cuentan en
+ * arreglos indexados por slot, sin boxing ni conjuntos intermedios.
+ */
+final class TrigramIndex {
+
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^A-Z0-9]+");
+    // "50KG" -> "50 KG", "PVC1/2" -> "PVC 1 2"
+    private static final Pattern LETTER_DIGIT = Pattern.compile("(?<=[A-Z])(?=[0-9])|(?<=[0-9])(?=[A-Z])");
+    private static final Set<String> STOP_WORDS = Set.of("X", "DE", "DEL", "LA", "EL", "LOS", "LAS", "Y", "CON",
+            "PARA", "EN", "POR", "A");
+    private static final Map<String, String> UNITS = Map.ofEntries(
+            Map.entry("KGS", "KG"), Map.entry("KILO", "KG"), Map.entry("KILOS", "KG"),
+            Map.entry("MT", "M"), Map.entry("MTS", "M"), Map.entry("METRO", "M"), Map.entry("METROS", "M"),
+            Map.entry("UND", "UN"), Map.entry("UNID", "UN"), Map.entry("UNIDAD", "UN"), Map.entry("UNIDADES", "UN"),
+            Map.entry("GL", "GAL"), Map.entry("GALON", "GAL"), Map.entry("GALONES", "GAL"),
+            Map.entry("LTS", "L"), Map.entry("LT", "L"), Map.entry("LITRO", "L"), Map.entry("LITROS", "L"),
+            Map.entry("PULGADA", "PULG"), Map.entry("PULGADAS", "PULG"));
+
+    private static final int BINARY_SEARCH_COST = 32;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> trigramIds = new HashMap<>();
+    // Trigrama -> posiciones (slots) de los ítems que lo contienen
+    private final List<IntList> postings = new ArrayList<>();
+    // Cada ítem ocupa un slot denso para contar coincidencias en arreglos
+    private final Map<Long, Integer> slots = new HashMap<>();
+    private final IntList freeSlots = new IntList();
+    private long[] slotItemIds = new long[1024];
+    // Trigramas (ids ordenados) del ítem de cada slot
+    private int[][] slotProfiles = new int[1024][];
+    private int slotCount;
+
+    private final ThreadLocal<SearchState> searchState = ThreadLocal.withInitial(SearchState::new);
+
+    /**
+     * Trigramas de un texto ya pasado por {@link ItemCatalogIndexImpl#normalize}:
+     * sin puntuación, con números y letras separados, unidades unificadas y sin
+     * palabras vacías.
+     */
+    static Set<String> trigrams(String normalized) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        if (normalized == null) {
+            return trigrams;
+        }
+        String spaced = LETTER_DIGIT.matcher(NON_ALPHANUMERIC.matcher(normalized).replaceAll(" ")).replaceAll(" ");
+        for (String token : spaced.trim().split(" ")) {
+            if (token.isEmpty() || STOP_WORDS.contains(token)) {
+                continue;
+            }
+            String padded = "  " + UNITS.getOrDefault(token, token) + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+
+    static double similarity(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int shared = 0;
+        for (String trigram : a) {
+            if (b.contains(trigram)) {
+                shared++;
+            }
+        }
+        return (double) shared / (a.size() + b.size() - shared);
+    }
+
+    void add(long itemId, Set<String> trigrams) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(itemId);
+            if (trigrams.isEmpty()) {
+                return;
+            }
+            int slot = allocateSlot();
+            int[] profile = new int[trigrams.size()];
+            int i = 0;
+            for (String trigram : trigrams) {
+                Integer id = trigramIds.get(trigram);
+                if (id == null) {
+                    id = postings.size();
+                    trigramIds.put(trigram, id);
+                    postings.add(new IntList());
+                }
+                postings.get(id).add(slot);
+                profile[i++] = id;
+            }
+            Arrays.sort(profile);
+            slots.put(itemId, slot);
+            slotItemIds[slot] = itemId;
+            slotProfiles[slot] = profile;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(long itemId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(itemId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ítem más parecido con similitud &gt;= threshold; a igual similitud gana
+     * el de menor id.
+     *
+     * @param excluded ids a ignorar (cambiados o borrados en la transacción
+     *                 actual)
+     */
+    Optional<SimilarItem> search(Set<String> query, double threshold, Set<Long> excluded) {
+        int querySize = query.size();
+        if (querySize == 0) {
+            return Optional.empty();
+        }
+        // Intersección mínima para alcanzar el umbral con el ítem más corto
+        // posible; basta mirar querySize - minShared + 1 trigramas
+        int minShared = Math.max(1, (int) Math.ceil(threshold * querySize - 1e-9));
+        int probes = querySize - minShared + 1;
+
+        lock.readLock().lock();
+        try {
+            int[] known = new int[querySize];
+            int knownCount = 0;
+            for (String trigram : query) {
+                Integer id = trigramIds.get(trigram);
+                if (id != null) {
+                    known[knownCount++] = id;
+                }
+            }
+            // Los trigramas que ningún ítem tiene son los más raros de todos
+            probes -= querySize - knownCount;
+            if (probes <= 0) {
+                return Optional.empty();
+            }
+
+            // Ordenar por frecuencia: (tamaño de la lista << 32) | id
+            long[] bySize = new long[knownCount];
+            for (int i = 0; i < knownCount; i++) {
+                bySize[i] = ((long) postings.get(known[i]).size() << 32) | known[i];
+            }
+            Arrays.sort(bySize);
+            int probeLists = Math.min(probes, knownCount);
+
+            SearchState state = searchState.get();
+            state.ensureCapacity(slotCount);
+            int[] counts = state.counts;
+            IntList candidates = state.candidates;
+            try {
+                // Candidatos: ítems en alguna de las listas menos frecuentes
+                for (int p = 0; p < probeLists; p++) {
+                    IntList posting = postings.get((int) bySize[p]);
+                    for (int i = 0; i < posting.size(); i++) {
+                        int slot = posting.get(i);
+                        if (counts[slot]++ == 0) {
+                            candidates.add(slot);
+                        }
+                    }
+                }
+
+                // Resto de trigramas, de menos a más frecuente. Cuando la lista es
+                // más larga que los candidatos, primero se descartan los que ya no
+                // alcanzan minShared ni apareciendo en todas las listas que faltan;
+                // luego se recorre la lista o se busca el trigrama en el perfil de
+                // cada candidato, lo que sea más barato (una búsqueda binaria salta
+                // a otra zona de memoria, un elemento de la lista no)
+                for (int p = probeLists; p < knownCount; p++) {
+                    int trigramId = (int) bySize[p];
+                    IntList posting = postings.get(trigramId);
+                    if (candidates.size() <= posting.size()) {
+                        prune(candidates, counts, minShared - (knownCount - p));
+                        if (candidates.size() == 0) {
+                            break;
+                        }
+                    }
+
+                    if ((long) candidates.size() * BINARY_SEARCH_COST < posting.size()) {
+                        for (int c = 0; c < candidates.size(); c++) {
+                            int slot = candidates.get(c);
+                            if (Arrays.binarySearch(slotProfiles[slot], trigramId) >= 0) {
+                                counts[slot]++;
+                            }
+                        }
+                    } else {
+                        for (int i = 0; i < posting.size(); i++) {
+                            int slot = posting.get(i);
+                            if (counts[slot] > 0) {
+                                counts[slot]++;
+                            }
+                        }
+                    }
+                }
+
+                long bestId = -1;
+                double bestSimilarity = 0;
+                for (int c = 0; c < candidates.size(); c++) {
+                    int slot = candidates.get(c);
+                    long itemId = slotItemIds[slot];
+                    int shared = counts[slot];
+                    double similarity = (double) shared / (querySize + slotProfiles[slot].length - shared);
+                    if (similarity >= threshold && !excluded.contains(itemId) && (similarity > bestSimilarity
+                            || (similarity == bestSimilarity && itemId < bestId))) {
+                        bestId = itemId;
+                        bestSimilarity = similarity;
+                    }
+                }
+                return bestId < 0 ? Optional.empty() : Optional.of(new SimilarItem(bestId, bestSimilarity));
+            } finally {
+                for (int c = 0; c < candidates.size(); c++) {
+                    counts[candidates.get(c)] = 0;
+                }
+                candidates.clear();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Deja solo los candidatos con al menos minCount coincidencias; el resto vuelve a cero. */
+    private static void prune(IntList candidates, int[] counts, int minCount) {
+        int live = 0;
+        for (int c = 0; c < candidates.size(); c++) {
+            int slot = candidates.get(c);
+            if (counts[slot] >= minCount) {
+                candidates.set(live++, slot);
+            } else {
+                counts[slot] = 0;
+            }
+        }
+        candidates.truncate(live);
+    }
+
+    private int allocateSlot() {
+        if (freeSlots.size() > 0) {
+            return freeSlots.removeLast();
+        }
+        if (slotCount == slotItemIds.length) {
+            slotItemIds = Arrays.copyOf(slotItemIds, slotCount * 2);
+            slotProfiles = Arrays.copyOf(slotProfiles, slotCount * 2);
+        }
+        return slotCount++;
+    }
+
+    private void removeLocked(long itemId) {
+        Integer slot = slots.remove(itemId);
+        if (slot == null) {
+            return;
+        }
+        for (int trigramId : slotProfiles[slot]) {
+            postings.get(trigramId).remove(slot);
+        }
+        slotProfiles[slot] = null;
+        freeSlots.add(slot);
+    }
+
+    /** Contadores por slot de cada hilo; se dejan en cero al terminar cada búsqueda. */
+    private static final class SearchState {
+        private int[] counts = new int[0];
+        private final IntList candidates = new IntList();
+
+        void ensureCapacity(int slotCount) {
+            if (counts.length < slotCount) {
+                counts = new int[Math.max(slotCount, counts.length * 2)];
+            }
+        }
+    }
+
+    /** Lista de enteros sin boxing; el orden no importa, así que se borra intercambiando con el último. */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+
+        int removeLast() {
+            return values[--size];
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        void truncate(int newSize) {
+            size = newSize;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
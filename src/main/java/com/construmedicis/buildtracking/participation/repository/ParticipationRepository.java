@@ -1,12 +1,19 @@
 package com.construmedicis.buildtracking.participation.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import com.construmedicis.buildtracking.participation.models.Participation;
 
 @Repository
 public interface ParticipationRepository extends JpaRepository<Participation, Long> {
     List<Participation> findByProjectId(Long projectId);
+
+    // Filas [projectId, cantidad]; los proyectos sin participaciones no aparecen
+    @Query("select p.project.id, count(p) from Participation p where p.project.id in :projectIds group by p.project.id")
+    List<Object[]> countByProjectIds(@Param("projectIds") Collection<Long> projectIds);
 }
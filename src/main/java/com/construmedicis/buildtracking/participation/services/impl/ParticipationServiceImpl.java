@@ -6,6 +6,7 @@ import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 
+import com.construmedicis.buildtracking.assignment.services.ProjectAssignmentRuleService;
 import com.construmedicis.buildtracking.employee.repository.EmployeeRepository;
 import com.construmedicis.buildtracking.participation.dto.ParticipationDTO;
 import com.construmedicis.buildtracking.participation.models.Participation;
@@ -22,12 +23,14 @@ public class ParticipationServiceImpl implements ParticipationService {
     private final ParticipationRepository repository;
     private final EmployeeRepository employeeRepository;
     private final ProjectRepository projectRepository;
+    private final ProjectAssignmentRuleService assignmentRuleService;
 
     public ParticipationServiceImpl(ParticipationRepository repository, EmployeeRepository employeeRepository,
-            ProjectRepository projectRepository) {
+            ProjectRepository projectRepository, ProjectAssignmentRuleService assignmentRuleService) {
         this.repository = repository;
         this.employeeRepository = employeeRepository;
         this.projectRepository = projectRepository;
+        this.assignmentRuleService = assignmentRuleService;
     }
 
     @Override
@@ -49,6 +52,8 @@ public class ParticipationServiceImpl implements ParticipationService {
     public Response<ParticipationDTO> save(ParticipationDTO participation) {
         Participation p = fromDTO(participation);
         Participation saved = repository.save(p);
+        // Las reglas EMPLOYEE_PARTICIPATION dependen de cuántas hay por proyecto
+        assignmentRuleService.invalidateRules();
         return new ResponseHandler<>(201, "Participation saved", "/api/participations", toDTO(saved)).getResponse();
     }
 
@@ -57,6 +62,7 @@ public class ParticipationServiceImpl implements ParticipationService {
         if (!repository.existsById(id))
             throw new BusinessRuleException("participation.not.found");
         repository.deleteById(id);
+        assignmentRuleService.invalidateRules();
         return new ResponseHandler<Void>(200, "Participation deleted", "/api/participations/{id}", null).getResponse();
     }
 
@@ -6,6 +6,7 @@ import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 
+import com.construmedicis.buildtracking.assignment.services.ProjectAssignmentRuleService;
 import com.construmedicis.buildtracking.project.dto.ProjectDTO;
 import com.construmedicis.buildtracking.project.models.Project;
 import com.construmedicis.buildtracking.project.repository.ProjectRepository;
@@ -18,9 +19,11 @@ import com.construmedicis.buildtracking.util.response.handler.ResponseHandler;
 public class ProjectServiceImpl implements ProjectService {
 
     private final ProjectRepository repository;
+    private final ProjectAssignmentRuleService assignmentRuleService;
 
-    public ProjectServiceImpl(ProjectRepository repository) {
+    public ProjectServiceImpl(ProjectRepository repository, ProjectAssignmentRuleService assignmentRuleService) {
         this.repository = repository;
+        this.assignmentRuleService = assignmentRuleService;
     }
 
     @Override
@@ -41,6 +44,8 @@ public class ProjectServiceImpl implements ProjectService {
     public Response<ProjectDTO> save(ProjectDTO project) {
         Project p = fromDTO(project);
         Project saved = repository.save(p);
+        // Las reglas compiladas guardan el nombre del proyecto
+        assignmentRuleService.invalidateRules();
         return new ResponseHandler<>(201, "Project saved", "/api/projects", toDTO(saved)).getResponse();
     }
 
@@ -49,6 +54,7 @@ public class ProjectServiceImpl implements ProjectService {
         if (!repository.existsById(id))
             throw new BusinessRuleException("project.not.found");
         repository.deleteById(id);
+        assignmentRuleService.invalidateRules();
         return new ResponseHandler<Void>(200, "Project deleted", "/api/projects/{id}", null).getResponse();
     }
 
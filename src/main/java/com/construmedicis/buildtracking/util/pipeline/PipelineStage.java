@@ -0,0 +1,149 @@
+package com.construmedicis.buildtracking.util.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Etapa de un pipeline con cola acotada y un número fijo de workers (hilos
+ * virtuales).
+ * <p>
+ * Los productores llaman {@link #submit(Object)}, que bloquea cuando la cola
+ * está llena (backpressure hacia la etapa anterior). Cuando todos los
+ * productores terminaron se llama {@link #complete()}, que espera a que los
+ * workers vacíen la cola y finalicen. Así cada etapa puede cerrarse en orden:
+ * primero la de entrada y luego las siguientes.
+ * <p>
+ * Si la etapa se aborta, los elementos que quedaron en cola se entregan al
+ * manejador de descarte para que liberen sus recursos (ej: archivos
+ * temporales).
+ *
+ * @param <T> tipo de elemento que procesa la etapa
+ */
+@Slf4j
+public final class PipelineStage<T> {
+
+    private static final long POLL_MILLIS = 50;
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final StageHandler<T> handler;
+    private final BiConsumer<T, Exception> errorHandler;
+    private final Consumer<T> discardHandler;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean inputClosed;
+    private volatile boolean aborted;
+
+    public PipelineStage(String name, int workerCount, int queueCapacity, StageHandler<T> handler,
+            BiConsumer<T, Exception> errorHandler) {
+        this(name, workerCount, queueCapacity, handler, errorHandler, item -> {
+        });
+    }
+
+    public PipelineStage(String name, int workerCount, int queueCapacity, StageHandler<T> handler,
+            BiConsumer<T, Exception> errorHandler, Consumer<T> discardHandler) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.handler = handler;
+        this.errorHandler = errorHandler;
+        this.discardHandler = discardHandler;
+
+        for (int i = 0; i < Math.max(1, workerCount); i++) {
+            workers.add(Thread.ofVirtual().name(name + "-" + i).start(this::runWorker));
+        }
+    }
+
+    /**
+     * Encola un elemento, bloqueando mientras la cola esté llena. Si la etapa
+     * ya fue abortada el elemento se descarta.
+     */
+    public void submit(T item) throws InterruptedException {
+        if (inputClosed) {
+            if (aborted) {
+                discard(item);
+            }
+            throw new IllegalStateException("La etapa " + name + " ya no acepta elementos");
+        }
+        queue.put(item);
+        if (aborted) {
+            // abort() vació la cola mientras este elemento entraba
+            discardQueued();
+        }
+    }
+
+    /**
+     * Indica que no llegarán más elementos y espera a que los workers terminen
+     * de procesar lo pendiente.
+     */
+    public void complete() throws InterruptedException {
+        inputClosed = true;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Interrumpe los workers sin esperar a que la cola se vacíe; lo que quedó
+     * en cola pasa al manejador de descarte.
+     */
+    public void abort() {
+        aborted = true;
+        inputClosed = true;
+        workers.forEach(Thread::interrupt);
+        discardQueued();
+    }
+
+    private void discardQueued() {
+        List<T> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        pending.forEach(this::discard);
+    }
+
+    private void discard(T item) {
+        try {
+            discardHandler.accept(item);
+        } catch (RuntimeException e) {
+            log.warn("No se pudo descartar un elemento de la etapa {}: {}", name, e.getMessage());
+        }
+    }
+
+    private void runWorker() {
+        try {
+            while (true) {
+                T item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    // Los productores terminan antes de cerrar la entrada, así que
+                    // cola vacía + entrada cerrada significa que no hay más trabajo
+                    if (inputClosed && queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    handler.handle(item);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    errorHandler.accept(item, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Lógica de procesamiento de un elemento de la etapa.
+     */
+    @FunctionalInterface
+    public interface StageHandler<T> {
+        void handle(T item) throws Exception;
+    }
+}
@@ -0,0 +1,68 @@
+package com.construmedicis.buildtracking.util.ratelimit;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket compartido entre hilos: se recarga a una tasa fija hasta su
+ * capacidad (ráfaga máxima).
+ * <p>
+ * {@link #acquire(int)} reserva los tokens de inmediato aunque el saldo quede
+ * negativo y luego espera fuera del lock lo que falte por recargar; así los
+ * llamadores se atienden en orden de llegada y la tasa sostenida nunca supera
+ * la configurada.
+ */
+public final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param tokensPerSecond Tasa de recarga sostenida
+     * @param capacity        Tokens acumulables (ráfaga máxima)
+     */
+    public TokenBucket(double tokensPerSecond, double capacity) {
+        if (tokensPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("La tasa y la capacidad deben ser positivas");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Toma tokens, bloqueando hasta que la tasa lo permita. Una petición mayor
+     * que la capacidad se acepta y deja el saldo en deuda.
+     */
+    public void acquire(int permits) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            tokens -= permits;
+            waitNanos = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Detiene la recarga durante el tiempo indicado: quien pida tokens después
+     * espera al menos ese tiempo. Se usa cuando el servidor indica que se
+     * superó su límite aunque el bucket local tuviera saldo.
+     */
+    public synchronized void pause(Duration duration) {
+        refill();
+        tokens = Math.min(tokens, 0) - duration.toNanos() * tokensPerNano;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+}
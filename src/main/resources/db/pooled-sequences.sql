@@ -0,0 +1,10 @@
+-- Secuencias con optimizador pooled (allocationSize = 50): Hibernate reserva
+-- 50 IDs por llamada a nextval. Se ejecuta antes de inicializar JPA para que
+-- las secuencias creadas con INCREMENT BY 1 coincidan con el allocationSize;
+-- en una base nueva no existen todavía y Hibernate las crea con el incremento
+-- correcto.
+ALTER SEQUENCE IF EXISTS invoice_sequence INCREMENT BY 50;
+ALTER SEQUENCE IF EXISTS invoice_item_sequence INCREMENT BY 50;
+ALTER SEQUENCE IF EXISTS item_id_seq INCREMENT BY 50;
+ALTER SEQUENCE IF EXISTS ingested_attachment_id_seq INCREMENT BY 50;
+ALTER SEQUENCE IF EXISTS stock_movement_id_seq INCREMENT BY 50;
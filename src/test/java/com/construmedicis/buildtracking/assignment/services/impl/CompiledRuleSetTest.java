@@ -0,0 +1,147 @@
+package com.construmedicis.buildtracking.assignment.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.construmedicis.buildtracking.assignment.dto.ProjectAssignmentResultDTO;
+import com.construmedicis.buildtracking.assignment.models.ProjectAssignmentRule;
+import com.construmedicis.buildtracking.assignment.models.ProjectAssignmentRule.RuleType;
+import com.construmedicis.buildtracking.invoice.dto.InvoiceDTO;
+import com.construmedicis.buildtracking.project.models.Project;
+
+class CompiledRuleSetTest {
+
+    @Test
+    void dateSegmentsResolveToFirstCoveringRule() {
+        CompiledRuleSet ruleSet = compile(
+                dateRule(1, "2025-01-10", "2025-01-20"),
+                dateRule(2, "2025-01-01", "2025-01-31"),
+                dateRule(3, "2025-02-01", "2025-02-28"));
+
+        assertThat(projectFor(ruleSet, "2024-12-31")).isNull();
+        assertThat(projectFor(ruleSet, "2025-01-01")).isEqualTo(2L);
+        assertThat(projectFor(ruleSet, "2025-01-09")).isEqualTo(2L);
+        assertThat(projectFor(ruleSet, "2025-01-10")).isEqualTo(1L);
+        assertThat(projectFor(ruleSet, "2025-01-20")).isEqualTo(1L);
+        assertThat(projectFor(ruleSet, "2025-01-21")).isEqualTo(2L);
+        assertThat(projectFor(ruleSet, "2025-01-31")).isEqualTo(2L);
+        assertThat(projectFor(ruleSet, "2025-02-01")).isEqualTo(3L);
+        assertThat(projectFor(ruleSet, "2025-02-28")).isEqualTo(3L);
+        assertThat(projectFor(ruleSet, "2025-03-01")).isNull();
+    }
+
+    @Test
+    void laterRuleDoesNotShadowEarlierOverlappingRule() {
+        CompiledRuleSet ruleSet = compile(
+                dateRule(1, "2025-03-01", "2025-03-31"),
+                dateRule(2, "2025-03-15", "2025-04-15"));
+
+        assertThat(projectFor(ruleSet, "2025-03-20")).isEqualTo(1L);
+        assertThat(projectFor(ruleSet, "2025-04-01")).isEqualTo(2L);
+    }
+
+    @Test
+    void invalidOrOpenRangesAreIgnored() {
+        ProjectAssignmentRule open = dateRule(2, "2025-01-01", "2025-12-31");
+        open.setEndDate(null);
+        CompiledRuleSet ruleSet = compile(
+                dateRule(1, "2025-06-30", "2025-06-01"),
+                open);
+
+        assertThat(projectFor(ruleSet, "2025-06-15")).isNull();
+    }
+
+    @Test
+    void singleDayRangeCoversOnlyThatDay() {
+        CompiledRuleSet ruleSet = compile(dateRule(1, "2025-05-05", "2025-05-05"));
+
+        assertThat(projectFor(ruleSet, "2025-05-04")).isNull();
+        assertThat(projectFor(ruleSet, "2025-05-05")).isEqualTo(1L);
+        assertThat(projectFor(ruleSet, "2025-05-06")).isNull();
+    }
+
+    @Test
+    void dateRuleCompetesWithOtherTypesByPosition() {
+        ProjectAssignmentRule nit = rule(9, RuleType.SUPPLIER_NIT);
+        nit.setSupplierNit("900123456");
+        InvoiceDTO invoice = invoice("2025-01-15");
+        invoice.setSupplierId("900123456");
+
+        ProjectAssignmentResultDTO dateFirst = compile(dateRule(1, "2025-01-01", "2025-01-31"), nit)
+                .evaluate(invoice, null);
+        ProjectAssignmentResultDTO nitFirst = compile(nit, dateRule(1, "2025-01-01", "2025-01-31"))
+                .evaluate(invoice, null);
+
+        assertThat(dateFirst.getMatchedRuleType()).isEqualTo("DATE_RANGE");
+        assertThat(dateFirst.getConfidence()).isEqualTo(70);
+        assertThat(nitFirst.getMatchedRuleType()).isEqualTo("SUPPLIER_NIT");
+        assertThat(nitFirst.getProjectId()).isEqualTo(9L);
+    }
+
+    /**
+     * El índice de segmentos debe coincidir con recorrer las reglas en orden.
+     */
+    @Test
+    void segmentsMatchLinearScanOnRandomRanges() {
+        Random random = new Random(42);
+        LocalDate base = LocalDate.of(2025, 1, 1);
+        List<ProjectAssignmentRule> rules = new ArrayList<>();
+        for (long project = 1; project <= 40; project++) {
+            LocalDate start = base.plusDays(random.nextInt(365));
+            LocalDate end = start.plusDays(random.nextInt(60) - 5); // Algunos rangos inválidos
+            ProjectAssignmentRule rule = rule(project, RuleType.DATE_RANGE);
+            rule.setStartDate(start);
+            rule.setEndDate(end);
+            rules.add(rule);
+        }
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(1, rules, Map.of());
+
+        for (LocalDate day = base.minusDays(10); day.isBefore(base.plusDays(440)); day = day.plusDays(1)) {
+            Long expected = null;
+            for (ProjectAssignmentRule rule : rules) {
+                if (!day.isBefore(rule.getStartDate()) && !day.isAfter(rule.getEndDate())) {
+                    expected = rule.getProject().getId();
+                    break;
+                }
+            }
+            assertThat(projectFor(ruleSet, day.toString())).as("día %s", day).isEqualTo(expected);
+        }
+    }
+
+    private static Long projectFor(CompiledRuleSet ruleSet, String issueDate) {
+        ProjectAssignmentResultDTO result = ruleSet.evaluate(invoice(issueDate), null);
+        return result != null ? result.getProjectId() : null;
+    }
+
+    private static CompiledRuleSet compile(ProjectAssignmentRule... rules) {
+        return CompiledRuleSet.compile(1, List.of(rules), Map.of());
+    }
+
+    private static ProjectAssignmentRule dateRule(long projectId, String startDate, String endDate) {
+        ProjectAssignmentRule rule = rule(projectId, RuleType.DATE_RANGE);
+        rule.setStartDate(LocalDate.parse(startDate));
+        rule.setEndDate(LocalDate.parse(endDate));
+        return rule;
+    }
+
+    private static ProjectAssignmentRule rule(long projectId, RuleType type) {
+        return ProjectAssignmentRule.builder()
+                .project(Project.builder().id(projectId).name("Proyecto " + projectId).build())
+                .ruleType(type)
+                .isActive(true)
+                .build();
+    }
+
+    private static InvoiceDTO invoice(String issueDate) {
+        return InvoiceDTO.builder()
+                .issueDate(LocalDate.parse(issueDate).atTime(10, 30))
+                .build();
+    }
+}
@@ -0,0 +1,117 @@
+package com.construmedicis.buildtracking.assignment.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class KeywordMatcherTest {
+
+    @Test
+    void parseAcceptsCommaSeparatedAndJsonArrays() {
+        assertThat(KeywordMatcher.parse("cemento, acero ,arena")).containsExactly("cemento", "acero", "arena");
+        assertThat(KeywordMatcher.parse("[\"cemento\", \"acero\"]")).containsExactly("cemento", "acero");
+        assertThat(KeywordMatcher.parse("cemento,, ,\"\"")).containsExactly("cemento");
+        assertThat(KeywordMatcher.parse(null)).isEmpty();
+    }
+
+    @Test
+    void foldIgnoresCaseAccentsAndRepeatedSpaces() {
+        assertThat(KeywordMatcher.fold("  CEMENTO   GRÍS\t50kg ")).isEqualTo("cemento gris 50kg");
+        assertThat(KeywordMatcher.fold("Tubería PVC")).isEqualTo("tuberia pvc");
+    }
+
+    @Test
+    void countsEachMatchingLineOncePerRule() {
+        KeywordMatcher matcher = matcher(List.of(
+                List.of("cemento", "gris"),
+                List.of("varilla"),
+                List.of("Tubería")));
+
+        int[] counts = matcher.countMatchingLines(List.of(
+                "CEMENTO GRIS 50KG",
+                "Varilla corrugada 1/2",
+                "Cemento blanco",
+                "Tuberia   pvc sanitaria"));
+
+        assertThat(counts).containsExactly(2, 1, 1);
+    }
+
+    @Test
+    void findsOverlappingAndNestedKeywords() {
+        // "acero" dentro de "aceros" y "ero" como sufijo de ambas
+        KeywordMatcher matcher = matcher(List.of(List.of("aceros"), List.of("acero"), List.of("ero"), List.of("ceme")));
+
+        int[] counts = matcher.countMatchingLines(Arrays.asList("Aceros Diaco", null, "cemento"));
+
+        assertThat(counts).containsExactly(1, 1, 1, 1);
+    }
+
+    @Test
+    void ignoresRulesWithoutKeywordsAndNullLines() {
+        Map<Integer, List<String>> keywordsByRule = new LinkedHashMap<>();
+        keywordsByRule.put(2, List.of("arena"));
+        KeywordMatcher matcher = new KeywordMatcher(keywordsByRule, 4);
+
+        int[] counts = matcher.countMatchingLines(Arrays.asList(null, "Arena lavada", "Ladrillo"));
+
+        assertThat(counts).containsExactly(0, 0, 1, 0);
+    }
+
+    /**
+     * El autómata debe contar lo mismo que buscar cada palabra en cada línea.
+     */
+    @Test
+    void matchesNaiveSearchOnRandomText() {
+        Random random = new Random(7);
+        String alphabet = "abcáé ";
+        List<List<String>> rules = new ArrayList<>();
+        for (int r = 0; r < 20; r++) {
+            List<String> words = new ArrayList<>();
+            for (int w = 0; w < 1 + random.nextInt(3); w++) {
+                words.add(randomText(random, alphabet, 1 + random.nextInt(4)).trim() + "x".repeat(w % 2));
+            }
+            rules.add(words);
+        }
+        List<String> lines = new ArrayList<>();
+        for (int l = 0; l < 200; l++) {
+            lines.add(randomText(random, alphabet + "x", 5 + random.nextInt(30)));
+        }
+
+        int[] counts = matcher(rules).countMatchingLines(lines);
+
+        for (int r = 0; r < rules.size(); r++) {
+            int expected = 0;
+            for (String line : lines) {
+                String folded = KeywordMatcher.fold(line);
+                if (rules.get(r).stream().map(KeywordMatcher::fold)
+                        .anyMatch(word -> !word.isEmpty() && folded.contains(word))) {
+                    expected++;
+                }
+            }
+            assertThat(counts[r]).as("regla %d %s", r, rules.get(r)).isEqualTo(expected);
+        }
+    }
+
+    private static KeywordMatcher matcher(List<List<String>> keywordsByPosition) {
+        Map<Integer, List<String>> keywordsByRule = new LinkedHashMap<>();
+        for (int position = 0; position < keywordsByPosition.size(); position++) {
+            keywordsByRule.put(position, keywordsByPosition.get(position));
+        }
+        return new KeywordMatcher(keywordsByRule, keywordsByPosition.size());
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
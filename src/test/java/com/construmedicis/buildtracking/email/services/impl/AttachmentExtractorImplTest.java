@@ -0,0 +1,125 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.construmedicis.buildtracking.email.services.InvoiceAttachment;
+
+class AttachmentExtractorImplTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    void extractsOnlyXmlEntries() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("facturas/FV-1.xml", "<Invoice>1</Invoice>".getBytes(StandardCharsets.UTF_8));
+        entries.put("facturas/FV-1.pdf", new byte[] { 1, 2, 3 });
+        entries.put("__MACOSX/facturas/._FV-2.xml", new byte[] { 0 });
+        entries.put("FV-2.XML", "<Invoice>2</Invoice>".getBytes(StandardCharsets.UTF_8));
+
+        List<String> extracted = extract(extractor(10, 10 * MB, 100), zip(entries));
+
+        assertThat(extracted).containsExactly("FV-1.xml=<Invoice>1</Invoice>", "FV-2.XML=<Invoice>2</Invoice>");
+    }
+
+    @Test
+    void rejectsZipWithTooManyEntries() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 6; i++) {
+            entries.put("vacio-" + i + ".txt", new byte[0]);
+        }
+        byte[] zip = zip(entries);
+
+        assertThatThrownBy(() -> extract(extractor(5, 10 * MB, 100), zip))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("5 entradas");
+    }
+
+    @Test
+    void rejectsZipOverTotalUncompressedSize() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("FV-1.xml", randomText(600_000));
+        entries.put("FV-2.xml", randomText(600_000));
+        byte[] zip = zip(entries);
+
+        assertThat(extract(extractor(10, 1_200_000, 100), zip)).hasSize(2);
+        assertThatThrownBy(() -> extract(extractor(10, 1_000_000, 100), zip))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("bytes descomprimidos");
+    }
+
+    @Test
+    void rejectsEntryWithAbnormalCompressionRatio() throws IOException {
+        byte[] zip = zip(Map.of("bomba.xml", new byte[20 * MB]));
+
+        assertThatThrownBy(() -> extract(extractor(10, 100L * MB, 100), zip))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("relación de compresión");
+    }
+
+    @Test
+    void ratioIsMeasuredPerEntry() throws IOException {
+        // Una entrada normal grande antes de la bomba no debe diluir la relación
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("FV-1.xml", randomText(3 * MB));
+        entries.put("bomba.xml", new byte[5 * MB]);
+        byte[] zip = zip(entries);
+
+        assertThatThrownBy(() -> extract(extractor(10, 100L * MB, 100), zip))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("relación de compresión");
+    }
+
+    private static AttachmentExtractorImpl extractor(int maxEntries, long maxUncompressedBytes, int maxRatio) {
+        return new AttachmentExtractorImpl(8 * MB, maxEntries, maxUncompressedBytes, maxRatio);
+    }
+
+    private static List<String> extract(AttachmentExtractorImpl extractor, byte[] zip)
+            throws IOException, InterruptedException {
+        List<String> extracted = new ArrayList<>();
+        extractor.extractXml(InvoiceAttachment.inMemory("facturas.zip", zip), xml -> {
+            try (xml) {
+                byte[] content = xml.openStream().readAllBytes();
+                extracted.add(xml.getFilename() + "="
+                        + (content.length < 100 ? new String(content, StandardCharsets.UTF_8) : content.length));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return extracted;
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue());
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomText(int length) {
+        Random random = new Random(length);
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = (byte) ('a' + random.nextInt(26));
+        }
+        return text;
+    }
+}
@@ -0,0 +1,96 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.construmedicis.buildtracking.email.dto.EmailSyncResultDTO;
+import com.construmedicis.buildtracking.email.models.EmailConfig;
+import com.construmedicis.buildtracking.email.models.EmailConfig.SyncMode;
+import com.construmedicis.buildtracking.email.services.GmailAuthService;
+import com.construmedicis.buildtracking.email.services.GmailMessageService;
+import com.construmedicis.buildtracking.invoice.services.IngestionListener;
+import com.construmedicis.buildtracking.invoice.services.InvoiceIngestionEngine;
+import com.construmedicis.buildtracking.invoice.services.SourceAttachment;
+import com.construmedicis.buildtracking.project.models.Project;
+import com.google.api.services.gmail.Gmail;
+
+class EmailExtractionServiceImplTest {
+
+    private final GmailAuthService authService = mock(GmailAuthService.class);
+    private final GmailMessageService messageService = mock(GmailMessageService.class);
+    private final InvoiceIngestionEngine ingestionEngine = mock(InvoiceIngestionEngine.class);
+    private final EmailExtractionServiceImpl extractionService = new EmailExtractionServiceImpl(authService,
+            messageService, ingestionEngine);
+    private final Gmail gmail = mock(Gmail.class);
+    private final EmailSyncResultDTO result = EmailSyncResultDTO.started();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(authService.getGmailService(anyString(), anyString())).thenReturn(gmail);
+        when(messageService.getCurrentHistoryId(gmail)).thenReturn(BigInteger.valueOf(900));
+    }
+
+    @Test
+    void messageErrorsWithoutNewInvoicesArePartialSuccess() throws Exception {
+        when(messageService.listMessageIds(eq(gmail), anyString())).thenReturn(List.of("m1", "m2"));
+        doAnswer(invocation -> {
+            IngestionListener listener = invocation.getArgument(4);
+            result.getErrors().add("Error en FV-1.xml: XML mal formado");
+            listener.attachmentFailed(new SourceAttachment("m2", "1", "FV-1.xml", null), "XML mal formado");
+            return null;
+        }).when(ingestionEngine).ingest(any(), any(), any(), eq(result), any());
+
+        extractionService.syncEmailsForConfig(config("m7"), result);
+
+        // El checkpoint avanza y el mensaje fallido queda para reintento
+        assertThat(result.getSyncStatus()).isEqualTo("PARTIAL_SUCCESS");
+        assertThat(result.getHistoryId()).isEqualTo(BigInteger.valueOf(900));
+        assertThat(result.getFailedMessageIds()).containsExactly("m2");
+        assertThat(result.getEmailsProcessed()).isEqualTo(3); // m1, m2 y el reintento m7
+    }
+
+    @Test
+    void cleanRunIsSuccess() throws Exception {
+        when(messageService.listMessageIds(eq(gmail), anyString())).thenReturn(List.of());
+
+        extractionService.syncEmailsForConfig(config(null), result);
+
+        assertThat(result.getSyncStatus()).isEqualTo("SUCCESS");
+        assertThat(result.getErrors()).isEmpty();
+    }
+
+    @Test
+    void listingFailureIsFailed() throws Exception {
+        when(messageService.listMessageIds(eq(gmail), anyString())).thenThrow(new IOException("Backend Error"));
+
+        extractionService.syncEmailsForConfig(config(null), result);
+
+        assertThat(result.getSyncStatus()).isEqualTo("FAILED");
+        verifyNoInteractions(ingestionEngine);
+    }
+
+    private static EmailConfig config(String retryMessageIds) {
+        return EmailConfig.builder()
+                .id(1L)
+                .project(Project.builder().id(5L).build())
+                .credentialsPath("credentials.json")
+                .tokensDirectory("tokens")
+                .gmailLabel("Facturas")
+                .syncMode(SyncMode.FULL_SCAN)
+                .retryMessageIds(retryMessageIds)
+                .build();
+    }
+}
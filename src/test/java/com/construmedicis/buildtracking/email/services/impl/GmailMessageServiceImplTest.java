@@ -0,0 +1,264 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.construmedicis.buildtracking.email.dto.EmailSyncResultDTO;
+import com.construmedicis.buildtracking.email.services.AttachmentExtractor;
+import com.construmedicis.buildtracking.invoice.services.SourceAttachment;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.Message;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Ejecuta el servicio contra un servidor HTTP local que imita messages.list
+ * (paginado), messages.get y el endpoint batch de Gmail.
+ */
+class GmailMessageServiceImplTest {
+
+    private static final Pattern MESSAGE_GET = Pattern.compile("GET \\S*/gmail/v1/users/me/messages/([^?\\s]+)");
+    private static final String BOUNDARY = "batch_stub";
+
+    // Páginas de messages.list por pageToken ("" es la primera)
+    private static final Map<String, List<String>> PAGES = Map.of(
+            "", List.of("m1", "m2", "m3"),
+            "p2", List.of("m4", "m5"),
+            "p3", List.of("m6"));
+    private static final Map<String, String> NEXT_PAGE = Map.of("", "p2", "p2", "p3");
+
+    private final List<Map<String, String>> listRequests = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> failedOnce = Collections.synchronizedSet(new HashSet<>());
+    private final List<String> fullMessageRequests = Collections.synchronizedList(new ArrayList<>());
+    private final AttachmentExtractor attachmentExtractor = mock(AttachmentExtractor.class);
+    private HttpServer server;
+    private Gmail gmail;
+    private GmailMessageServiceImpl messageService;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/gmail/v1/users/me/messages", this::listMessages);
+        server.createContext("/batch", this::batch);
+        server.start();
+
+        gmail = new Gmail.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance(), null)
+                .setRootUrl("http://localhost:" + server.getAddress().getPort() + "/")
+                .setApplicationName("buildtracking-test")
+                .build();
+        // batch-size por encima del máximo de Gmail: se limita a 100
+        messageService = new GmailMessageServiceImpl(new GmailQuotaServiceImpl(10000, 10000, 3, 1, 5),
+                attachmentExtractor, 500, 2, 4);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void listMessageIdsFollowsNextPageToken() throws IOException {
+        List<String> ids = messageService.listMessageIds(gmail, "label:Facturas has:attachment");
+
+        assertThat(ids).containsExactly("m1", "m2", "m3", "m4", "m5", "m6");
+        assertThat(listRequests).hasSize(3);
+        assertThat(listRequests).extracting(params -> params.get("pageToken"))
+                .containsExactly(null, "p2", "p3");
+        assertThat(listRequests).allSatisfy(params -> {
+            assertThat(params).containsEntry("q", "label:Facturas has:attachment");
+            assertThat(params).containsEntry("maxResults", "500");
+        });
+    }
+
+    @Test
+    void getMessagesSplitsBatchesAtOneHundred() throws IOException {
+        List<String> ids = IntStream.rangeClosed(1, 250).mapToObj(i -> "m" + i).toList();
+        EmailSyncResultDTO result = EmailSyncResultDTO.started();
+
+        List<Message> messages = messageService.getMessages(gmail, ids, result);
+
+        assertThat(batchSizes).containsExactly(100, 100, 50);
+        assertThat(messages).extracting(Message::getId).containsExactlyInAnyOrderElementsOf(ids);
+        assertThat(result.getErrors()).isEmpty();
+    }
+
+    @Test
+    void getMessagesRetriesTransientFailuresAndReportsTheRest() throws IOException {
+        EmailSyncResultDTO result = EmailSyncResultDTO.started();
+
+        List<Message> messages = messageService.getMessages(gmail,
+                List.of("m1", "flaky-2", "missing-3", "broken-4"), result);
+
+        // flaky-2 responde 503 una vez y se reenvía en un segundo batch
+        assertThat(batchSizes).containsExactly(4, 2, 1);
+        assertThat(messages).extracting(Message::getId).containsExactlyInAnyOrder("m1", "flaky-2");
+        assertThat(result.getErrors()).hasSize(2);
+        // Un mensaje eliminado no se reintenta en la siguiente sincronización
+        assertThat(result.getFailedMessageIds()).containsExactly("broken-4");
+    }
+
+    @Test
+    void attachmentSourceRefetchesMessagesNestedBeyondTheFieldSelector() throws Exception {
+        when(attachmentExtractor.isSupported(any()))
+                .thenAnswer(invocation -> String.valueOf(invocation.<String>getArgument(0)).endsWith(".xml"));
+        EmailSyncResultDTO result = EmailSyncResultDTO.started();
+        List<SourceAttachment> published = Collections.synchronizedList(new ArrayList<>());
+
+        messageService.attachmentSource(gmail, List.of("shallow-1", "deep-2"), result).publish(published::add);
+
+        // Solo el mensaje con una parte contenedora en el último nivel se pide completo
+        assertThat(fullMessageRequests).containsExactly("deep-2");
+        assertThat(published).extracting(SourceAttachment::messageId, SourceAttachment::partId,
+                SourceAttachment::filename)
+                .containsExactlyInAnyOrder(
+                        tuple("shallow-1", "0", "FV-1.xml"),
+                        tuple("deep-2", "0.1", "FV-2.xml"),
+                        tuple("deep-2", "0.0.0.0.0.0", "FV-3.xml"));
+        assertThat(result.getErrors()).isEmpty();
+    }
+
+    private void listMessages(HttpExchange exchange) throws IOException {
+        Matcher get = MESSAGE_GET.matcher("GET " + exchange.getRequestURI().getPath());
+        if (get.matches()) {
+            // messages.get del mensaje completo: el árbol sin recortar
+            String id = get.group(1);
+            fullMessageRequests.add(id);
+            respond(exchange, "application/json", "{\"id\":\"" + id + "\",\"payload\":"
+                    + nestedPayload(7, "FV-3.xml", "FV-2.xml") + "}");
+            return;
+        }
+
+        Map<String, String> params = queryParams(exchange.getRequestURI().getRawQuery());
+        listRequests.add(params);
+        String token = params.getOrDefault("pageToken", "");
+
+        String messages = PAGES.get(token).stream()
+                .map(id -> "{\"id\":\"" + id + "\",\"threadId\":\"t-" + id + "\"}")
+                .collect(Collectors.joining(","));
+        String next = NEXT_PAGE.containsKey(token) ? ",\"nextPageToken\":\"" + NEXT_PAGE.get(token) + "\"" : "";
+        respond(exchange, "application/json", "{\"messages\":[" + messages + "]" + next + "}");
+    }
+
+    /**
+     * Responde cada llamada del batch en orden: "flaky-*" falla con 503 la
+     * primera vez, "missing-*" con 404 y "broken-*" siempre con 500.
+     */
+    private void batch(HttpExchange exchange) throws IOException {
+        String request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        List<String> ids = new ArrayList<>();
+        Matcher matcher = MESSAGE_GET.matcher(request);
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        batchSizes.add(ids.size());
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            int status;
+            String json;
+            if (id.startsWith("missing-")) {
+                status = 404;
+                json = error(404, "Requested entity was not found.");
+            } else if (id.startsWith("broken-") || (id.startsWith("flaky-") && failedOnce.add(id))) {
+                status = id.startsWith("broken-") ? 500 : 503;
+                json = error(status, "Backend Error");
+            } else if (id.startsWith("deep-")) {
+                // Como lo recorta el selector de campos: el sexto nivel llega sin subpartes
+                status = 200;
+                json = "{\"id\":\"" + id + "\",\"payload\":" + nestedPayload(6, null, "FV-2.xml") + "}";
+            } else if (id.startsWith("shallow-")) {
+                status = 200;
+                json = "{\"id\":\"" + id + "\",\"payload\":" + nestedPayload(2, "FV-1.xml", null) + "}";
+            } else {
+                status = 200;
+                json = "{\"id\":\"" + id + "\",\"payload\":{\"partId\":\"\",\"filename\":\"\"}}";
+            }
+            body.append("--").append(BOUNDARY).append("\r\n")
+                    .append("Content-Type: application/http\r\n")
+                    .append("Content-ID: response-").append(i + 1).append("\r\n\r\n")
+                    .append("HTTP/1.1 ").append(status).append(status == 200 ? " OK" : " Error").append("\r\n")
+                    .append("Content-Type: application/json; charset=UTF-8\r\n")
+                    .append("Content-Length: ").append(json.getBytes(StandardCharsets.UTF_8).length)
+                    .append("\r\n\r\n")
+                    .append(json).append("\r\n");
+        }
+        body.append("--").append(BOUNDARY).append("--\r\n");
+        respond(exchange, "multipart/mixed; boundary=" + BOUNDARY, body.toString());
+    }
+
+    /**
+     * Partes multipart/mixed anidadas {@code levels} niveles. El último nivel
+     * es el adjunto {@code deepFilename} o, si es null, una parte contenedora
+     * sin subpartes; {@code sideFilename} es un adjunto junto al segundo nivel.
+     */
+    private static String nestedPayload(int levels, String deepFilename, String sideFilename) {
+        String partId = "0" + ".0".repeat(levels - 2);
+        String part = deepFilename != null
+                ? attachmentPart(partId, deepFilename)
+                : "{\"partId\":\"" + partId + "\",\"filename\":\"\",\"mimeType\":\"multipart/mixed\"}";
+        for (int level = levels - 1; level >= 1; level--) {
+            String id = level == 1 ? "" : "0" + ".0".repeat(level - 2);
+            String siblings = level == 2 && sideFilename != null ? "," + attachmentPart("0.1", sideFilename) : "";
+            part = "{\"partId\":\"" + id + "\",\"filename\":\"\",\"mimeType\":\"multipart/mixed\",\"parts\":["
+                    + part + siblings + "]}";
+        }
+        return part;
+    }
+
+    private static String attachmentPart(String partId, String filename) {
+        return "{\"partId\":\"" + partId + "\",\"filename\":\"" + filename
+                + "\",\"mimeType\":\"application/xml\",\"body\":{\"attachmentId\":\"att-" + filename + "\"}}";
+    }
+
+    private static String error(int code, String message) {
+        return "{\"error\":{\"code\":" + code + ",\"message\":\"" + message + "\"}}";
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> queryParams(String rawQuery) {
+        if (rawQuery == null) {
+            return Map.of();
+        }
+        return Arrays.stream(rawQuery.split("&"))
+                .map(pair -> pair.split("=", 2))
+                .collect(Collectors.toMap(
+                        pair -> URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                        pair -> pair.length > 1 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : ""));
+    }
+}
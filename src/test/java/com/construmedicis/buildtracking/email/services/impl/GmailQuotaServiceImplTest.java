@@ -0,0 +1,143 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.construmedicis.buildtracking.email.services.GmailQuotaService.GmailMethod;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.Profile;
+import com.google.gson.stream.MalformedJsonException;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Ejecuta llamadas reales del cliente de Gmail contra un servidor HTTP local
+ * que responde con los errores de cuota de la API.
+ */
+class GmailQuotaServiceImplTest {
+
+    private static final String PROFILE_PATH = "/gmail/v1/users/me/profile";
+    private static final String PROFILE = "{\"emailAddress\":\"obra@example.com\",\"historyId\":\"123\"}";
+
+    private final Deque<StubResponse> responses = new ArrayDeque<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private Gmail gmail;
+    private GmailQuotaServiceImpl quotaService;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(PROFILE_PATH, exchange -> {
+            requests.incrementAndGet();
+            StubResponse response = responses.size() > 1 ? responses.poll() : responses.peek();
+            byte[] body = response.body().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(response.status(), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        gmail = new Gmail.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance(), null)
+                .setRootUrl("http://localhost:" + server.getAddress().getPort() + "/")
+                .setApplicationName("buildtracking-test")
+                .build();
+        quotaService = new GmailQuotaServiceImpl(1000, 1000, 4, 1, 5);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void retriesTooManyRequestsAndRateLimitExceeded() throws IOException {
+        responses.add(new StubResponse(429, error(429, "rateLimitExceeded")));
+        responses.add(new StubResponse(403, error(403, "userRateLimitExceeded")));
+        responses.add(new StubResponse(200, PROFILE));
+
+        Profile profile = getProfile();
+
+        assertThat(profile.getHistoryId()).isEqualTo(BigInteger.valueOf(123));
+        assertThat(requests).hasValue(3);
+    }
+
+    @Test
+    void retriesServerErrors() throws IOException {
+        responses.add(new StubResponse(503, error(503, "backendError")));
+        responses.add(new StubResponse(200, PROFILE));
+
+        assertThat(getProfile().getEmailAddress()).isEqualTo("obra@example.com");
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void doesNotRetryForbiddenWithoutRateLimitReason() {
+        responses.add(new StubResponse(403, error(403, "insufficientPermissions")));
+
+        assertThatThrownBy(this::getProfile)
+                .isInstanceOfSatisfying(GoogleJsonResponseException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(403));
+        assertThat(requests).hasValue(1);
+    }
+
+    @Test
+    void stopsAfterMaxAttempts() {
+        responses.add(new StubResponse(429, error(429, "rateLimitExceeded")));
+
+        assertThatThrownBy(this::getProfile).isInstanceOf(GoogleJsonResponseException.class);
+        assertThat(requests).hasValue(4);
+    }
+
+    @Test
+    void doesNotRetryMalformedResponse() {
+        responses.add(new StubResponse(200, "{\"emailAddress\" \"obra@example.com\"}"));
+
+        assertThatThrownBy(this::getProfile).isInstanceOf(IOException.class);
+        assertThat(requests).hasValue(1);
+    }
+
+    @Test
+    void retriesOnlyTransientNetworkErrors() {
+        assertThat(quotaService.isRetryable(new SocketTimeoutException("read timed out"))).isTrue();
+        assertThat(quotaService.isRetryable(new ConnectException("connection refused"))).isTrue();
+        assertThat(quotaService.isRetryable(new EOFException("end of input"))).isFalse();
+        assertThat(quotaService.isRetryable(new MalformedJsonException("unterminated object"))).isFalse();
+        assertThat(quotaService.isRetryable(new InterruptedIOException("interrupted"))).isFalse();
+    }
+
+    private Profile getProfile() throws IOException {
+        return quotaService.execute(gmail, GmailMethod.GET_PROFILE, gmail.users().getProfile("me"));
+    }
+
+    private static String error(int code, String reason) {
+        return """
+                {"error": {"code": %d, "message": "%s", "errors": [{"domain": "usageLimits", "reason": "%s", \
+                "message": "%s"}]}}
+                """.formatted(code, reason, reason, reason);
+    }
+
+    private record StubResponse(int status, String body) {
+    }
+}
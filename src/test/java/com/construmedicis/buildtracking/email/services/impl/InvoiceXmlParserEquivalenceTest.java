@@ -0,0 +1,133 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import com.construmedicis.buildtracking.email.dto.InvoiceParseResultDTO;
+import com.construmedicis.buildtracking.email.dto.InvoiceParseResultDTO.ParseStatus;
+import com.construmedicis.buildtracking.email.dto.ParsedInvoiceDTO;
+import com.construmedicis.buildtracking.email.dto.ParsedInvoiceItemDTO;
+import com.construmedicis.buildtracking.email.services.InvoiceXmlParser;
+
+/**
+ * El parser StAX debe dar exactamente el mismo resultado que el DOM sobre el
+ * corpus de facturas de src/test/resources/invoices.
+ */
+class InvoiceXmlParserEquivalenceTest {
+
+    private final InvoiceXmlParser dom = new InvoiceXmlParserImpl();
+    private final InvoiceXmlParser stax = new StaxInvoiceXmlParserImpl();
+
+    @ParameterizedTest
+    @CsvSource({
+            "invoice-full.xml, VALID",
+            "invoice-minimal.xml, VALID",
+            "attached-document.xml, VALID",
+            "attached-document-escaped.xml, VALID",
+            "application-response.xml, NOT_DIAN_INVOICE",
+            "invoice-invalid-amount.xml, MALFORMED",
+            "invoice-truncated.xml, MALFORMED"
+    })
+    void parsersAgreeOnCorpus(String fixture, ParseStatus expectedStatus) throws IOException {
+        byte[] xml = fixture(fixture);
+
+        InvoiceParseResultDTO domResult = parse(dom, xml);
+        InvoiceParseResultDTO staxResult = parse(stax, xml);
+
+        assertThat(domResult.getStatus()).isEqualTo(expectedStatus);
+        assertEquivalent(domResult, staxResult);
+    }
+
+    @Test
+    void fullInvoiceMatchesGoldenValues() throws IOException {
+        byte[] xml = fixture("invoice-full.xml");
+
+        for (InvoiceXmlParser parser : new InvoiceXmlParser[] { dom, stax }) {
+            ParsedInvoiceDTO invoice = parse(parser, xml).getInvoice();
+
+            assertThat(invoice.getInvoiceNumber()).isEqualTo("FV-1001");
+            assertThat(invoice.getSupplierId()).isEqualTo("900123456");
+            assertThat(invoice.getSupplierName()).isEqualTo("FERRETERIA & CIA S.A.S");
+            assertThat(invoice.getSubtotal()).isEqualByComparingTo("100");
+            assertThat(invoice.getTax()).isEqualByComparingTo("19");
+            assertThat(invoice.getWithholdingTax()).isEqualByComparingTo("2.50");
+            assertThat(invoice.getWithholdingICA()).isEqualByComparingTo("0.97");
+            assertThat(invoice.getTotal()).isEqualByComparingTo("119");
+            assertThat(invoice.getItems()).hasSize(2);
+
+            ParsedInvoiceItemDTO first = invoice.getItems().get(0);
+            assertThat(first.getDescription()).isEqualTo("Varilla corrugada especial 21Cemento gris 50kg");
+            assertThat(first.getItemCode()).isEqualTo("VAR-21");
+            assertThat(first.getQuantity()).isEqualByComparingTo("4");
+            assertThat(first.getUnitPrice()).isEqualByComparingTo("30");
+            assertThat(first.getTaxAmount()).isEqualByComparingTo("11.40");
+        }
+    }
+
+    @Test
+    void attachedDocumentsUseEmbeddedInvoice() throws IOException {
+        assertThat(parse(stax, fixture("attached-document.xml")).getInvoice().getInvoiceNumber())
+                .isEqualTo("FV-1002");
+        assertThat(parse(stax, fixture("attached-document-escaped.xml")).getInvoice().getInvoiceNumber())
+                .isEqualTo("FV-1003");
+    }
+
+    /**
+     * La factura embebida ocupa varios fragmentos de CDATA: el parser StAX la
+     * lee por partes y debe llegar al mismo resultado.
+     */
+    @Test
+    void largeEmbeddedInvoiceIsEquivalent() throws IOException {
+        String invoice = new String(fixture("invoice-minimal.xml"), StandardCharsets.UTF_8);
+        StringBuilder lines = new StringBuilder();
+        for (int i = 1; i <= 500; i++) {
+            lines.append("<cac:InvoiceLine><cbc:InvoicedQuantity>").append(i)
+                    .append("</cbc:InvoicedQuantity><cbc:LineExtensionAmount>").append(i * 100)
+                    .append("</cbc:LineExtensionAmount><cac:Item><cbc:Description>Ítem ").append(i)
+                    .append("</cbc:Description></cac:Item></cac:InvoiceLine>\n");
+        }
+        String wrapped = """
+                <AttachedDocument xmlns="urn:oasis:names:specification:ubl:schema:xsd:AttachedDocument-2" \
+                xmlns:cac="urn:oasis:names:specification:ubl:schema:xsd:CommonAggregateComponents-2" \
+                xmlns:cbc="urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2">
+                  <cac:Attachment><cac:ExternalReference><cbc:Description><![CDATA[%s]]></cbc:Description>\
+                </cac:ExternalReference></cac:Attachment>
+                </AttachedDocument>
+                """.formatted(invoice.replace("</Invoice>", lines + "</Invoice>"));
+        byte[] xml = wrapped.getBytes(StandardCharsets.UTF_8);
+
+        InvoiceParseResultDTO domResult = parse(dom, xml);
+        InvoiceParseResultDTO staxResult = parse(stax, xml);
+
+        assertThat(domResult.getInvoice().getItems()).hasSize(501);
+        assertThat(domResult.getInvoice().getItems().get(500).getLineTotal())
+                .isEqualByComparingTo(BigDecimal.valueOf(50000));
+        assertEquivalent(domResult, staxResult);
+    }
+
+    private static void assertEquivalent(InvoiceParseResultDTO expected, InvoiceParseResultDTO actual) {
+        assertThat(actual.getStatus()).isEqualTo(expected.getStatus());
+        if (expected.isValid()) {
+            assertThat(actual.getInvoice()).usingRecursiveComparison().isEqualTo(expected.getInvoice());
+        }
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        try (InputStream in = InvoiceXmlParserEquivalenceTest.class.getResourceAsStream("/invoices/" + name)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static InvoiceParseResultDTO parse(InvoiceXmlParser parser, byte[] xml) {
+        return parser.parse(new ByteArrayInputStream(xml));
+    }
+}
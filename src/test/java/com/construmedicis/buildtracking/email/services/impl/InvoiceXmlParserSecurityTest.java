@@ -0,0 +1,84 @@
+package com.construmedicis.buildtracking.email.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.construmedicis.buildtracking.email.dto.InvoiceParseResultDTO;
+import com.construmedicis.buildtracking.email.dto.InvoiceParseResultDTO.ParseStatus;
+import com.construmedicis.buildtracking.email.services.InvoiceXmlParser;
+
+/**
+ * Los XML llegan de correos y cargas anónimas: ningún parser debe resolver
+ * entidades externas ni expandir entidades anidadas.
+ */
+class InvoiceXmlParserSecurityTest {
+
+    private static final String INVOICE_BODY = """
+            <Invoice xmlns="urn:oasis:names:specification:ubl:schema:xsd:Invoice-2"
+                     xmlns:cac="urn:oasis:names:specification:ubl:schema:xsd:CommonAggregateComponents-2"
+                     xmlns:cbc="urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2">
+              <cbc:ID>%s</cbc:ID>
+              <cbc:IssueDate>2025-12-02</cbc:IssueDate>
+              <cac:AccountingSupplierParty><cac:Party>
+                <cac:PartyName><cbc:Name>Proveedor</cbc:Name></cac:PartyName>
+                <cac:PartyTaxScheme><cbc:CompanyID>900123456</cbc:CompanyID></cac:PartyTaxScheme>
+              </cac:Party></cac:AccountingSupplierParty>
+              <cac:LegalMonetaryTotal><cbc:LineExtensionAmount>1</cbc:LineExtensionAmount>
+                <cbc:PayableAmount>1</cbc:PayableAmount></cac:LegalMonetaryTotal>
+            </Invoice>
+            """;
+
+    static Stream<InvoiceXmlParser> parsers() {
+        return Stream.of(new InvoiceXmlParserImpl(), new StaxInvoiceXmlParserImpl());
+    }
+
+    @ParameterizedTest
+    @MethodSource("parsers")
+    void rejectsExternalEntities(InvoiceXmlParser parser, @TempDir Path dir) throws Exception {
+        Path secret = Files.writeString(dir.resolve("secret.txt"), "SECRETO");
+        String xml = "<?xml version=\"1.0\"?>\n<!DOCTYPE Invoice [<!ENTITY xxe SYSTEM \""
+                + secret.toUri() + "\">]>\n" + INVOICE_BODY.formatted("&xxe;");
+
+        InvoiceParseResultDTO result = parse(parser, xml);
+
+        assertThat(result.getStatus()).isNotEqualTo(ParseStatus.VALID);
+        assertThat(String.valueOf(result.getReason())).doesNotContain("SECRETO");
+    }
+
+    @ParameterizedTest
+    @MethodSource("parsers")
+    void rejectsEntityExpansion(InvoiceXmlParser parser) {
+        StringBuilder dtd = new StringBuilder("<!DOCTYPE Invoice [<!ENTITY l0 \"lol\">");
+        for (int i = 1; i <= 10; i++) {
+            dtd.append("<!ENTITY l").append(i).append(" \"")
+                    .append(("&l" + (i - 1) + ";").repeat(10)).append("\">");
+        }
+        dtd.append("]>\n");
+
+        InvoiceParseResultDTO result = parse(parser, dtd + INVOICE_BODY.formatted("&l10;"));
+
+        assertThat(result.getStatus()).isEqualTo(ParseStatus.MALFORMED);
+    }
+
+    @ParameterizedTest
+    @MethodSource("parsers")
+    void parsesInvoiceWithoutDoctype(InvoiceXmlParser parser) {
+        InvoiceParseResultDTO result = parse(parser, INVOICE_BODY.formatted("FV-1"));
+
+        assertThat(result.isValid()).isTrue();
+        assertThat(result.getInvoice().getInvoiceNumber()).isEqualTo("FV-1");
+    }
+
+    private static InvoiceParseResultDTO parse(InvoiceXmlParser parser, String xml) {
+        return parser.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,60 @@
+package com.construmedicis.buildtracking.invoice.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.construmedicis.buildtracking.invoice.models.Invoice;
+import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
+
+class InvoiceSearchCursorTest {
+
+    @Test
+    void roundTripsIssueDateAndId() {
+        Invoice invoice = new Invoice();
+        invoice.setId(1234L);
+        invoice.setIssueDate(LocalDateTime.of(2025, 12, 2, 14, 31, 42, 500_000_000));
+
+        InvoiceSearchCursor decoded = InvoiceSearchCursor.decode(InvoiceSearchCursor.of(invoice).encode());
+
+        assertThat(decoded.issueDate()).isEqualTo(invoice.getIssueDate());
+        assertThat(decoded.id()).isEqualTo(1234L);
+    }
+
+    @Test
+    void roundTripsMidnightWithoutSeconds() {
+        InvoiceSearchCursor cursor = new InvoiceSearchCursor(LocalDateTime.of(2025, 1, 1, 0, 0), 7L);
+
+        assertThat(InvoiceSearchCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        String encoded = new InvoiceSearchCursor(LocalDateTime.of(2025, 6, 30, 23, 59, 59), Long.MAX_VALUE).encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "no es base64!", "", "MjAyNS0wMS0wMVQwMDowMA", "bm8tZmVjaGFfNw",
+            "MjAyNS0wMS0wMVQwMDowMF94", "MjAyNS0wMS0wMVQwMDowMF8xXzI" })
+    void rejectsTamperedCursors(String cursor) {
+        assertThatThrownBy(() -> InvoiceSearchCursor.decode(cursor))
+                .isInstanceOf(BusinessRuleException.class)
+                .hasMessage("El cursor de la búsqueda no es válido.");
+    }
+
+    @Test
+    void rejectsCursorFromAnotherFormat() {
+        String legacy = Base64.getUrlEncoder().encodeToString("2025-01-01|7".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> InvoiceSearchCursor.decode(legacy)).isInstanceOf(BusinessRuleException.class);
+    }
+}
@@ -0,0 +1,90 @@
+package com.construmedicis.buildtracking.invoice.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.construmedicis.buildtracking.email.dto.EmailSyncResultDTO;
+import com.construmedicis.buildtracking.email.services.AttachmentExtractor;
+import com.construmedicis.buildtracking.invoice.dto.UploadedFileResultDTO;
+import com.construmedicis.buildtracking.invoice.models.Invoice.InvoiceSource;
+import com.construmedicis.buildtracking.invoice.services.AttachmentSource;
+import com.construmedicis.buildtracking.invoice.services.IngestionListener;
+import com.construmedicis.buildtracking.invoice.services.InvoiceIngestionEngine;
+import com.construmedicis.buildtracking.invoice.services.SourceAttachment;
+
+@ExtendWith(MockitoExtension.class)
+class InvoiceServiceImplTest {
+
+    @Mock
+    private InvoiceIngestionEngine ingestionEngine;
+
+    @Mock
+    private AttachmentExtractor attachmentExtractor;
+
+    @InjectMocks
+    private InvoiceServiceImpl invoiceService;
+
+    @Test
+    void uploadReportsTheOutcomeOfEachFile() throws Exception {
+        when(attachmentExtractor.isSupported(anyString()))
+                .thenAnswer(invocation -> !invocation.<String>getArgument(0).endsWith(".pdf"));
+        EmailSyncResultDTO result = EmailSyncResultDTO.started();
+        doAnswer(invocation -> {
+            List<SourceAttachment> published = new ArrayList<>();
+            invocation.<AttachmentSource>getArgument(0).publish(published::add);
+            IngestionListener listener = invocation.getArgument(4);
+            for (SourceAttachment attachment : published) {
+                switch (attachment.filename()) {
+                    case "FV-1.xml" -> listener.invoiceSaved(attachment, "FV-1", false);
+                    case "mes.zip" -> {
+                        listener.invoiceSaved(attachment, "FV-2", false);
+                        listener.invoiceSaved(attachment, "FV-3", true);
+                        listener.xmlRejected(attachment, "respuesta.xml", "No es una factura DIAN");
+                        result.getErrors().add("Error en FV-4.xml: monto inválido");
+                        listener.attachmentFailed(attachment, "Error en FV-4.xml: monto inválido");
+                    }
+                    case "repetida.xml" -> listener.attachmentSkipped(attachment);
+                    case "rota.zip" -> listener.attachmentFailed(attachment, "Error en adjunto rota.zip: ZIP corrupto");
+                    default -> throw new IllegalStateException("No publicado: " + attachment.filename());
+                }
+            }
+            return null;
+        }).when(ingestionEngine).ingest(any(), eq(InvoiceSource.XML_UPLOAD), eq(3L), eq(result), any());
+
+        invoiceService.uploadInvoices(List.of(file("FV-1.xml"), file("mes.zip"), file("repetida.xml"),
+                file("factura.pdf"), file("rota.zip")), 3L, result);
+
+        assertThat(result.getFiles())
+                .extracting(UploadedFileResultDTO::getFilename, UploadedFileResultDTO::getStatus,
+                        UploadedFileResultDTO::getInvoiceNumbers)
+                .containsExactly(
+                        tuple("FV-1.xml", "SUCCESS", List.of("FV-1")),
+                        tuple("mes.zip", "PARTIAL_SUCCESS", List.of("FV-2", "FV-3")),
+                        tuple("repetida.xml", "SKIPPED", List.of()),
+                        tuple("factura.pdf", "UNSUPPORTED", List.of()),
+                        tuple("rota.zip", "FAILED", List.of()));
+        assertThat(result.getFiles().get(1).getRejectedXmls()).containsExactly("respuesta.xml: No es una factura DIAN");
+        assertThat(result.getEmailsProcessed()).isEqualTo(5);
+        assertThat(result.getSyncStatus()).isEqualTo("FAILED");
+    }
+
+    private static SourceAttachment file(String filename) {
+        return new SourceAttachment(null, null, filename, () -> {
+            throw new UnsupportedOperationException();
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package com.construmedicis.buildtracking.item.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.construmedicis.buildtracking.item.dto.ItemDTO;
+import com.construmedicis.buildtracking.item.models.Item;
+import com.construmedicis.buildtracking.item.repository.ItemRepository;
+import com.construmedicis.buildtracking.item.services.ItemCatalogIndex;
+import com.construmedicis.buildtracking.item.services.SupplierItemMappingService;
+import com.construmedicis.buildtracking.project.repository.ProjectRepository;
+import com.construmedicis.buildtracking.util.exception.BusinessRuleException;
+
+@ExtendWith(MockitoExtension.class)
+class ItemServiceImplTest {
+
+    private static final String READ_ONLY = "La cantidad del ítem la calcula el libro de stock";
+
+    @Mock
+    private ItemRepository repository;
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @Mock
+    private ItemCatalogIndex catalogIndex;
+
+    @Mock
+    private SupplierItemMappingService supplierItemMappingService;
+
+    @InjectMocks
+    private ItemServiceImpl itemService;
+
+    @Test
+    void saveRejectsAClientSuppliedQuantity() {
+        ItemDTO dto = ItemDTO.builder().name("Cemento gris").quantity(40).build();
+
+        assertThatThrownBy(() -> itemService.save(dto))
+                .isInstanceOf(BusinessRuleException.class)
+                .hasMessageStartingWith(READ_ONLY);
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void updateAcceptsTheCurrentQuantity() {
+        Item item = Item.builder().id(7L).name("Cemento").quantity(12).build();
+        when(repository.findById(7L)).thenReturn(Optional.of(item));
+        when(repository.save(item)).thenReturn(item);
+
+        ItemDTO updated = itemService.update(7L, ItemDTO.builder().name("Cemento gris").quantity(12).build())
+                .getData();
+
+        assertThat(updated.getName()).isEqualTo("Cemento gris");
+        assertThat(updated.getQuantity()).isEqualTo(12);
+    }
+
+    @Test
+    void updateRejectsADifferentQuantity() {
+        Item item = Item.builder().id(7L).name("Cemento").quantity(12).build();
+        when(repository.findById(7L)).thenReturn(Optional.of(item));
+
+        assertThatThrownBy(() -> itemService.update(7L, ItemDTO.builder().quantity(20).build()))
+                .isInstanceOf(BusinessRuleException.class)
+                .hasMessageStartingWith(READ_ONLY);
+        verify(repository, never()).save(any());
+    }
+}
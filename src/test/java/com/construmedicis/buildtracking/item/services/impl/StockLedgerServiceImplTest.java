@@ -0,0 +1,192 @@
+package com.construmedicis.buildtracking.item.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.construmedicis.buildtracking.invoice.models.InvoiceItem;
+import com.construmedicis.buildtracking.invoice.repository.InvoiceItemRepository;
+import com.construmedicis.buildtracking.item.dto.StockReconciliationDTO;
+import com.construmedicis.buildtracking.item.models.Item;
+import com.construmedicis.buildtracking.item.models.StockMovement;
+import com.construmedicis.buildtracking.item.models.StockMovement.MovementType;
+import com.construmedicis.buildtracking.item.repository.ItemProjectStockRepository;
+import com.construmedicis.buildtracking.item.repository.ItemRepository;
+import com.construmedicis.buildtracking.item.repository.StockMovementRepository;
+import com.construmedicis.buildtracking.item.services.StockLedgerService.ProjectChange;
+import com.construmedicis.buildtracking.project.models.Project;
+import com.construmedicis.buildtracking.project.repository.ProjectRepository;
+
+@ExtendWith(MockitoExtension.class)
+class StockLedgerServiceImplTest {
+
+    @Mock
+    private StockMovementRepository movementRepository;
+
+    @Mock
+    private ItemRepository itemRepository;
+
+    @Mock
+    private ItemProjectStockRepository projectStockRepository;
+
+    @Mock
+    private InvoiceItemRepository invoiceItemRepository;
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @Captor
+    private ArgumentCaptor<List<StockMovement>> movements;
+
+    @InjectMocks
+    private StockLedgerServiceImpl ledger;
+
+    @Test
+    void projectChangesPostOneDeltaPerBalance() {
+        List<InvoiceItem> moved = List.of(line(1L, 1L, "5", "100"), line(2L, 2L, "2", "30"),
+                line(3L, null, "9", "90"));
+        List<InvoiceItem> assigned = List.of(line(4L, 1L, "3", "60"));
+
+        ledger.recordProjectChanges(List.of(
+                new ProjectChange(moved, project(10L), project(20L)),
+                new ProjectChange(List.of(line(5L, 1L, "7", "70")), project(20L), project(20L)),
+                new ProjectChange(assigned, null, project(20L))));
+
+        verify(movementRepository).saveAll(movements.capture());
+        assertThat(movements.getValue())
+                .extracting(StockMovement::getItemId, StockMovement::getProjectId, StockMovement::getInvoiceItemId,
+                        StockMovement::getQuantity, StockMovement::getMovementType)
+                .containsExactly(
+                        tuple(1L, 10L, 1L, decimal("-5"), MovementType.UNASSIGNED),
+                        tuple(2L, 10L, 2L, decimal("-2"), MovementType.UNASSIGNED),
+                        tuple(1L, 20L, 1L, decimal("5"), MovementType.ASSIGNED),
+                        tuple(2L, 20L, 2L, decimal("2"), MovementType.ASSIGNED),
+                        tuple(1L, 20L, 4L, decimal("3"), MovementType.ASSIGNED));
+        // El ítem 2 solo cambia de proyecto: su saldo total no se toca
+        verify(itemRepository).addToStock(new Long[] { 1L }, new BigDecimal[] { decimal("3") });
+        verify(projectStockRepository).addToStock(
+                new Long[] { 1L, 1L, 2L, 2L },
+                new Long[] { 10L, 20L, 10L, 20L },
+                new BigDecimal[] { decimal("-5"), decimal("8"), decimal("-2"), decimal("2") },
+                new BigDecimal[] { decimal("-100"), decimal("160"), decimal("-30"), decimal("30") });
+    }
+
+    @Test
+    void itemChangeMovesTheLineBetweenItems() {
+        InvoiceItem line = line(40L, 2L, "4", "80");
+
+        ledger.recordItemChange(line, Item.builder().id(1L).build(), project(10L));
+
+        verify(movementRepository).saveAll(movements.capture());
+        assertThat(movements.getValue())
+                .extracting(StockMovement::getItemId, StockMovement::getQuantity, StockMovement::getAmount,
+                        StockMovement::getMovementType)
+                .containsExactly(
+                        tuple(1L, decimal("-4"), decimal("-80"), MovementType.ITEM_CHANGED),
+                        tuple(2L, decimal("4"), decimal("80"), MovementType.ITEM_CHANGED));
+        verify(itemRepository).addToStock(new Long[] { 1L, 2L }, new BigDecimal[] { decimal("-4"), decimal("4") });
+        verify(projectStockRepository).addToStock(new Long[] { 1L, 2L }, new Long[] { 10L, 10L },
+                new BigDecimal[] { decimal("-4"), decimal("4") },
+                new BigDecimal[] { decimal("-80"), decimal("80") });
+    }
+
+    @Test
+    void itemChangeWithoutProjectOrToTheSameItemRecordsNothing() {
+        ledger.recordItemChange(line(40L, 2L, "4", "80"), Item.builder().id(2L).build(), project(10L));
+        ledger.recordItemChange(line(41L, 2L, "4", "80"), Item.builder().id(1L).build(), null);
+
+        verifyNoInteractions(movementRepository, itemRepository, projectStockRepository);
+    }
+
+    @Test
+    void reconcileCorrectsOnlyTheBalancesThatDoNotMatch() {
+        when(itemRepository.findStockBalances()).thenReturn(rows(
+                new Object[] { 1L, decimal("8.0000") },
+                new Object[] { 2L, decimal("5") },
+                new Object[] { 3L, decimal("4") }));
+        when(invoiceItemRepository.sumAssignedByItemAndProject()).thenReturn(rows(
+                new Object[] { 1L, 10L, decimal("8"), decimal("160") },
+                new Object[] { 2L, 10L, decimal("2"), decimal("30") },
+                new Object[] { 2L, 20L, decimal("3"), decimal("45") }));
+        // Al libro le falta (2, 20); los movimientos del ítem 9, ya borrado, se ignoran
+        when(movementRepository.sumByItemAndProject()).thenReturn(rows(
+                new Object[] { 1L, 10L, decimal("8"), decimal("160") },
+                new Object[] { 2L, 10L, decimal("2"), decimal("30") },
+                new Object[] { 9L, 10L, decimal("1"), decimal("10") }));
+        when(projectStockRepository.findAllBalances()).thenReturn(rows(
+                new Object[] { 1L, 10L, decimal("8.0000"), decimal("160.00") },
+                new Object[] { 2L, 10L, decimal("2"), decimal("30") }));
+
+        StockReconciliationDTO report = ledger.reconcile().getData();
+
+        verify(movementRepository).saveAll(movements.capture());
+        assertThat(movements.getValue())
+                .extracting(StockMovement::getItemId, StockMovement::getProjectId, StockMovement::getQuantity,
+                        StockMovement::getAmount, StockMovement::getMovementType)
+                .containsExactly(tuple(2L, 20L, decimal("3"), decimal("45"), MovementType.RECONCILED));
+        verify(projectStockRepository).recomputeStock(new Long[] { 2L }, new Long[] { 20L });
+        verify(itemRepository).recomputeStock(new Long[] { 3L });
+        assertThat(report.getItemsChecked()).isEqualTo(3);
+        assertThat(report.getLedgerAdjustments()).isEqualTo(1);
+        assertThat(report.getBalancesCorrected()).isEqualTo(1);
+        assertThat(report.getProjectBalancesCorrected()).isEqualTo(1);
+    }
+
+    @Test
+    void reconcileWithoutDifferencesRecomputesNothing() {
+        when(itemRepository.findStockBalances()).thenReturn(rows(new Object[] { 1L, decimal("8") }));
+        when(invoiceItemRepository.sumAssignedByItemAndProject())
+                .thenReturn(rows(new Object[] { 1L, 10L, decimal("8"), decimal("160") }));
+        when(movementRepository.sumByItemAndProject())
+                .thenReturn(rows(new Object[] { 1L, 10L, decimal("8.00"), decimal("160") }));
+        when(projectStockRepository.findAllBalances())
+                .thenReturn(rows(new Object[] { 1L, 10L, decimal("8"), decimal("160.00") }));
+
+        StockReconciliationDTO report = ledger.reconcile().getData();
+
+        verify(movementRepository).saveAll(movements.capture());
+        assertThat(movements.getValue()).isEmpty();
+        verify(projectStockRepository, never()).recomputeStock(any(), any());
+        verify(itemRepository, never()).recomputeStock(any());
+        assertThat(report.getLedgerAdjustments()).isZero();
+        assertThat(report.getBalancesCorrected()).isZero();
+        assertThat(report.getProjectBalancesCorrected()).isZero();
+    }
+
+    private static InvoiceItem line(Long id, Long itemId, String quantity, String lineTotal) {
+        return InvoiceItem.builder()
+                .id(id)
+                .item(itemId != null ? Item.builder().id(itemId).build() : null)
+                .quantity(decimal(quantity))
+                .lineTotal(decimal(lineTotal))
+                .build();
+    }
+
+    private static Project project(Long id) {
+        return Project.builder().id(id).build();
+    }
+
+    private static BigDecimal decimal(String value) {
+        return new BigDecimal(value);
+    }
+
+    private static List<Object[]> rows(Object[]... rows) {
+        return Arrays.asList(rows);
+    }
+}
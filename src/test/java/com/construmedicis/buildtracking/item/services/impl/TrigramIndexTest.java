@@ -0,0 +1,134 @@
+package com.construmedicis.buildtracking.item.services.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.construmedicis.buildtracking.item.services.ItemCatalogIndex.SimilarItem;
+
+class TrigramIndexTest {
+
+    private static final String[] WORDS = { "CEMENTO", "GRIS", "BLANCO", "50KG", "25 KG", "VARILLA", "CORRUGADA",
+            "1/2", "3/8", "TUBO", "PVC", "SANITARIO", "PRESION", "4 PULGADAS", "PINTURA", "VINILO", "GALON",
+            "ARENA", "LAVADA", "LADRILLO", "TOLETE", "ALAMBRE", "NEGRO", "CAL", "HIDRATADA", "MALLA" };
+
+    private final TrigramIndex index = new TrigramIndex();
+
+    @Test
+    void trigramsNormalizeUnitsStopWordsAndDigits() {
+        assertThat(TrigramIndex.trigrams(normalize("Cemento de 50 kilos")))
+                .isEqualTo(TrigramIndex.trigrams(normalize("CEMENTO 50KG")));
+        assertThat(TrigramIndex.trigrams(normalize("Tubo PVC 1/2 pulgada")))
+                .isEqualTo(TrigramIndex.trigrams(normalize("tubo pvc 1-2 PULG")));
+        assertThat(TrigramIndex.trigrams(normalize("Cal"))).containsExactly("  C", " CA", "CAL", "AL ");
+        assertThat(TrigramIndex.trigrams(null)).isEmpty();
+    }
+
+    @Test
+    void searchFindsMostSimilarItemAboveThreshold() {
+        add(1, "Cemento gris 50 kg");
+        add(2, "Cemento blanco 25 kg");
+        add(3, "Varilla corrugada 1/2");
+
+        Optional<SimilarItem> match = search("CEMENTO GRIS X 50KG", 0.5);
+
+        assertThat(match).map(SimilarItem::itemId).contains(1L);
+        assertThat(match.get().similarity()).isEqualTo(1.0);
+        assertThat(search("Ladrillo tolete", 0.3)).isEmpty();
+    }
+
+    @Test
+    void tiesGoToLowestIdAndExcludedItemsAreSkipped() {
+        add(7, "Arena lavada");
+        add(4, "Arena lavada");
+
+        assertThat(search("arena lavada", 0.8)).map(SimilarItem::itemId).contains(4L);
+        assertThat(index.search(trigrams("arena lavada"), 0.8, Set.of(4L))).map(SimilarItem::itemId)
+                .contains(7L);
+    }
+
+    @Test
+    void removedAndReplacedItemsLeaveNoTrace() {
+        add(1, "Pintura vinilo galon");
+        add(2, "Malla electrosoldada");
+        index.remove(1);
+        add(2, "Pintura vinilo blanco galon");
+
+        assertThat(search("Pintura vinilo galon", 0.5)).map(SimilarItem::itemId).contains(2L);
+        assertThat(search("Malla electrosoldada", 0.5)).isEmpty();
+
+        // El slot liberado se reutiliza sin mezclar perfiles
+        add(3, "Alambre negro");
+        assertThat(search("alambre negro", 0.9)).map(SimilarItem::itemId).contains(3L);
+    }
+
+    /**
+     * El filtro por prefijo y la poda no deben cambiar el resultado frente a
+     * comparar la consulta con todos los ítems.
+     */
+    @Test
+    void searchMatchesBruteForceOnRandomCatalog() {
+        Random random = new Random(20251202);
+        List<Set<String>> catalog = new ArrayList<>();
+        for (int id = 0; id < 2000; id++) {
+            Set<String> trigrams = trigrams(randomDescription(random));
+            catalog.add(trigrams);
+            index.add(id, trigrams);
+        }
+
+        for (int q = 0; q < 300; q++) {
+            Set<String> query = trigrams(randomDescription(random));
+            double threshold = 0.2 + random.nextInt(7) * 0.1;
+
+            long expectedId = -1;
+            double expectedSimilarity = 0;
+            for (int id = 0; id < catalog.size(); id++) {
+                double similarity = TrigramIndex.similarity(query, catalog.get(id));
+                if (similarity >= threshold && similarity > expectedSimilarity) {
+                    expectedId = id;
+                    expectedSimilarity = similarity;
+                }
+            }
+
+            Optional<SimilarItem> match = index.search(query, threshold, Set.of());
+            if (expectedId < 0) {
+                assertThat(match).as("consulta %s, umbral %s", query, threshold).isEmpty();
+            } else {
+                assertThat(match).as("consulta %s, umbral %s", query, threshold).isPresent();
+                assertThat(match.get().itemId()).isEqualTo(expectedId);
+                assertThat(match.get().similarity()).isEqualTo(expectedSimilarity);
+            }
+        }
+    }
+
+    private static String randomDescription(Random random) {
+        StringBuilder description = new StringBuilder();
+        int words = 1 + random.nextInt(4);
+        for (int i = 0; i < words; i++) {
+            description.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return description.toString();
+    }
+
+    private void add(long itemId, String description) {
+        index.add(itemId, trigrams(description));
+    }
+
+    private Optional<SimilarItem> search(String description, double threshold) {
+        return index.search(trigrams(description), threshold, Set.of());
+    }
+
+    private static Set<String> trigrams(String description) {
+        return TrigramIndex.trigrams(normalize(description));
+    }
+
+    private static String normalize(String value) {
+        return ItemCatalogIndexImpl.normalize(value);
+    }
+}
@@ -0,0 +1,144 @@
+package com.construmedicis.buildtracking.util.pipeline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(10)
+class PipelineStageTest {
+
+    @Test
+    void completeWaitsForEveryItem() throws InterruptedException {
+        Set<Integer> processed = ConcurrentHashMap.newKeySet();
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 4, 8, processed::add, (item, e) -> {
+        });
+
+        for (int i = 0; i < 200; i++) {
+            stage.submit(i);
+        }
+        stage.complete();
+
+        assertThat(processed).hasSize(200);
+    }
+
+    @Test
+    void failedItemsGoToErrorHandlerAndTheRestContinue() throws InterruptedException {
+        Set<Integer> processed = ConcurrentHashMap.newKeySet();
+        Map<Integer, Exception> failed = new ConcurrentHashMap<>();
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 2, 4, item -> {
+            if (item % 3 == 0) {
+                throw new IllegalArgumentException("múltiplo de 3: " + item);
+            }
+            processed.add(item);
+        }, failed::put);
+
+        for (int i = 1; i <= 9; i++) {
+            stage.submit(i);
+        }
+        stage.complete();
+
+        assertThat(failed).containsOnlyKeys(3, 6, 9);
+        assertThat(failed.get(3)).hasMessage("múltiplo de 3: 3");
+        assertThat(processed).containsExactlyInAnyOrder(1, 2, 4, 5, 7, 8);
+    }
+
+    @Test
+    void submitBlocksWhileQueueIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 1, 1, item -> release.await(), (item, e) -> {
+        });
+        stage.submit(1); // Lo toma el worker y queda bloqueado
+        stage.submit(2); // Llena la cola
+
+        AtomicBoolean thirdSubmitted = new AtomicBoolean();
+        Thread producer = Thread.ofVirtual().start(() -> {
+            try {
+                stage.submit(3);
+                thirdSubmitted.set(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        producer.join(300);
+        assertThat(thirdSubmitted).isFalse();
+
+        release.countDown();
+        producer.join();
+        stage.complete();
+        assertThat(thirdSubmitted).isTrue();
+    }
+
+    @Test
+    void submitAfterCompleteIsRejected() throws InterruptedException {
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 1, 1, item -> {
+        }, (item, e) -> {
+        });
+        stage.complete();
+
+        assertThatThrownBy(() -> stage.submit(1)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void abortInterruptsWorkersWithoutDrainingQueue() throws InterruptedException {
+        Set<Integer> processed = ConcurrentHashMap.newKeySet();
+        CountDownLatch started = new CountDownLatch(1);
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 1, 10, item -> {
+            started.countDown();
+            processed.add(item);
+            TimeUnit.MINUTES.sleep(1);
+        }, (item, e) -> {
+        });
+        for (int i = 0; i < 5; i++) {
+            stage.submit(i);
+        }
+        started.await();
+
+        stage.abort();
+        stage.complete(); // Retorna en cuanto los workers salen
+
+        assertThat(processed).containsExactly(0);
+    }
+
+    @Test
+    void abortHandsQueuedItemsToDiscardHandler() throws InterruptedException {
+        Set<Integer> discarded = ConcurrentHashMap.newKeySet();
+        CountDownLatch started = new CountDownLatch(1);
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 1, 10, item -> {
+            started.countDown();
+            TimeUnit.MINUTES.sleep(1);
+        }, (item, e) -> {
+        }, discarded::add);
+        for (int i = 0; i < 5; i++) {
+            stage.submit(i);
+        }
+        started.await();
+
+        stage.abort();
+        stage.complete();
+
+        // El 0 lo tenía el worker; el resto seguía en cola
+        assertThat(discarded).containsExactlyInAnyOrder(1, 2, 3, 4);
+    }
+
+    @Test
+    void submitAfterAbortDiscardsTheItem() {
+        Set<Integer> discarded = ConcurrentHashMap.newKeySet();
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 1, 1, item -> {
+        }, (item, e) -> {
+        }, discarded::add);
+        stage.abort();
+
+        assertThatThrownBy(() -> stage.submit(7)).isInstanceOf(IllegalStateException.class);
+        assertThat(discarded).containsExactly(7);
+    }
+}
@@ -0,0 +1,90 @@
+package com.construmedicis.buildtracking.util.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Las esperas se verifican solo por su mínimo: dormir nunca dura menos de lo
+ * pedido, pero en un equipo cargado puede durar más.
+ */
+class TokenBucketTest {
+
+    @Test
+    void acquireWithinCapacityDoesNotWait() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1, 10);
+
+        long elapsed = millis(() -> bucket.acquire(10));
+
+        assertThat(elapsed).isLessThan(500);
+    }
+
+    @Test
+    void acquireBeyondBalanceWaitsForRefill() throws InterruptedException {
+        long start = System.nanoTime();
+        TokenBucket bucket = new TokenBucket(100, 10);
+        bucket.acquire(10);
+
+        // 10 tokens más a 100 por segundo: 100 ms desde que se creó el bucket
+        // (medir solo el segundo acquire descuenta lo recargado entre ambos)
+        bucket.acquire(10);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(100);
+    }
+
+    @Test
+    void refillIsCappedAtCapacity() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 5);
+        TimeUnit.MILLISECONDS.sleep(200); // Recargaría 20 tokens sin el tope
+
+        // Los 5 acumulados salen de inmediato; los otros 5 tardan 50 ms
+        long elapsed = millis(() -> {
+            bucket.acquire(5);
+            bucket.acquire(5);
+        });
+
+        assertThat(elapsed).isGreaterThanOrEqualTo(50);
+    }
+
+    @Test
+    void requestLargerThanCapacityLeavesDebt() throws InterruptedException {
+        long start = System.nanoTime();
+        TokenBucket bucket = new TokenBucket(100, 10);
+        bucket.acquire(20); // Espera los 10 que faltan
+
+        // Tras pagar la deuda, 5 tokens más: 150 ms desde que se creó el bucket
+        bucket.acquire(5);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(150);
+    }
+
+    @Test
+    void pauseDelaysNextAcquireEvenWithFullBucket() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 1000);
+
+        bucket.pause(Duration.ofMillis(200));
+        long elapsed = millis(() -> bucket.acquire(1));
+
+        assertThat(elapsed).isGreaterThanOrEqualTo(190);
+    }
+
+    @Test
+    void rejectsNonPositiveRateOrCapacity() {
+        assertThatThrownBy(() -> new TokenBucket(0, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenBucket(10, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static long millis(Acquisition acquisition) throws InterruptedException {
+        long start = System.nanoTime();
+        acquisition.run();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private interface Acquisition {
+        void run() throws InterruptedException;
+    }
+}